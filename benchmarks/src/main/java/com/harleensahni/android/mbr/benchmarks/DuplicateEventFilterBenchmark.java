@@ -0,0 +1,72 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.harleensahni.android.mbr.core.DuplicateEventFilter;
+import com.harleensahni.android.mbr.core.MediaKeys;
+
+/**
+ * Cost of checking a key event against the duplicate filter, for new events
+ * and for every event arriving twice.
+ * 
+ * @author Harleen Sahni
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DuplicateEventFilterBenchmark {
+
+    private final DuplicateEventFilter filter = new DuplicateEventFilter();
+
+    private long time;
+
+    private int event;
+
+    /**
+     * Every event is new.
+     */
+    @Benchmark
+    public boolean unique() {
+        time += 5;
+        return filter.isDuplicate(time, MediaKeys.KEYCODE_MEDIA_NEXT, MediaKeys.ACTION_DOWN, 3, time);
+    }
+
+    /**
+     * Every event comes twice.
+     */
+    @Benchmark
+    public boolean doubled() {
+        if ((event++ & 1) == 0) {
+            time += 5;
+        }
+        return filter.isDuplicate(time, MediaKeys.KEYCODE_MEDIA_NEXT, MediaKeys.ACTION_DOWN, 3, time);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.harleensahni.android.mbr.core.GestureRecognizer;
+import com.harleensahni.android.mbr.core.GestureRecognizer.Gesture;
+import com.harleensahni.android.mbr.core.MediaKeys;
+
+/**
+ * Cost of the headset gesture recognizer per event, for a flaky headset
+ * sending a burst of clicks and for a held button sending repeats.
+ * 
+ * @author Harleen Sahni
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GestureRecognizerBenchmark {
+
+    private final GestureRecognizer recognizer = new GestureRecognizer(400, 800);
+
+    private long time;
+
+    private int event;
+
+    /**
+     * Clicks 5ms apart, so every third one completes a triple click.
+     */
+    @Benchmark
+    public Gesture burst() {
+        time += 5;
+        int action = (event++ & 1) == 0 ? MediaKeys.ACTION_DOWN : MediaKeys.ACTION_UP;
+        Gesture gesture = recognizer.onKey(action, time, time);
+        return gesture != null ? gesture : recognizer.onDeadline(time);
+    }
+
+    /**
+     * Key repeats of a held button, with a long press and release every
+     * hundred events.
+     */
+    @Benchmark
+    public Gesture hold() {
+        time += 10;
+        int action = ++event % 100 == 0 ? MediaKeys.ACTION_UP : MediaKeys.ACTION_DOWN;
+        Gesture gesture = recognizer.onKey(action, time, time);
+        return gesture != null ? gesture : recognizer.onDeadline(time);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.harleensahni.android.mbr.core.KeyTable;
+import com.harleensahni.android.mbr.core.MediaKeys;
+
+/**
+ * Cost of classifying a key code, with and without user remaps, over a mix of
+ * media keys, volume keys and out of range key codes.
+ * 
+ * @author Harleen Sahni
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyTableBenchmark {
+
+    private static final int[] KEY_CODES = { MediaKeys.KEYCODE_HEADSETHOOK, 24 /* volume up */,
+            MediaKeys.KEYCODE_MEDIA_NEXT, MediaKeys.KEYCODE_MEDIA_PAUSE, 25 /* volume down */,
+            MediaKeys.KEYCODE_MEDIA_PLAY_PAUSE, 200, MediaKeys.KEYCODE_MEDIA_PREVIOUS };
+
+    private final KeyTable remapped = KeyTable.DEFAULT
+            .remap(MediaKeys.KEYCODE_HEADSETHOOK, MediaKeys.KEYCODE_MEDIA_NEXT)
+            .remap(MediaKeys.KEYCODE_MEDIA_PAUSE, MediaKeys.KEYCODE_MEDIA_PAUSE);
+
+    private int index;
+
+    @Benchmark
+    public int classifyDefault() {
+        index = (index + 1) & (KEY_CODES.length - 1);
+        return KeyTable.DEFAULT.getKeyCode(KEY_CODES[index]);
+    }
+
+    @Benchmark
+    public int classifyRemapped() {
+        index = (index + 1) & (KEY_CODES.length - 1);
+        return remapped.getKeyCode(KEY_CODES[index]);
+    }
+}
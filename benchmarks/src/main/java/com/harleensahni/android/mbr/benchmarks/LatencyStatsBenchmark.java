@@ -0,0 +1,69 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.harleensahni.android.mbr.core.LatencyStats;
+import com.harleensahni.android.mbr.core.LatencyStats.Stage;
+import com.harleensahni.android.mbr.core.RouteDecision.Route;
+
+/**
+ * Cost of recording a press's stage timings, which happens several times per
+ * press, and of reading a percentile back.
+ * 
+ * @author Harleen Sahni
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyStatsBenchmark {
+
+    private final LatencyStats stats = new LatencyStats();
+
+    private long micros;
+
+    /**
+     * Records durations spread from microseconds to seconds.
+     */
+    @Benchmark
+    public void record() {
+        micros = (micros * 31 + 7) & 0xfffff;
+        stats.record(Stage.LOOKUP, Route.PLAYING_RECEIVER, micros);
+    }
+
+    /**
+     * Reads the 99th percentile of a filled histogram.
+     */
+    @Benchmark
+    public long percentile() {
+        record();
+        return stats.getHistogram(Stage.LOOKUP, Route.PLAYING_RECEIVER).getPercentile(99);
+    }
+}
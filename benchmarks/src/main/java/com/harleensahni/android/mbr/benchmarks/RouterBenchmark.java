@@ -0,0 +1,149 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.harleensahni.android.mbr.core.KeyTable;
+import com.harleensahni.android.mbr.core.MediaKeys;
+import com.harleensahni.android.mbr.core.ReceiverDirectory;
+import com.harleensahni.android.mbr.core.RouteDecision;
+import com.harleensahni.android.mbr.core.Router;
+
+/**
+ * Per decision cost of {@link Router} with synthetic receivers and running
+ * services. Run with {@code -prof gc} (the default through {@link Benchmarks})
+ * to also get the allocation rate.
+ * 
+ * @author Harleen Sahni
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouterBenchmark {
+
+    /** The situations a press can be routed in. */
+    public enum Scenario {
+        /** Music playing, no last receiver, the player is the lowest priority receiver. */
+        PLAYING,
+        /** Music playing and we know the last media button receiver. */
+        LAST_RECEIVER,
+        /** Music playing but none of the services belong to a receiver, conservative mode. */
+        CONSERVATIVE_UNMATCHED,
+        /** Nothing playing, the selector gets shown. */
+        NOTHING_PLAYING
+    }
+
+    @Param({ "10", "100", "1000" })
+    public int receiverCount;
+
+    @Param({ "10", "100", "1000" })
+    public int serviceCount;
+
+    @Param
+    public Scenario scenario;
+
+    private List<SyntheticReceiver> receivers;
+
+    private Set<String> hiddenReceiverIds;
+
+    private ReceiverDirectory<SyntheticReceiver> directory;
+
+    private SyntheticRoutingState state;
+
+    private final RouteDecision<SyntheticReceiver> decision = new RouteDecision<SyntheticReceiver>();
+
+    private int action;
+
+    @Setup
+    public void setUp() {
+        receivers = Collections.unmodifiableList(SyntheticReceiver.create(receiverCount));
+
+        // Hide every tenth player
+        Set<String> hidden = new HashSet<String>();
+        for (int i = 1; i < receivers.size(); i += 10) {
+            hidden.add(receivers.get(i).className);
+        }
+        hiddenReceiverIds = Collections.unmodifiableSet(hidden);
+        directory = new ReceiverDirectory<SyntheticReceiver>(receivers, hiddenReceiverIds,
+                SyntheticReceiver.OWN_CLASS_NAME, SyntheticReceiver.NAMES);
+
+        // Services of apps that aren't players, plus the player in the
+        // playing scenario as the last service.
+        List<String> services = new ArrayList<String>(serviceCount);
+        for (int i = 0; i < serviceCount; i++) {
+            services.add("com.example.service" + i);
+        }
+        state = new SyntheticRoutingState();
+        state.playingPackageNames = services;
+        switch (scenario) {
+        case PLAYING:
+            services.set(serviceCount - 1, SyntheticReceiver.packageName(receiverCount - 1));
+            state.musicActive = true;
+            break;
+        case LAST_RECEIVER:
+            state.musicActive = true;
+            state.lastMediaButtonReceiver = SyntheticReceiver.packageName(0) + "/.MediaButtonIntentReceiver";
+            break;
+        case CONSERVATIVE_UNMATCHED:
+            state.musicActive = true;
+            state.conservative = true;
+            break;
+        case NOTHING_PLAYING:
+            break;
+        }
+    }
+
+    /**
+     * One routing decision, alternating between key down and key up.
+     */
+    @Benchmark
+    public RouteDecision<SyntheticReceiver> decide() {
+        action = action == MediaKeys.ACTION_UP ? MediaKeys.ACTION_DOWN : MediaKeys.ACTION_UP;
+        Router.decide(action, MediaKeys.KEYCODE_MEDIA_NEXT, KeyTable.DEFAULT, state, directory, decision);
+        return decision;
+    }
+
+    /**
+     * Rebuilding the directory, which happens when packages or hidden
+     * receivers change rather than per press.
+     */
+    @Benchmark
+    public ReceiverDirectory<SyntheticReceiver> buildDirectory() {
+        return new ReceiverDirectory<SyntheticReceiver>(receivers, hiddenReceiverIds,
+                SyntheticReceiver.OWN_CLASS_NAME, SyntheticReceiver.NAMES);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.harleensahni.android.mbr.core.RoutingSnapshot;
+
+/**
+ * Cost of reading a {@link RoutingSnapshot} the way a cold process does:
+ * mapping the file and decoding it.
+ * 
+ * @author Harleen Sahni
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingSnapshotBenchmark {
+
+    @Param({ "10", "100" })
+    public int receiverCount;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<String> packageNames = new ArrayList<String>();
+        List<String> classNames = new ArrayList<String>();
+        for (int i = 0; i < receiverCount; i++) {
+            packageNames.add("com.example.player" + i);
+            classNames.add("com.example.player" + i + ".MediaButtonIntentReceiver");
+        }
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("last_media_button_receiver", "com.example.player3/com.example.player3.MediaButtonIntentReceiver");
+        values.put("conservative", "false");
+        values.put("headset_button", "79");
+
+        file = File.createTempFile("routing", ".snapshot");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new RoutingSnapshot(packageNames, classNames, values).encode());
+        } finally {
+            out.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public RoutingSnapshot mapAndDecode() throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            return RoutingSnapshot.decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.harleensahni.android.mbr.core.MediaKeys;
+import com.harleensahni.android.mbr.core.ReceiverDirectory;
+import com.harleensahni.android.mbr.core.RouteDecision;
+
+/**
+ * A phone with music players for {@link TraceReplay}, whose state follows the
+ * routing decisions the way the real one would: the selector opens, is
+ * navigated and picks a player, and players start and stop playing and
+ * register as the media button receiver. Doesn't allocate once every player
+ * has played, so it doesn't skew the allocation measured.
+ * 
+ * @author Harleen Sahni
+ */
+final class SimulatedDevice {
+
+    final SyntheticRoutingState state = new SyntheticRoutingState();
+
+    final ReceiverDirectory<SyntheticReceiver> directory;
+
+    /** Running services of apps that aren't players. */
+    private final List<String> services;
+
+    /** What a player changes when it plays, worked out once per player. */
+    private static final class PlayingState {
+        /** The services plus the player's. */
+        final List<String> playingPackageNames;
+        /** The player's flattened component name. */
+        final String mediaButtonReceiver;
+
+        PlayingState(List<String> services, SyntheticReceiver player) {
+            playingPackageNames = new ArrayList<String>(services);
+            playingPackageNames.add(player.packageName);
+            mediaButtonReceiver = player.packageName + "/" + player.className;
+        }
+    }
+
+    private final Map<SyntheticReceiver, PlayingState> playingStates = new HashMap<SyntheticReceiver, PlayingState>();
+
+    /** Whether players register as the last media button receiver, as on Android 4.0 and up. */
+    private final boolean registerLastReceiver;
+
+    private final long selectorTimeoutMillis;
+
+    private final boolean conservative;
+
+    /** Position of the selection in the selector. */
+    private int selection;
+
+    /** When the selector times out. */
+    private long selectorDeadline;
+
+    SimulatedDevice(ReceiverDirectory<SyntheticReceiver> directory, int serviceCount, boolean conservative,
+            boolean registerLastReceiver, long selectorTimeoutMillis) {
+        this.directory = directory;
+        this.conservative = conservative;
+        this.registerLastReceiver = registerLastReceiver;
+        this.selectorTimeoutMillis = selectorTimeoutMillis;
+        services = new ArrayList<String>(serviceCount);
+        for (int i = 0; i < serviceCount; i++) {
+            services.add("com.example.service" + i);
+        }
+        reset();
+    }
+
+    /**
+     * Goes back to nothing playing and the selector closed.
+     */
+    void reset() {
+        state.selectorOpen = false;
+        state.musicActive = false;
+        state.lastMediaButtonReceiver = null;
+        state.playingPackageNames = services;
+        state.conservative = conservative;
+        selection = 0;
+    }
+
+    /**
+     * Brings the state up to the time of an event, and takes on what was
+     * recorded with it.
+     */
+    void prepare(Trace.Event event) {
+        if (state.selectorOpen && event.time >= selectorDeadline) {
+            state.selectorOpen = false;
+        }
+        if (event.musicActive != null) {
+            state.musicActive = event.musicActive;
+        }
+        if (event.selectorOpen != null) {
+            state.selectorOpen = event.selectorOpen;
+            selectorDeadline = event.time + selectorTimeoutMillis;
+        }
+        if (event.playingPackageNames != null) {
+            state.playingPackageNames = event.playingPackageNames;
+        }
+    }
+
+    /**
+     * Carries out a routing decision the way {@code MediaButtonReceiver} and
+     * the selector would.
+     * 
+     * @param decision
+     *            The decision.
+     * @param action
+     *            The action of the key event that was routed.
+     * @param time
+     *            When it happened.
+     */
+    void apply(RouteDecision<SyntheticReceiver> decision, int action, long time) {
+        if (!decision.isDispatch() || action != MediaKeys.ACTION_UP) {
+            return;
+        }
+        int keyCode = decision.getKeyCode();
+        switch (decision.getRoute()) {
+        case SELECTOR_OPEN:
+            onSelectorKey(keyCode, time);
+            break;
+        case SHOW_SELECTOR:
+            showSelector(time);
+            break;
+        case FAN_OUT:
+            for (SyntheticReceiver player : directory.getSelectableReceivers()) {
+                onPlayerKey(player, keyCode);
+            }
+            break;
+        case LAST_RECEIVER:
+        case PLAYING_RECEIVER:
+        case SOLE_RECEIVER:
+        case CONTEXT_RECEIVER:
+        case PREDICTED_RECEIVER:
+            onPlayerKey(decision.getReceiver(), keyCode);
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Opens the selector, as holding the headset button does.
+     */
+    void showSelector(long time) {
+        state.selectorOpen = true;
+        selection = 0;
+        selectorDeadline = time + selectorTimeoutMillis;
+    }
+
+    private void onSelectorKey(int keyCode, long time) {
+        List<SyntheticReceiver> players = directory.getSelectableReceivers();
+        selectorDeadline = time + selectorTimeoutMillis;
+        switch (keyCode) {
+        case MediaKeys.KEYCODE_MEDIA_NEXT:
+            selection = selection + 1 < players.size() ? selection + 1 : 0;
+            break;
+        case MediaKeys.KEYCODE_MEDIA_PREVIOUS:
+            selection = selection > 0 ? selection - 1 : players.size() - 1;
+            break;
+        case MediaKeys.KEYCODE_MEDIA_STOP:
+            state.selectorOpen = false;
+            break;
+        default:
+            // Play, play/pause and the headset button pick the selection
+            state.selectorOpen = false;
+            if (selection < players.size()) {
+                onPlayerKey(players.get(selection), MediaKeys.KEYCODE_MEDIA_PLAY);
+            }
+            break;
+        }
+    }
+
+    /**
+     * A player gets a key. Null if it went to the last media button receiver,
+     * which is already the player.
+     */
+    private void onPlayerKey(SyntheticReceiver player, int keyCode) {
+        switch (keyCode) {
+        case MediaKeys.KEYCODE_MEDIA_PLAY_PAUSE:
+            state.musicActive = !state.musicActive;
+            break;
+        case MediaKeys.KEYCODE_MEDIA_PAUSE:
+        case MediaKeys.KEYCODE_MEDIA_STOP:
+            state.musicActive = false;
+            break;
+        default:
+            state.musicActive = true;
+            break;
+        }
+        if (player != null && state.musicActive) {
+            PlayingState playing = playingStates.get(player);
+            if (playing == null) {
+                playing = new PlayingState(services, player);
+                playingStates.put(player, playing);
+            }
+            state.playingPackageNames = playing.playingPackageNames;
+            if (registerLastReceiver) {
+                state.lastMediaButtonReceiver = playing.mediaButtonReceiver;
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.harleensahni.android.mbr.core.ReceiverNames;
+
+/**
+ * Stand in for a media button receiver of a made up app.
+ * 
+ * @author Harleen Sahni
+ */
+final class SyntheticReceiver {
+
+    static final String OWN_PACKAGE = "com.harleensahni.android.mbr";
+    static final String OWN_CLASS_NAME = OWN_PACKAGE + ".receivers.MediaButtonReceiver";
+
+    static final ReceiverNames<SyntheticReceiver> NAMES = new ReceiverNames<SyntheticReceiver>() {
+        @Override
+        public String getId(SyntheticReceiver receiver) {
+            return receiver.className;
+        }
+
+        @Override
+        public String getPackageName(SyntheticReceiver receiver) {
+            return receiver.packageName;
+        }
+
+        @Override
+        public String getClassName(SyntheticReceiver receiver) {
+            return receiver.className;
+        }
+    };
+
+    final String packageName;
+    final String className;
+
+    SyntheticReceiver(String packageName, String className) {
+        this.packageName = packageName;
+        this.className = className;
+    }
+
+    static String packageName(int i) {
+        return "com.example.player" + i;
+    }
+
+    /**
+     * Creates our own receiver followed by {@code count} players, in priority
+     * order.
+     */
+    static List<SyntheticReceiver> create(int count) {
+        List<SyntheticReceiver> receivers = new ArrayList<SyntheticReceiver>(count + 1);
+        receivers.add(new SyntheticReceiver(OWN_PACKAGE, OWN_CLASS_NAME));
+        for (int i = 0; i < count; i++) {
+            receivers.add(new SyntheticReceiver(packageName(i), packageName(i) + ".MediaButtonIntentReceiver"));
+        }
+        return receivers;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.benchmarks;
+
+import java.util.List;
+
+import com.harleensahni.android.mbr.core.ReceiverNames;
+import com.harleensahni.android.mbr.core.RoutingState;
+
+/**
+ * Routing state with fixed answers.
+ * 
+ * @author Harleen Sahni
+ */
+final class SyntheticRoutingState implements RoutingState {
+
+    boolean selectorOpen;
+    boolean musicActive;
+    String lastMediaButtonReceiver;
+    List<String> playingPackageNames;
+    boolean conservative;
+    String contextReceiverId;
+
+    @Override
+    public boolean isSelectorOpen() {
+        return selectorOpen;
+    }
+
+    @Override
+    public boolean isFanOut(int keyCode) {
+        return false;
+    }
+
+    @Override
+    public boolean isMusicActive() {
+        return musicActive;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    public String getLastMediaButtonReceiver() {
+        return lastMediaButtonReceiver;
+    }
+
+    @Override
+    public List<String> getPlayingPackageNames() {
+        return playingPackageNames;
+    }
+
+    @Override
+    public boolean isConservative() {
+        return conservative;
+    }
+
+    @Override
+    public String getContextReceiverId() {
+        return contextReceiverId;
+    }
+
+    @Override
+    public <R> R predictReceiver(int keyCode, List<R> candidates, ReceiverNames<R> names) {
+        return null;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.harleensahni.android.mbr.core.MediaKeys;
+
+/**
+ * Generates a {@link Trace} of presses. Bursts of presses, like skipping a few
+ * tracks, start at random with a given average rate. Each press is a down
+ * followed by an up a fixed hold later, and the next press in the burst comes
+ * a fixed gap after that up. Keys are picked at random by weight.
+ * 
+ * @author Harleen Sahni
+ */
+final class SyntheticTrace {
+
+    /** How many presses to generate. */
+    int presses = 10000;
+
+    /** Average bursts per second. */
+    double burstsPerSecond = 0.5;
+
+    /** Presses per burst. */
+    int burstSize = 3;
+
+    /** Milliseconds from a press's up to the next press in a burst. */
+    long burstGapMillis = 250;
+
+    /** Milliseconds between a press's down and up. */
+    long holdMillis = 80;
+
+    /** Key codes to pick from. */
+    int[] keyCodes = { MediaKeys.KEYCODE_MEDIA_PLAY_PAUSE, MediaKeys.KEYCODE_MEDIA_NEXT,
+            MediaKeys.KEYCODE_MEDIA_PREVIOUS, MediaKeys.KEYCODE_HEADSETHOOK };
+
+    /** Weight of each of {@link #keyCodes}. */
+    int[] keyWeights = { 3, 5, 1, 2 };
+
+    long seed = 1;
+
+    /**
+     * Sets the key mix from a string like {@code 85=3,87=5}, key codes and
+     * their weights.
+     * 
+     * @throws IllegalArgumentException
+     *             If the mix can't be parsed.
+     */
+    void setKeyMix(String mix) {
+        String[] entries = mix.split(",");
+        int[] codes = new int[entries.length];
+        int[] weights = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            String[] parts = entries[i].split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected keyCode=weight, got " + entries[i]);
+            }
+            codes[i] = Integer.parseInt(parts[0].trim());
+            weights[i] = Integer.parseInt(parts[1].trim());
+            if (weights[i] <= 0) {
+                throw new IllegalArgumentException("Weights must be positive, got " + entries[i]);
+            }
+        }
+        keyCodes = codes;
+        keyWeights = weights;
+    }
+
+    Trace generate() {
+        Random random = new Random(seed);
+        int totalWeight = 0;
+        for (int weight : keyWeights) {
+            totalWeight += weight;
+        }
+
+        List<Trace.Event> events = new ArrayList<Trace.Event>(presses * 2);
+        long time = 0;
+        int press = 0;
+        while (press < presses) {
+            // Exponentially distributed time between bursts, as for random
+            // arrivals
+            time += (long) (-Math.log(1 - random.nextDouble()) * 1000 / burstsPerSecond);
+            for (int i = 0; i < burstSize && press < presses; i++, press++) {
+                int keyCode = pickKeyCode(random.nextInt(totalWeight));
+                events.add(new Trace.Event(time, MediaKeys.ACTION_DOWN, keyCode));
+                events.add(new Trace.Event(time + holdMillis, MediaKeys.ACTION_UP, keyCode));
+                time += holdMillis + burstGapMillis;
+            }
+        }
+        return new Trace(events);
+    }
+
+    private int pickKeyCode(int weight) {
+        for (int i = 0; i < keyCodes.length; i++) {
+            weight -= keyWeights[i];
+            if (weight < 0) {
+                return keyCodes[i];
+            }
+        }
+        return keyCodes[keyCodes.length - 1];
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.harleensahni.android.mbr.core.MediaKeys;
+
+/**
+ * A stream of key events to replay through routing, synthetic or recorded on a
+ * device. As text, one event per line:
+ * 
+ * <pre>
+ * &lt;millis&gt; &lt;down|up&gt; &lt;keyCode&gt; [music=0|1] [selector=0|1] [playing=pkg,pkg...]
+ * </pre>
+ * 
+ * where the time is the key event's uptime and the optional fields are the
+ * device state when it was recorded. Fields that are left out are simulated.
+ * Blank lines and lines starting with {@code #} are skipped.
+ * 
+ * @author Harleen Sahni
+ */
+final class Trace {
+
+    /** A key event and, if it was recorded, the device state at the time. */
+    static final class Event {
+        final long time;
+        final int action;
+        final int keyCode;
+        /** Null if not recorded. */
+        final Boolean musicActive;
+        /** Null if not recorded. */
+        final Boolean selectorOpen;
+        /** Null if not recorded. */
+        final List<String> playingPackageNames;
+
+        Event(long time, int action, int keyCode, Boolean musicActive, Boolean selectorOpen,
+                List<String> playingPackageNames) {
+            this.time = time;
+            this.action = action;
+            this.keyCode = keyCode;
+            this.musicActive = musicActive;
+            this.selectorOpen = selectorOpen;
+            this.playingPackageNames = playingPackageNames;
+        }
+
+        Event(long time, int action, int keyCode) {
+            this(time, action, keyCode, null, null, null);
+        }
+    }
+
+    final List<Event> events;
+
+    Trace(List<Event> events) {
+        this.events = Collections.unmodifiableList(events);
+    }
+
+    /**
+     * Reads a trace.
+     * 
+     * @throws IllegalArgumentException
+     *             If a line can't be parsed.
+     */
+    static Trace read(BufferedReader reader) throws IOException {
+        List<Event> events = new ArrayList<Event>();
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                events.add(parse(line));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + line, e);
+            }
+        }
+        return new Trace(events);
+    }
+
+    /**
+     * Writes the trace in the format {@link #read} takes.
+     */
+    void write(Writer writer) throws IOException {
+        for (Event event : events) {
+            StringBuilder line = new StringBuilder();
+            line.append(event.time).append(event.action == MediaKeys.ACTION_DOWN ? " down " : " up ")
+                    .append(event.keyCode);
+            if (event.musicActive != null) {
+                line.append(" music=").append(event.musicActive ? 1 : 0);
+            }
+            if (event.selectorOpen != null) {
+                line.append(" selector=").append(event.selectorOpen ? 1 : 0);
+            }
+            if (event.playingPackageNames != null) {
+                line.append(" playing=");
+                for (int i = 0; i < event.playingPackageNames.size(); i++) {
+                    line.append(i == 0 ? "" : ",").append(event.playingPackageNames.get(i));
+                }
+            }
+            writer.write(line.append('\n').toString());
+        }
+    }
+
+    private static Event parse(String line) {
+        String[] fields = line.split("\\s+");
+        if (fields.length < 3) {
+            throw new IllegalArgumentException("Expected time, action and key code");
+        }
+        long time = Long.parseLong(fields[0]);
+        int action;
+        if ("down".equals(fields[1])) {
+            action = MediaKeys.ACTION_DOWN;
+        } else if ("up".equals(fields[1])) {
+            action = MediaKeys.ACTION_UP;
+        } else {
+            throw new IllegalArgumentException("Unknown action " + fields[1]);
+        }
+        int keyCode = Integer.parseInt(fields[2]);
+
+        Boolean musicActive = null;
+        Boolean selectorOpen = null;
+        List<String> playingPackageNames = null;
+        for (int i = 3; i < fields.length; i++) {
+            String field = fields[i];
+            if (field.startsWith("music=")) {
+                musicActive = parseFlag(field.substring("music=".length()));
+            } else if (field.startsWith("selector=")) {
+                selectorOpen = parseFlag(field.substring("selector=".length()));
+            } else if (field.startsWith("playing=")) {
+                String packages = field.substring("playing=".length());
+                playingPackageNames = packages.length() == 0 ? Collections.<String> emptyList() : Arrays
+                        .asList(packages.split(","));
+            } else {
+                throw new IllegalArgumentException("Unknown field " + field);
+            }
+        }
+        return new Event(time, action, keyCode, musicActive, selectorOpen, playingPackageNames);
+    }
+
+    private static Boolean parseFlag(String value) {
+        if ("1".equals(value)) {
+            return Boolean.TRUE;
+        } else if ("0".equals(value)) {
+            return Boolean.FALSE;
+        }
+        throw new IllegalArgumentException("Expected 0 or 1, got " + value);
+    }
+}
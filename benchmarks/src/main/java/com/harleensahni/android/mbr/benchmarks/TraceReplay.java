@@ -0,0 +1,330 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import com.harleensahni.android.mbr.core.GestureRecognizer;
+import com.harleensahni.android.mbr.core.GestureRecognizer.Gesture;
+import com.harleensahni.android.mbr.core.KeyTable;
+import com.harleensahni.android.mbr.core.LatencyHistogram;
+import com.harleensahni.android.mbr.core.MediaKeys;
+import com.harleensahni.android.mbr.core.ReceiverDirectory;
+import com.harleensahni.android.mbr.core.RouteDecision;
+import com.harleensahni.android.mbr.core.RouteDecision.Route;
+import com.harleensahni.android.mbr.core.Router;
+
+/**
+ * Replays a {@link Trace}, synthetic or recorded, through routing the way
+ * {@code MediaButtonReceiver} does it, headset gestures included, against a
+ * {@link SimulatedDevice}. Reports throughput, the latency of each decision,
+ * allocation per event and how many events took each route, so both the
+ * performance and the behavior of routing can be compared between changes.
+ * <p>
+ * Run with
+ * 
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.harleensahni.android.mbr.benchmarks.TraceReplay [options]
+ * </pre>
+ * 
+ * and {@code --help} for the options.
+ * 
+ * @author Harleen Sahni
+ */
+public final class TraceReplay {
+
+    private static final String USAGE = "Options:\n"
+            + "  --trace FILE             replay a recorded trace instead of a synthetic one\n"
+            + "  --write FILE             write the trace that is replayed to FILE\n"
+            + "  --presses N              synthetic presses (10000)\n"
+            + "  --rate N                 synthetic bursts per second (0.5)\n"
+            + "  --burst N                presses per burst (3)\n"
+            + "  --burst-gap MILLIS       from a press's up to the next press in a burst (250)\n"
+            + "  --hold MILLIS            from a press's down to its up (80)\n"
+            + "  --mix CODE=WEIGHT,...    key mix (85=3,87=5,88=1,79=2)\n"
+            + "  --seed N                 random seed (1)\n"
+            + "  --receivers N            players installed (20)\n"
+            + "  --services N             running services of other apps (50)\n"
+            + "  --conservative           show the selector when the player can't be found\n"
+            + "  --no-last-receiver       players don't register as media button receiver, as before 4.0\n"
+            + "  --gestures               turn headset button clicks into gestures\n"
+            + "  --gesture-timeout MILLIS (400)\n"
+            + "  --selector-timeout MILLIS (5000)\n"
+            + "  --warmup N               passes before measuring (5)\n"
+            + "  --passes N               measured passes (5)\n";
+
+    /** How long the headset button has to be held to open the selector. */
+    private static final long LONG_PRESS_MILLIS = 800;
+
+    private final Trace trace;
+
+    private final SimulatedDevice device;
+
+    private final GestureRecognizer recognizer;
+
+    private final RouteDecision<SyntheticReceiver> decision = new RouteDecision<SyntheticReceiver>();
+
+    /** Nanoseconds per decision. The histogram doesn't mind the unit. */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final long[] routeCounts = new long[Route.values().length];
+
+    private final long[] gestureCounts = new long[Gesture.values().length];
+
+    /** Whether to record latency and outcomes. */
+    private boolean measuring;
+
+    private TraceReplay(Trace trace, SimulatedDevice device, GestureRecognizer recognizer) {
+        this.trace = trace;
+        this.device = device;
+        this.recognizer = recognizer;
+    }
+
+    public static void main(String[] args) throws IOException {
+        SyntheticTrace synthetic = new SyntheticTrace();
+        String traceFile = null;
+        String writeFile = null;
+        int receiverCount = 20;
+        int serviceCount = 50;
+        boolean conservative = false;
+        boolean registerLastReceiver = true;
+        boolean gestures = false;
+        long gestureTimeoutMillis = 400;
+        long selectorTimeoutMillis = 5000;
+        int warmupPasses = 5;
+        int passes = 5;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if ("--help".equals(option)) {
+                    System.out.print(USAGE);
+                    return;
+                } else if ("--conservative".equals(option)) {
+                    conservative = true;
+                } else if ("--no-last-receiver".equals(option)) {
+                    registerLastReceiver = false;
+                } else if ("--gestures".equals(option)) {
+                    gestures = true;
+                } else if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + option);
+                } else {
+                    String value = args[++i];
+                    if ("--trace".equals(option)) {
+                        traceFile = value;
+                    } else if ("--write".equals(option)) {
+                        writeFile = value;
+                    } else if ("--presses".equals(option)) {
+                        synthetic.presses = Integer.parseInt(value);
+                    } else if ("--rate".equals(option)) {
+                        synthetic.burstsPerSecond = Double.parseDouble(value);
+                    } else if ("--burst".equals(option)) {
+                        synthetic.burstSize = Integer.parseInt(value);
+                    } else if ("--burst-gap".equals(option)) {
+                        synthetic.burstGapMillis = Long.parseLong(value);
+                    } else if ("--hold".equals(option)) {
+                        synthetic.holdMillis = Long.parseLong(value);
+                    } else if ("--mix".equals(option)) {
+                        synthetic.setKeyMix(value);
+                    } else if ("--seed".equals(option)) {
+                        synthetic.seed = Long.parseLong(value);
+                    } else if ("--receivers".equals(option)) {
+                        receiverCount = Integer.parseInt(value);
+                    } else if ("--services".equals(option)) {
+                        serviceCount = Integer.parseInt(value);
+                    } else if ("--gesture-timeout".equals(option)) {
+                        gestureTimeoutMillis = Long.parseLong(value);
+                    } else if ("--selector-timeout".equals(option)) {
+                        selectorTimeoutMillis = Long.parseLong(value);
+                    } else if ("--warmup".equals(option)) {
+                        warmupPasses = Integer.parseInt(value);
+                    } else if ("--passes".equals(option)) {
+                        passes = Integer.parseInt(value);
+                    } else {
+                        throw new IllegalArgumentException("Unknown option " + option);
+                    }
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            System.exit(1);
+            return;
+        }
+
+        Trace trace;
+        if (traceFile != null) {
+            BufferedReader reader = new BufferedReader(new FileReader(traceFile));
+            try {
+                trace = Trace.read(reader);
+            } finally {
+                reader.close();
+            }
+        } else {
+            trace = synthetic.generate();
+        }
+        if (writeFile != null) {
+            Writer writer = new FileWriter(writeFile);
+            try {
+                trace.write(writer);
+            } finally {
+                writer.close();
+            }
+        }
+
+        // Hide every tenth player, as in RouterBenchmark
+        List<SyntheticReceiver> receivers = Collections.unmodifiableList(SyntheticReceiver.create(receiverCount));
+        Set<String> hidden = new HashSet<String>();
+        for (int i = 1; i < receivers.size(); i += 10) {
+            hidden.add(receivers.get(i).className);
+        }
+        ReceiverDirectory<SyntheticReceiver> directory = new ReceiverDirectory<SyntheticReceiver>(receivers,
+                Collections.unmodifiableSet(hidden), SyntheticReceiver.OWN_CLASS_NAME, SyntheticReceiver.NAMES);
+        SimulatedDevice device = new SimulatedDevice(directory, serviceCount, conservative, registerLastReceiver,
+                selectorTimeoutMillis);
+        GestureRecognizer recognizer = gestures ? new GestureRecognizer(gestureTimeoutMillis, LONG_PRESS_MILLIS)
+                : null;
+
+        TraceReplay replay = new TraceReplay(trace, device, recognizer);
+        for (int i = 0; i < warmupPasses; i++) {
+            replay.replay();
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        replay.measuring = true;
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < passes; i++) {
+            replay.replay();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        replay.report((traceFile != null ? traceFile : "synthetic") + ", " + receiverCount + " players, "
+                + serviceCount + " services" + (gestures ? ", gestures" : ""), passes, elapsedNanos, allocated);
+    }
+
+    /**
+     * Replays the trace once from a fresh device.
+     */
+    private void replay() {
+        device.reset();
+        if (recognizer != null) {
+            recognizer.reset();
+        }
+        List<Trace.Event> events = trace.events;
+        for (int i = 0; i < events.size(); i++) {
+            Trace.Event event = events.get(i);
+            device.prepare(event);
+
+            if (recognizer != null) {
+                // Deadlines that passed before this event, as the timer would
+                // have fired them
+                long deadline;
+                while ((deadline = recognizer.getDeadline()) <= event.time) {
+                    onGesture(recognizer.onDeadline(deadline), deadline);
+                }
+                if (event.keyCode == MediaKeys.KEYCODE_HEADSETHOOK && !device.state.isSelectorOpen()) {
+                    onGesture(recognizer.onKey(event.action, event.time, event.time), event.time);
+                    continue;
+                }
+            }
+
+            route(event.action, event.keyCode, event.time);
+        }
+    }
+
+    private void route(int action, int keyCode, long time) {
+        long start = System.nanoTime();
+        Router.decide(action, keyCode, KeyTable.DEFAULT, device.state, device.directory, decision);
+        long nanos = System.nanoTime() - start;
+        if (measuring) {
+            latency.record(nanos);
+            routeCounts[decision.getRoute().ordinal()]++;
+        }
+        device.apply(decision, action, time);
+    }
+
+    /**
+     * Presses the key a gesture stands for, like {@code HeadsetGestures}.
+     */
+    private void onGesture(Gesture gesture, long time) {
+        if (gesture == null) {
+            return;
+        }
+        if (measuring) {
+            gestureCounts[gesture.ordinal()]++;
+        }
+        int keyCode;
+        switch (gesture) {
+        case DOUBLE_CLICK:
+            keyCode = MediaKeys.KEYCODE_MEDIA_NEXT;
+            break;
+        case TRIPLE_CLICK:
+            keyCode = MediaKeys.KEYCODE_MEDIA_PREVIOUS;
+            break;
+        case LONG_PRESS:
+            device.showSelector(time);
+            return;
+        default:
+            keyCode = MediaKeys.KEYCODE_MEDIA_PLAY_PAUSE;
+            break;
+        }
+        route(MediaKeys.ACTION_DOWN, keyCode, time);
+        route(MediaKeys.ACTION_UP, keyCode, time);
+    }
+
+    private void report(String description, int passes, long elapsedNanos, long allocatedBytes) {
+        long events = (long) trace.events.size() * passes;
+        long decisions = latency.getCount();
+        System.out.println("Trace: " + trace.events.size() + " events (" + description + "), " + passes
+                + " measured passes");
+        System.out.println(String.format(Locale.US, "Throughput: %.0f events/s",
+                events * 1e9 / Math.max(1, elapsedNanos)));
+        System.out.println(String.format(Locale.US, "Decision latency: p50=%dns p90=%dns p99=%dns max=%dns mean=%dns",
+                latency.getPercentile(50), latency.getPercentile(90), latency.getPercentile(99), latency.getMax(),
+                latency.getMean()));
+        System.out.println(String.format(Locale.US, "Allocation: %.1f bytes/event", (double) allocatedBytes
+                / Math.max(1, events)));
+        System.out.println("Routes (" + decisions + " decisions):");
+        for (Route route : Route.values()) {
+            long count = routeCounts[route.ordinal()];
+            if (count > 0) {
+                System.out.println(String.format(Locale.US, "  %-20s %10d %6.2f%%", route, count, count * 100.0
+                        / decisions));
+            }
+        }
+        if (recognizer != null) {
+            System.out.println("Gestures:");
+            for (Gesture gesture : Gesture.values()) {
+                System.out.println(String.format(Locale.US, "  %-20s %10d", gesture,
+                        gestureCounts[gesture.ordinal()]));
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Which receiver the user picked last in each audio context: with a given
+ * bluetooth device connected, a wired headset plugged in, docked, or on the
+ * speaker. Looking up the receiver for a context is one or two hash lookups.
+ * Encodes to a compact string for persisting.
+ * <p>
+ * We don't always know which bluetooth device is connected, so a pick with a
+ * known device is also recorded for {@link #BLUETOOTH}, and a device nothing
+ * was picked with goes by the last pick on any device.
+ * <p>
+ * Not thread safe.
+ * 
+ * @author Harleen Sahni
+ */
+public final class ContextRoutingTable {
+
+    /** Context of a wired headset. */
+    public static final String WIRED = "wired";
+
+    /** Context of a dock. */
+    public static final String DOCK = "dock";
+
+    /** Context of the phone's speaker. */
+    public static final String SPEAKER = "speaker";
+
+    /** Context of a bluetooth device whose address we don't know. */
+    public static final String BLUETOOTH = "bt";
+
+    /** How many contexts are remembered. The least recently picked are dropped. */
+    private static final int MAX_CONTEXTS = 32;
+
+    /** Receiver ids by context, least recently picked first. */
+    private final Map<String, String> receiverIds = new LinkedHashMap<String, String>();
+
+    /**
+     * @param address
+     *            A bluetooth device's address.
+     * @return The context of the bluetooth device.
+     */
+    public static String bluetooth(String address) {
+        return BLUETOOTH + ":" + address;
+    }
+
+    /**
+     * @param context
+     *            The audio context.
+     * @return Id of the receiver picked last in the context, or with any
+     *         bluetooth device for a device nothing was picked with, or null.
+     */
+    public String getReceiverId(String context) {
+        String id = receiverIds.get(context);
+        if (id == null && context.startsWith(BLUETOOTH + ":")) {
+            id = receiverIds.get(BLUETOOTH);
+        }
+        return id;
+    }
+
+    /**
+     * Records that the user picked a receiver in a context.
+     * 
+     * @param context
+     *            The audio context.
+     * @param id
+     *            The receiver's id.
+     */
+    public void put(String context, String id) {
+        if (context.startsWith(BLUETOOTH + ":")) {
+            putOne(BLUETOOTH, id);
+        }
+        putOne(context, id);
+    }
+
+    private void putOne(String context, String id) {
+        // Removed first so it moves to the end
+        receiverIds.remove(context);
+        receiverIds.put(context, id);
+        if (receiverIds.size() > MAX_CONTEXTS) {
+            Iterator<String> oldest = receiverIds.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    /**
+     * @return Whether nothing was ever picked.
+     */
+    public boolean isEmpty() {
+        return receiverIds.isEmpty();
+    }
+
+    /**
+     * Encodes the table as one line per context, for {@link #decode(String)}.
+     */
+    public String encode() {
+        StringBuilder encoded = new StringBuilder();
+        for (Map.Entry<String, String> entry : receiverIds.entrySet()) {
+            encoded.append(entry.getKey()).append('\t').append(entry.getValue()).append('\n');
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Decodes what {@link #encode()} produced. Lines that can't be parsed are
+     * skipped.
+     * 
+     * @param encoded
+     *            The encoded table, may be null.
+     * @return The table.
+     */
+    public static ContextRoutingTable decode(String encoded) {
+        ContextRoutingTable table = new ContextRoutingTable();
+        if (encoded == null) {
+            return table;
+        }
+        for (String line : encoded.split("\n")) {
+            String[] fields = line.split("\t");
+            if (fields.length == 2) {
+                table.put(fields[0], fields[1]);
+            }
+        }
+        return table;
+    }
+}
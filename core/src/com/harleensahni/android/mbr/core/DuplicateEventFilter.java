@@ -0,0 +1,103 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Spots key events we've already seen, such as a press that reaches us both
+ * directly and rebroadcast, or a bluetooth stack sending the same event twice.
+ * Remembers fingerprints of the last {@link #CAPACITY} events in a ring, so
+ * checking an event costs the same small, fixed amount of work whatever
+ * happened before, never allocates and never locks.
+ * <p>
+ * Events are told apart by time, key code, action and device. Only an event
+ * seen again within {@link #WINDOW_MILLIS} counts as a duplicate, and events
+ * without a time, as made by apps and headset bridges that build their own,
+ * are never taken for one, since every press of the same key would look the
+ * same. Two threads checking the same event at the same moment may both be
+ * told it's new.
+ * 
+ * @author Harleen Sahni
+ */
+public final class DuplicateEventFilter {
+
+    /** How many events are remembered. A power of two. */
+    public static final int CAPACITY = 16;
+
+    /** How long after we first see an event a copy of it counts as a duplicate. */
+    public static final long WINDOW_MILLIS = 500;
+
+    /** Set in every fingerprint, so an empty slot never matches. */
+    private static final long VALID = 1L << 63;
+
+    private static final int TIME_BITS = 40;
+    private static final int KEY_CODE_BITS = 10;
+    private static final int ACTION_BITS = 2;
+    private static final int DEVICE_BITS = 63 - TIME_BITS - KEY_CODE_BITS - ACTION_BITS;
+
+    private final AtomicLongArray fingerprints = new AtomicLongArray(CAPACITY);
+
+    /** When the event in the same slot of {@link #fingerprints} was seen. */
+    private final AtomicLongArray seenAt = new AtomicLongArray(CAPACITY);
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * Checks whether an event was seen before, and remembers it if not.
+     * 
+     * @param eventTime
+     *            The event's time.
+     * @param keyCode
+     *            The event's key code, as sent.
+     * @param action
+     *            The event's action.
+     * @param deviceId
+     *            The id of the device the event came from.
+     * @param now
+     *            When the event was received, in uptime milliseconds.
+     * @return Whether the event is one of the last {@link #CAPACITY} events
+     *         and was seen within {@link #WINDOW_MILLIS}.
+     */
+    public boolean isDuplicate(long eventTime, int keyCode, int action, int deviceId, long now) {
+        if (eventTime == 0) {
+            return false;
+        }
+        long fingerprint = fingerprint(eventTime, keyCode, action, deviceId);
+        for (int i = 0; i < CAPACITY; i++) {
+            if (fingerprints.get(i) == fingerprint && now - seenAt.get(i) <= WINDOW_MILLIS) {
+                return true;
+            }
+        }
+        int slot = next.getAndIncrement() & (CAPACITY - 1);
+        seenAt.set(slot, now);
+        fingerprints.set(slot, fingerprint);
+        return false;
+    }
+
+    /**
+     * Packs an event into a long. Fields are cut down to what fits; the time
+     * keeps 34 years of milliseconds, more than any uptime.
+     */
+    static long fingerprint(long eventTime, int keyCode, int action, int deviceId) {
+        long fingerprint = eventTime & ((1L << TIME_BITS) - 1);
+        fingerprint = (fingerprint << KEY_CODE_BITS) | (keyCode & ((1 << KEY_CODE_BITS) - 1));
+        fingerprint = (fingerprint << ACTION_BITS) | (action & ((1 << ACTION_BITS) - 1));
+        fingerprint = (fingerprint << DEVICE_BITS) | (deviceId & ((1 << DEVICE_BITS) - 1));
+        return fingerprint | VALID;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Sending a press to several receivers at once, for keys like stop that the
+ * user wants every player to get. Holds which key codes fan out and which
+ * receivers get them.
+ * 
+ * @author Harleen Sahni
+ */
+public final class FanOut {
+
+    private final BitSet keyCodes;
+
+    private final Set<String> chosenIds;
+
+    /**
+     * Creates a fan out configuration.
+     * 
+     * @param keyCodes
+     *            The key codes that fan out, comma separated, empty for none.
+     * @param chosenIds
+     *            The ids of the receivers that get fanned out presses, comma
+     *            separated, empty for all visible receivers.
+     */
+    public FanOut(String keyCodes, String chosenIds) {
+        this.keyCodes = new BitSet();
+        for (String keyCode : split(keyCodes)) {
+            try {
+                int parsed = Integer.parseInt(keyCode.trim());
+                if (parsed >= 0) {
+                    this.keyCodes.set(parsed);
+                }
+            } catch (NumberFormatException e) {
+                // Leave out what isn't a key code
+            }
+        }
+        this.chosenIds = Collections.unmodifiableSet(new HashSet<String>(split(chosenIds)));
+    }
+
+    /**
+     * Checks whether presses of a key fan out.
+     * 
+     * @param keyCode
+     *            The remapped key code.
+     * @return Whether it fans out.
+     */
+    public boolean isFanOut(int keyCode) {
+        return keyCode >= 0 && keyCodes.get(keyCode);
+    }
+
+    /**
+     * @return The ids of the receivers chosen to get fanned out presses, empty
+     *         if all visible receivers get them.
+     */
+    public Set<String> getChosenIds() {
+        return chosenIds;
+    }
+
+    /**
+     * Picks the receivers a fanned out press goes to: the chosen ones that
+     * are selectable, or all selectable ones if none were chosen or none of
+     * the chosen ones are selectable any more, since they were hidden or
+     * uninstalled. The press is never dropped for want of a target.
+     * 
+     * @param selectable
+     *            The receivers the selector would show.
+     * @param names
+     *            Gets the receivers' names.
+     * @return The targets in priority order.
+     */
+    public <R> List<R> getTargets(List<R> selectable, ReceiverNames<R> names) {
+        if (chosenIds.isEmpty()) {
+            return selectable;
+        }
+        List<R> targets = new ArrayList<R>(chosenIds.size());
+        for (R receiver : selectable) {
+            if (chosenIds.contains(names.getId(receiver))) {
+                targets.add(receiver);
+            }
+        }
+        return targets.isEmpty() ? selectable : targets;
+    }
+
+    /**
+     * Writes which receivers a fanned out press was handed to the system for,
+     * one per line. Whether they got it isn't known, the broadcasts don't
+     * report back.
+     * 
+     * @param keyCode
+     *            The key code sent.
+     * @param targets
+     *            The ids of the receivers it was handed over for.
+     * @param micros
+     *            How long handing it over for all of them took.
+     * @return The report.
+     */
+    public static String report(int keyCode, List<String> targets, long micros) {
+        StringBuilder report = new StringBuilder();
+        report.append("fan out ").append(keyCode).append(" to ").append(targets.size()).append(" in ")
+                .append(micros).append("us\n");
+        for (String target : targets) {
+            report.append(target).append('\n');
+        }
+        return report.toString();
+    }
+
+    private static List<String> split(String list) {
+        List<String> parts = new ArrayList<String>();
+        if (list != null) {
+            for (String part : list.split(",")) {
+                if (part.length() > 0) {
+                    parts.add(part);
+                }
+            }
+        }
+        return parts;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+/**
+ * Recognizes single, double and triple clicks and long presses from the down
+ * and up events of a single button. Doesn't keep time itself: after every call
+ * the caller arranges for {@link #onDeadline(long)} to be called at
+ * {@link #getDeadline()}. Nothing is allocated per event.
+ * <p>
+ * Not thread safe.
+ * 
+ * @author Harleen Sahni
+ */
+public final class GestureRecognizer {
+
+    /** Returned by {@link #getDeadline()} when nothing is pending. */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /** What the user did with the button. */
+    public enum Gesture {
+        SINGLE_CLICK, DOUBLE_CLICK, TRIPLE_CLICK, LONG_PRESS
+    }
+
+    /** Clicks beyond this are counted as the start of a new gesture. */
+    private static final int MAX_CLICKS = 3;
+
+    private final long longPressMillis;
+
+    private long clickTimeoutMillis;
+
+    /** Whether the button is down. */
+    private boolean pressed;
+
+    /** Whether the current press has already been reported as a long press. */
+    private boolean longPressed;
+
+    /** Clicks so far in the current gesture. */
+    private int clicks;
+
+    private long deadline = NO_DEADLINE;
+
+    /**
+     * @param clickTimeoutMillis
+     *            How long to wait after a click for another one before
+     *            deciding what the gesture was.
+     * @param longPressMillis
+     *            How long the button has to be held for a long press.
+     */
+    public GestureRecognizer(long clickTimeoutMillis, long longPressMillis) {
+        this.clickTimeoutMillis = clickTimeoutMillis;
+        this.longPressMillis = longPressMillis;
+    }
+
+    /**
+     * Sets how long to wait after a click for another one. This is the latency
+     * added to single and double clicks. Applies from the next click on.
+     * 
+     * @param clickTimeoutMillis
+     *            The timeout in milliseconds.
+     */
+    public void setClickTimeoutMillis(long clickTimeoutMillis) {
+        this.clickTimeoutMillis = clickTimeoutMillis;
+    }
+
+    /**
+     * Handles a key event of the button.
+     * 
+     * @param action
+     *            {@link MediaKeys#ACTION_DOWN} or {@link MediaKeys#ACTION_UP}.
+     * @param eventTime
+     *            When the event happened, on the same clock as the deadlines.
+     *            Some senders leave it 0 or pass a time from another clock.
+     * @param now
+     *            The current time, used instead of an event time that is
+     *            unset, in the future or so old that the button would already
+     *            count as held, so a bad time can't turn a click into a long
+     *            press.
+     * @return The gesture if this event completes one, otherwise null.
+     */
+    public Gesture onKey(int action, long eventTime, long now) {
+        if (eventTime <= 0 || eventTime > now || now - eventTime >= longPressMillis) {
+            eventTime = now;
+        }
+        if (action == MediaKeys.ACTION_DOWN) {
+            // Repeats while the button is held don't start anything new
+            if (!pressed) {
+                pressed = true;
+                longPressed = false;
+                deadline = eventTime + longPressMillis;
+            }
+            return null;
+        }
+
+        if (action != MediaKeys.ACTION_UP || !pressed) {
+            // An up without a down, e.g. we were started mid press
+            return null;
+        }
+        pressed = false;
+        if (longPressed) {
+            // Already reported when the deadline passed
+            reset();
+            return null;
+        }
+        clicks++;
+        if (clicks == MAX_CLICKS) {
+            // Nothing to wait for
+            reset();
+            return Gesture.TRIPLE_CLICK;
+        }
+        deadline = eventTime + clickTimeoutMillis;
+        return null;
+    }
+
+    /**
+     * Handles the passing of time. Call at or after {@link #getDeadline()}.
+     * 
+     * @param now
+     *            The current time, on the same clock as the event times.
+     * @return The gesture if the deadline completes one, otherwise null.
+     */
+    public Gesture onDeadline(long now) {
+        if (now < deadline) {
+            return null;
+        }
+        deadline = NO_DEADLINE;
+        if (pressed) {
+            // Held long enough, whatever clicks came before it
+            clicks = 0;
+            longPressed = true;
+            return Gesture.LONG_PRESS;
+        }
+        int clicked = clicks;
+        clicks = 0;
+        switch (clicked) {
+        case 1:
+            return Gesture.SINGLE_CLICK;
+        case 2:
+            return Gesture.DOUBLE_CLICK;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * @return When {@link #onDeadline(long)} should next be called, or
+     *         {@link #NO_DEADLINE}.
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * @return Whether the button is down, so the rest of the press belongs to
+     *         the recognizer.
+     */
+    public boolean isPressed() {
+        return pressed;
+    }
+
+    /**
+     * Forgets any gesture in progress.
+     */
+    public void reset() {
+        pressed = false;
+        longPressed = false;
+        clicks = 0;
+        deadline = NO_DEADLINE;
+    }
+}
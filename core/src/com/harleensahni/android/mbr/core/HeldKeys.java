@@ -0,0 +1,105 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+/**
+ * Where the keys being held down go. When a press is streamed to a receiver
+ * its down picks the receiver, and the repeats and up follow it there even if
+ * routing would decide differently by then, so the receiver always gets the
+ * whole press.
+ * <p>
+ * Keys are told apart by key code and down time. Only a few can be held at
+ * once, the oldest is forgotten when more are.
+ * 
+ * @param <T>
+ *            The target type.
+ * @author Harleen Sahni
+ */
+public final class HeldKeys<T> {
+
+    /** More keys than anyone holds at once. */
+    private static final int CAPACITY = 4;
+
+    private final int[] keyCodes = new int[CAPACITY];
+
+    private final long[] downTimes = new long[CAPACITY];
+
+    private final Object[] targets = new Object[CAPACITY];
+
+    private int next;
+
+    /**
+     * Records where a key that went down goes.
+     * 
+     * @param keyCode
+     *            The key code of the down.
+     * @param downTime
+     *            The down time of the down.
+     * @param target
+     *            Where the key went.
+     */
+    public synchronized void hold(int keyCode, long downTime, T target) {
+        int slot = find(keyCode, downTime);
+        if (slot < 0) {
+            slot = next;
+            next = (next + 1) % CAPACITY;
+        }
+        keyCodes[slot] = keyCode;
+        downTimes[slot] = downTime;
+        targets[slot] = target;
+    }
+
+    /**
+     * Gets where a held key goes.
+     * 
+     * @param keyCode
+     *            The key code of the repeat or up.
+     * @param downTime
+     *            Its down time.
+     * @return The target, or null if the key isn't held.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T get(int keyCode, long downTime) {
+        int slot = find(keyCode, downTime);
+        return slot < 0 ? null : (T) targets[slot];
+    }
+
+    /**
+     * Gets where a key that went up went, and forgets it.
+     * 
+     * @param keyCode
+     *            The key code of the up.
+     * @param downTime
+     *            Its down time.
+     * @return The target, or null if the key wasn't held.
+     */
+    public synchronized T release(int keyCode, long downTime) {
+        T target = get(keyCode, downTime);
+        if (target != null) {
+            targets[find(keyCode, downTime)] = null;
+        }
+        return target;
+    }
+
+    private int find(int keyCode, long downTime) {
+        for (int slot = 0; slot < CAPACITY; slot++) {
+            if (targets[slot] != null && keyCodes[slot] == keyCode && downTimes[slot] == downTime) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import java.util.Arrays;
+
+/**
+ * Classifies key codes with a single array read. For every key code it holds
+ * the key code we treat it as, or {@link #NOT_MEDIA_KEY} if it isn't a media
+ * button we handle. User remaps are folded into the same table, so they cost
+ * nothing extra per press.
+ * <p>
+ * Immutable, {@link #remap(int, int)} returns a new table.
+ * 
+ * @author Harleen Sahni
+ */
+public final class KeyTable {
+
+    /** Returned by {@link #getKeyCode(int)} for keys we don't handle. */
+    public static final int NOT_MEDIA_KEY = -1;
+
+    /** All the media key codes are below this. */
+    private static final int SIZE = 128;
+
+    /**
+     * The default table. Play and pause are both treated as play/pause, the
+     * other media buttons as themselves.
+     */
+    public static final KeyTable DEFAULT;
+
+    static {
+        int[] keyCodes = new int[SIZE];
+        Arrays.fill(keyCodes, NOT_MEDIA_KEY);
+        int[] mediaKeyCodes = { MediaKeys.KEYCODE_HEADSETHOOK, MediaKeys.KEYCODE_MEDIA_PLAY_PAUSE,
+                MediaKeys.KEYCODE_MEDIA_STOP, MediaKeys.KEYCODE_MEDIA_NEXT, MediaKeys.KEYCODE_MEDIA_PREVIOUS,
+                MediaKeys.KEYCODE_MEDIA_REWIND, MediaKeys.KEYCODE_MEDIA_FAST_FORWARD };
+        for (int keyCode : mediaKeyCodes) {
+            keyCodes[keyCode] = keyCode;
+        }
+        keyCodes[MediaKeys.KEYCODE_MEDIA_PLAY] = MediaKeys.KEYCODE_MEDIA_PLAY_PAUSE;
+        keyCodes[MediaKeys.KEYCODE_MEDIA_PAUSE] = MediaKeys.KEYCODE_MEDIA_PLAY_PAUSE;
+        DEFAULT = new KeyTable(keyCodes);
+    }
+
+    private final int[] keyCodes;
+
+    private KeyTable(int[] keyCodes) {
+        this.keyCodes = keyCodes;
+    }
+
+    /**
+     * Whether the keyCode represents a media button that we handle.
+     * 
+     * @param keyCode
+     *            The key code of a key event.
+     * @return Whether we handle it.
+     */
+    public boolean isMediaKey(int keyCode) {
+        return getKeyCode(keyCode) != NOT_MEDIA_KEY;
+    }
+
+    /**
+     * Gets the key code we treat {@code keyCode} as, after any remapping.
+     * 
+     * @param keyCode
+     *            The key code of a key event.
+     * @return The key code to act on and forward, or {@link #NOT_MEDIA_KEY}.
+     */
+    public int getKeyCode(int keyCode) {
+        return keyCode >= 0 && keyCode < SIZE ? keyCodes[keyCode] : NOT_MEDIA_KEY;
+    }
+
+    /**
+     * Creates a table that treats {@code keyCode} as {@code toKeyCode}. Mapping
+     * a key to itself keeps it distinct, e.g. pause instead of play/pause.
+     * 
+     * @param keyCode
+     *            A media key code.
+     * @param toKeyCode
+     *            The media key code it should be treated as.
+     * @return The new table.
+     * @throws IllegalArgumentException
+     *             If either key code isn't a media key we handle.
+     */
+    public KeyTable remap(int keyCode, int toKeyCode) {
+        if (!DEFAULT.isMediaKey(keyCode) || !DEFAULT.isMediaKey(toKeyCode)) {
+            throw new IllegalArgumentException("Can't remap key code " + keyCode + " to " + toKeyCode);
+        }
+        int[] remapped = keyCodes.clone();
+        remapped[keyCode] = toKeyCode;
+        return new KeyTable(remapped);
+    }
+}
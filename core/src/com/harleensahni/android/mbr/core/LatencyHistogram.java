@@ -0,0 +1,150 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in microseconds with logarithmic buckets: every
+ * power of two is split into {@link #SUB_BUCKETS} buckets, so any value is
+ * reported within about 25% of what was recorded. The buckets are allocated
+ * up front and recording never allocates or locks, so it can be done on every
+ * press from any thread.
+ * 
+ * @author Harleen Sahni
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+
+    /** How many buckets each power of two is split into. */
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Larger values, over 12 days, are recorded as this. */
+    static final long MAX_VALUE = (1L << 40) - 1;
+
+    static final int BUCKET_COUNT = getBucket(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     * 
+     * @param micros
+     *            The duration in microseconds. Negative durations, from
+     *            clocks that disagree, are recorded as 0.
+     */
+    public void record(long micros) {
+        long value = micros < 0 ? 0 : micros > MAX_VALUE ? MAX_VALUE : micros;
+        counts.incrementAndGet(getBucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long currentMax;
+        do {
+            currentMax = max.get();
+        } while (value > currentMax && !max.compareAndSet(currentMax, value));
+    }
+
+    /**
+     * @return How many durations were recorded.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return The mean duration in microseconds, 0 if none were recorded.
+     */
+    public long getMean() {
+        long currentCount = count.get();
+        return currentCount == 0 ? 0 : sum.get() / currentCount;
+    }
+
+    /**
+     * @return The longest duration in microseconds, 0 if none were recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the duration that {@code percentile} percent of the recorded
+     * durations are at most. Reports the top of the bucket it falls in, but
+     * never more than {@link #getMax()}.
+     * 
+     * @param percentile
+     *            Between 0 and 100.
+     * @return The duration in microseconds, 0 if none were recorded.
+     */
+    public long getPercentile(double percentile) {
+        // Durations recorded while this runs may or may not be counted, which
+        // is fine for statistics
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(getBucketUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Forgets all recorded durations. Durations recorded at the same time may
+     * be partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    static int getBucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    static long getBucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
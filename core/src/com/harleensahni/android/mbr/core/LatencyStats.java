@@ -0,0 +1,126 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import com.harleensahni.android.mbr.core.RouteDecision.Route;
+
+/**
+ * How long each stage of handling a press takes, with a
+ * {@link LatencyHistogram} per stage and route, all allocated up front.
+ * 
+ * @author Harleen Sahni
+ */
+public final class LatencyStats {
+
+    /** The stages of handling a press. */
+    public enum Stage {
+        /** From the key event to our receiver getting it. */
+        RECEIVE,
+        /** Classifying the key and handing the press to the routing thread. */
+        CLASSIFY,
+        /** Deciding the route, looking up the device state and candidates. */
+        LOOKUP,
+        /** Carrying out the route: forwarding the press or starting the selector. */
+        DISPATCH,
+        /** From starting the selector to it being shown. */
+        SELECTOR_LAUNCH,
+        /** From the selector being shown to the user picking a receiver. */
+        SELECTION,
+        /** From the key event to the press being forwarded. */
+        TOTAL
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private static final Route[] ROUTES = Route.values();
+
+    private final LatencyHistogram[][] histograms = new LatencyHistogram[STAGES.length][ROUTES.length];
+
+    /**
+     * Creates empty stats.
+     */
+    public LatencyStats() {
+        for (int stage = 0; stage < STAGES.length; stage++) {
+            for (int route = 0; route < ROUTES.length; route++) {
+                histograms[stage][route] = new LatencyHistogram();
+            }
+        }
+    }
+
+    /**
+     * Records how long a stage took.
+     * 
+     * @param stage
+     *            The stage.
+     * @param route
+     *            The route the press took.
+     * @param micros
+     *            The duration in microseconds.
+     */
+    public void record(Stage stage, Route route, long micros) {
+        histograms[stage.ordinal()][route.ordinal()].record(micros);
+    }
+
+    /**
+     * @return The histogram of a stage for presses that took a route.
+     */
+    public LatencyHistogram getHistogram(Stage stage, Route route) {
+        return histograms[stage.ordinal()][route.ordinal()];
+    }
+
+    /**
+     * Forgets everything recorded.
+     */
+    public void reset() {
+        for (LatencyHistogram[] stageHistograms : histograms) {
+            for (LatencyHistogram histogram : stageHistograms) {
+                histogram.reset();
+            }
+        }
+    }
+
+    /**
+     * Formats the stats as text, one line per route and stage that has
+     * anything recorded, with durations in milliseconds.
+     * 
+     * @return The report, empty if nothing was recorded.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        for (Route route : ROUTES) {
+            for (Stage stage : STAGES) {
+                LatencyHistogram histogram = getHistogram(stage, route);
+                long count = histogram.getCount();
+                if (count == 0) {
+                    continue;
+                }
+                report.append(route).append(' ').append(stage).append(": n=").append(count);
+                appendMillis(report.append(" p50="), histogram.getPercentile(50));
+                appendMillis(report.append(" p90="), histogram.getPercentile(90));
+                appendMillis(report.append(" p99="), histogram.getPercentile(99));
+                appendMillis(report.append(" max="), histogram.getMax());
+                report.append('\n');
+            }
+        }
+        return report.toString();
+    }
+
+    private static void appendMillis(StringBuilder report, long micros) {
+        // One decimal is plenty given the bucket precision
+        long tenths = (micros + 50) / 100;
+        report.append(tenths / 10).append('.').append(tenths % 10).append("ms");
+    }
+}
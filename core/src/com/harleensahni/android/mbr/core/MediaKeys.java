@@ -0,0 +1,46 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+/**
+ * Key codes and actions of the media buttons we handle. The values are the
+ * same as the ones in {@code android.view.KeyEvent}, this class just doesn't
+ * need Android to use them. {@link KeyTable} does the classifying.
+ * 
+ * @author Harleen Sahni
+ */
+public final class MediaKeys {
+
+    public static final int ACTION_DOWN = 0;
+    public static final int ACTION_UP = 1;
+
+    public static final int KEYCODE_HEADSETHOOK = 79;
+    public static final int KEYCODE_MEDIA_PLAY_PAUSE = 85;
+    public static final int KEYCODE_MEDIA_STOP = 86;
+    public static final int KEYCODE_MEDIA_NEXT = 87;
+    public static final int KEYCODE_MEDIA_PREVIOUS = 88;
+    public static final int KEYCODE_MEDIA_REWIND = 89;
+    public static final int KEYCODE_MEDIA_FAST_FORWARD = 90;
+    public static final int KEYCODE_MEDIA_PLAY = 126;
+    public static final int KEYCODE_MEDIA_PAUSE = 127;
+
+    /**
+     * Prevent instantiation.
+     */
+    private MediaKeys() {
+        // Intentionally blank
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable view of the installed media button receivers that answers the
+ * questions routing asks about them. Everything is worked out when the
+ * directory is built, which only happens when the receivers or the hidden set
+ * change, so answering costs at most a hash lookup per question.
+ * 
+ * @param <R>
+ *            The receiver type.
+ * @author Harleen Sahni
+ */
+public final class ReceiverDirectory<R> {
+
+    private final List<R> receivers;
+
+    private final List<R> visibleReceivers;
+
+    /** {@link #visibleReceivers} without our own. */
+    private final List<R> selectableReceivers;
+
+    /** {@link #selectableReceivers} by id. */
+    private final Map<String, R> selectableReceiversById;
+
+    private final Set<String> hiddenReceiverIds;
+
+    private final String ownClassName;
+
+    private final ReceiverNames<R> names;
+
+    /**
+     * Position in {@link #receivers} of the highest priority receiver of each
+     * package, excluding our own.
+     */
+    private final Map<String, Integer> packagePositions;
+
+    /**
+     * The only visible receiver besides our own, or null if there are more or
+     * fewer.
+     */
+    private final R soleVisibleReceiver;
+
+    /**
+     * Creates a directory.
+     * 
+     * @param receivers
+     *            All receivers in priority order, including our own. Kept as
+     *            is, so it shouldn't be changed afterwards.
+     * @param hiddenReceiverIds
+     *            Ids of receivers the user has hidden. Kept as is.
+     * @param ownClassName
+     *            Class name of our own receiver.
+     * @param names
+     *            Used to get the names of receivers.
+     */
+    public ReceiverDirectory(List<R> receivers, Set<String> hiddenReceiverIds, String ownClassName,
+            ReceiverNames<R> names) {
+        this.receivers = receivers;
+        this.hiddenReceiverIds = hiddenReceiverIds;
+        this.ownClassName = ownClassName;
+        this.names = names;
+
+        List<R> visible = new ArrayList<R>(receivers.size());
+        List<R> selectable = new ArrayList<R>(receivers.size());
+        Map<String, R> selectableById = new HashMap<String, R>();
+        Map<String, Integer> positions = new HashMap<String, Integer>();
+        for (int i = 0; i < receivers.size(); i++) {
+            R receiver = receivers.get(i);
+            if (!hiddenReceiverIds.contains(names.getId(receiver))) {
+                visible.add(receiver);
+                if (!ownClassName.equals(names.getClassName(receiver))) {
+                    selectable.add(receiver);
+                    selectableById.put(names.getId(receiver), receiver);
+                }
+            }
+            String packageName = names.getPackageName(receiver);
+            if (!ownClassName.equals(names.getClassName(receiver)) && !positions.containsKey(packageName)) {
+                positions.put(packageName, i);
+            }
+        }
+        visibleReceivers = Collections.unmodifiableList(visible);
+        selectableReceivers = Collections.unmodifiableList(selectable);
+        selectableReceiversById = selectableById;
+        packagePositions = positions;
+
+        // Kept the way it has always worked: with exactly two visible
+        // receivers, one of them is ours and the other is the only choice.
+        R sole = null;
+        if (visible.size() == 2) {
+            for (R receiver : visible) {
+                if (!ownClassName.equals(names.getClassName(receiver))) {
+                    sole = receiver;
+                    break;
+                }
+            }
+        }
+        soleVisibleReceiver = sole;
+    }
+
+    /**
+     * @return All receivers in priority order, including our own.
+     */
+    public List<R> getReceivers() {
+        return receivers;
+    }
+
+    /**
+     * @return The receivers the user hasn't hidden in priority order,
+     *         including our own. Unmodifiable.
+     */
+    public List<R> getVisibleReceivers() {
+        return visibleReceivers;
+    }
+
+    /**
+     * @return The receivers the user hasn't hidden in priority order, without
+     *         our own. Unmodifiable.
+     */
+    public List<R> getSelectableReceivers() {
+        return selectableReceivers;
+    }
+
+    /**
+     * Finds a receiver, other than our own, that the user hasn't hidden.
+     * 
+     * @param id
+     *            The receiver's id.
+     * @return The receiver, or null if there is no such receiver or it's
+     *         hidden.
+     */
+    public R findSelectableReceiver(String id) {
+        return selectableReceiversById.get(id);
+    }
+
+    /**
+     * @return The names of the receivers.
+     */
+    public ReceiverNames<R> getNames() {
+        return names;
+    }
+
+    /**
+     * @return The ids of the receivers the user has hidden.
+     */
+    public Set<String> getHiddenReceiverIds() {
+        return hiddenReceiverIds;
+    }
+
+    /**
+     * @return The class name of our own receiver.
+     */
+    public String getOwnClassName() {
+        return ownClassName;
+    }
+
+    /**
+     * Finds the highest priority receiver, other than our own, that belongs to
+     * one of {@code packageNames}. Costs one hash lookup per package name.
+     * 
+     * @param packageNames
+     *            The package names to look for, may contain duplicates.
+     * @return The receiver, or null if none of the packages have one.
+     */
+    public R findReceiverForPackages(List<String> packageNames) {
+        int bestPosition = Integer.MAX_VALUE;
+        for (int i = 0; i < packageNames.size(); i++) {
+            Integer position = packagePositions.get(packageNames.get(i));
+            if (position != null && position < bestPosition) {
+                bestPosition = position;
+            }
+        }
+        return bestPosition == Integer.MAX_VALUE ? null : receivers.get(bestPosition);
+    }
+
+    /**
+     * @return The only receiver besides our own that the user hasn't hidden,
+     *         or null if there isn't exactly one.
+     */
+    public R getSoleVisibleReceiver() {
+        return soleVisibleReceiver;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+/**
+ * Gets the names the router needs from whatever type the platform uses to
+ * describe a media button receiver.
+ * 
+ * @param <R>
+ *            The receiver type.
+ * @author Harleen Sahni
+ */
+public interface ReceiverNames<R> {
+
+    /**
+     * The id used to remember the receiver, for instance in the list of
+     * receivers the user has hidden.
+     */
+    String getId(R receiver);
+
+    /** The package of the app the receiver belongs to. */
+    String getPackageName(R receiver);
+
+    /** The class name of the receiver. */
+    String getClassName(R receiver);
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How often and how recently the user picked each receiver. Every selection
+ * adds one to the receiver's score, and scores halve every
+ * {@link #HALF_LIFE_MILLIS}, so the score reflects both frequency and
+ * recency. Encodes to a compact string for persisting.
+ * <p>
+ * Not thread safe.
+ * 
+ * @author Harleen Sahni
+ */
+public final class ReceiverUsage {
+
+    /** How long it takes for a selection to count half as much. */
+    public static final long HALF_LIFE_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+    /** How many receivers are remembered. The lowest scoring are dropped. */
+    private static final int MAX_RECORDS = 64;
+
+    private static final class Record {
+        /** Score as of {@link #lastUsed}. */
+        double score;
+        long lastUsed;
+
+        Record(double score, long lastUsed) {
+            this.score = score;
+            this.lastUsed = lastUsed;
+        }
+
+        double getScore(long now) {
+            return decay(score, now - lastUsed);
+        }
+    }
+
+    private final Map<String, Record> records = new HashMap<String, Record>();
+
+    /**
+     * Records that the user picked a receiver.
+     * 
+     * @param id
+     *            The receiver's id.
+     * @param now
+     *            The current wall clock time.
+     */
+    public void recordSelection(String id, long now) {
+        Record record = records.get(id);
+        if (record == null) {
+            if (records.size() >= MAX_RECORDS) {
+                removeLowest(now);
+            }
+            records.put(id, new Record(1, now));
+        } else {
+            record.score = record.getScore(now) + 1;
+            record.lastUsed = Math.max(record.lastUsed, now);
+        }
+    }
+
+    /**
+     * @return The receiver's decayed score at {@code now}, 0 if it was never
+     *         picked.
+     */
+    public double getScore(String id, long now) {
+        Record record = records.get(id);
+        return record == null ? 0 : record.getScore(now);
+    }
+
+    /**
+     * @return When the receiver was last picked, 0 if never.
+     */
+    public long getLastUsed(String id) {
+        Record record = records.get(id);
+        return record == null ? 0 : record.lastUsed;
+    }
+
+    /**
+     * @return Whether nothing was ever picked.
+     */
+    public boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    /**
+     * Sorts receivers from most to least likely to be picked. Receivers with
+     * the same score are put in the order they were in, except that
+     * {@code preferredId} comes first among its equals.
+     * 
+     * @param receivers
+     *            The receivers, sorted in place.
+     * @param names
+     *            Gets the receivers' ids.
+     * @param preferredId
+     *            Id of the receiver that breaks ties, e.g. the last one picked.
+     *            May be null.
+     * @param now
+     *            The current wall clock time.
+     */
+    public <R> void sort(List<R> receivers, final ReceiverNames<R> names, final String preferredId, long now) {
+        // Score every receiver once rather than on every comparison
+        final Map<R, Double> scores = new HashMap<R, Double>();
+        for (R receiver : receivers) {
+            scores.put(receiver, getScore(names.getId(receiver), now));
+        }
+        // Collections.sort is stable, so equal receivers keep their order
+        Collections.sort(receivers, new Comparator<R>() {
+            @Override
+            public int compare(R lhs, R rhs) {
+                int byScore = Double.compare(scores.get(rhs), scores.get(lhs));
+                if (byScore != 0 || preferredId == null) {
+                    return byScore;
+                }
+                boolean lhsPreferred = preferredId.equals(names.getId(lhs));
+                boolean rhsPreferred = preferredId.equals(names.getId(rhs));
+                return lhsPreferred == rhsPreferred ? 0 : lhsPreferred ? -1 : 1;
+            }
+        });
+    }
+
+    /**
+     * Encodes the usage as one line per receiver, for {@link #decode(String)}.
+     */
+    public String encode() {
+        StringBuilder encoded = new StringBuilder();
+        for (Map.Entry<String, Record> entry : records.entrySet()) {
+            encoded.append(entry.getKey()).append('\t').append(entry.getValue().score).append('\t')
+                    .append(entry.getValue().lastUsed).append('\n');
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Decodes what {@link #encode()} produced. Lines that can't be parsed are
+     * skipped.
+     * 
+     * @param encoded
+     *            The encoded usage, may be null.
+     * @return The usage.
+     */
+    public static ReceiverUsage decode(String encoded) {
+        ReceiverUsage usage = new ReceiverUsage();
+        if (encoded == null) {
+            return usage;
+        }
+        for (String line : encoded.split("\n")) {
+            String[] fields = line.split("\t");
+            if (fields.length != 3) {
+                continue;
+            }
+            try {
+                usage.records.put(fields[0], new Record(Double.parseDouble(fields[1]), Long.parseLong(fields[2])));
+            } catch (NumberFormatException e) {
+                // Skip it
+            }
+        }
+        return usage;
+    }
+
+    private void removeLowest(long now) {
+        String lowestId = null;
+        double lowestScore = Double.MAX_VALUE;
+        for (Map.Entry<String, Record> entry : records.entrySet()) {
+            double score = entry.getValue().getScore(now);
+            if (score < lowestScore) {
+                lowestScore = score;
+                lowestId = entry.getKey();
+            }
+        }
+        records.remove(lowestId);
+    }
+
+    private static double decay(double score, long elapsedMillis) {
+        if (elapsedMillis <= 0) {
+            // The clock went back, don't make the score grow
+            return score;
+        }
+        return score * Math.pow(0.5, (double) elapsedMillis / HALF_LIFE_MILLIS);
+    }
+}
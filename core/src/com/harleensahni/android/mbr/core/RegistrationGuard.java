@@ -0,0 +1,259 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides when to take the media button receiver back after another app took
+ * it. An app that takes it back within {@link #FIGHT_MILLIS} of us is
+ * fighting us, and each fight in a row doubles how long we wait before trying
+ * again, up to {@link #MAX_BACKOFF_MILLIS}. On top of that, no more than a
+ * budget of registrations are made per window, whoever we're fighting.
+ * <p>
+ * Keeps counters per competitor for diagnostics. Not thread safe, callers
+ * synchronize.
+ * 
+ * @author Harleen Sahni
+ */
+public final class RegistrationGuard {
+
+    /** How soon after our registration a takeover counts as a fight. */
+    public static final long FIGHT_MILLIS = 2000;
+
+    /** How long a competitor must leave us alone for its backoff to reset. */
+    public static final long QUIET_MILLIS = 60 * 1000;
+
+    /** Wait after the first fight, doubled for each fight in a row. */
+    public static final long BASE_BACKOFF_MILLIS = 500;
+
+    /** Longest wait after a run of fights. */
+    public static final long MAX_BACKOFF_MILLIS = 5 * 60 * 1000;
+
+    /** Most competitors tracked, the least recently seen are forgotten. */
+    private static final int MAX_COMPETITORS = 16;
+
+    /** Counters for an app that took the media button receiver from us. */
+    public static final class Competitor {
+        private final String name;
+        private int takeovers;
+        private int fights;
+        private int fightsInARow;
+        private long lastTakeover;
+
+        Competitor(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return The flattened component name the app registered.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return How many times it took the receiver from us.
+         */
+        public int getTakeovers() {
+            return takeovers;
+        }
+
+        /**
+         * @return How many of those takeovers were fights.
+         */
+        public int getFights() {
+            return fights;
+        }
+
+        /**
+         * @return The fights in a row its current backoff is based on.
+         */
+        public int getFightsInARow() {
+            return fightsInARow;
+        }
+    }
+
+    private final long windowMillis;
+
+    /**
+     * Times of the registrations made in the current window, a ring the size
+     * of the budget.
+     */
+    private long[] registrations;
+
+    private int nextRegistration;
+
+    private long lastRegistration = Long.MIN_VALUE / 2;
+
+    private int registrationCount;
+
+    private int deferredCount;
+
+    private final Map<String, Competitor> competitors = new LinkedHashMap<String, Competitor>(MAX_COMPETITORS, 0.75f,
+            true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Competitor> eldest) {
+            return size() > MAX_COMPETITORS;
+        }
+    };
+
+    /**
+     * Creates a guard.
+     * 
+     * @param budget
+     *            The most registrations per window, at least 1.
+     * @param windowMillis
+     *            The window length.
+     */
+    public RegistrationGuard(int budget, long windowMillis) {
+        this.windowMillis = windowMillis;
+        setBudget(budget);
+    }
+
+    /**
+     * Changes the most registrations per window. Forgets the registrations
+     * made so far if it changes.
+     * 
+     * @param budget
+     *            The most registrations per window, at least 1.
+     */
+    public void setBudget(int budget) {
+        budget = Math.max(1, budget);
+        if (registrations == null || registrations.length != budget) {
+            registrations = new long[budget];
+            Arrays.fill(registrations, Long.MIN_VALUE / 2);
+            nextRegistration = 0;
+        }
+    }
+
+    /**
+     * Records that another app took the media button receiver and decides
+     * when to take it back.
+     * 
+     * @param competitor
+     *            The flattened component name the app registered.
+     * @param now
+     *            The current time in milliseconds.
+     * @return When to register again, never before {@code now}.
+     */
+    public long onTakeover(String competitor, long now) {
+        Competitor stats = competitors.get(competitor);
+        if (stats == null) {
+            stats = new Competitor(competitor);
+            competitors.put(competitor, stats);
+        }
+        stats.takeovers++;
+        if (now - lastRegistration <= FIGHT_MILLIS) {
+            stats.fights++;
+            stats.fightsInARow++;
+        } else if (now - stats.lastTakeover >= QUIET_MILLIS) {
+            stats.fightsInARow = 0;
+        }
+        stats.lastTakeover = now;
+
+        long at = now;
+        if (stats.fightsInARow > 0) {
+            int shift = Math.min(stats.fightsInARow - 1, 30);
+            at += Math.min(BASE_BACKOFF_MILLIS << shift, MAX_BACKOFF_MILLIS);
+        }
+        // The oldest registration in the ring has to leave the window first
+        long budgetFree = registrations[nextRegistration] + windowMillis;
+        if (budgetFree > at) {
+            at = budgetFree;
+            deferredCount++;
+        }
+        return at;
+    }
+
+    /**
+     * Records that we registered the media button receiver.
+     * 
+     * @param now
+     *            The current time in milliseconds.
+     */
+    public void onRegistered(long now) {
+        registrations[nextRegistration] = now;
+        nextRegistration = (nextRegistration + 1) % registrations.length;
+        lastRegistration = now;
+        registrationCount++;
+    }
+
+    /**
+     * @return How many registrations were made.
+     */
+    public int getRegistrationCount() {
+        return registrationCount;
+    }
+
+    /**
+     * @return How many takeovers had to wait for the budget.
+     */
+    public int getDeferredCount() {
+        return deferredCount;
+    }
+
+    /**
+     * @return The competitors seen, most takeovers first.
+     */
+    public List<Competitor> getCompetitors() {
+        List<Competitor> result = new ArrayList<Competitor>(competitors.values());
+        Collections.sort(result, new Comparator<Competitor>() {
+            @Override
+            public int compare(Competitor lhs, Competitor rhs) {
+                return rhs.takeovers - lhs.takeovers;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Forgets the counters and backoffs, but not the registrations counting
+     * against the budget.
+     */
+    public void reset() {
+        competitors.clear();
+        registrationCount = 0;
+        deferredCount = 0;
+    }
+
+    /**
+     * Writes the counters as text, one competitor per line.
+     * 
+     * @return The report, empty if no app took the receiver from us.
+     */
+    public String report() {
+        if (competitors.isEmpty()) {
+            return "";
+        }
+        StringBuilder report = new StringBuilder();
+        report.append("registrations=").append(registrationCount).append(" deferred=").append(deferredCount)
+                .append('\n');
+        for (Competitor competitor : getCompetitors()) {
+            report.append(competitor.name).append(": takeovers=").append(competitor.takeovers).append(" fights=")
+                    .append(competitor.fights).append(" inARow=").append(competitor.fightsInARow).append('\n');
+        }
+        return report.toString();
+    }
+}
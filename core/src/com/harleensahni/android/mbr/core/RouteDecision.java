@@ -0,0 +1,118 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+/**
+ * What {@link Router} decided to do with a press. Mutable so that one
+ * instance can be reused for many decisions without allocating.
+ * 
+ * @param <R>
+ *            The receiver type.
+ * @author Harleen Sahni
+ */
+public final class RouteDecision<R> {
+
+    /** Where a press goes. */
+    public enum Route {
+        /** Not a media button we handle, leave it alone. */
+        IGNORE,
+        /** Our selector is open, give it the press. */
+        SELECTOR_OPEN,
+        /** The user wants this key sent to several receivers at once. */
+        FAN_OUT,
+        /** Music is playing, forward to the last registered media button receiver. */
+        LAST_RECEIVER,
+        /** Music is playing, forward to the receiver of the app we think is playing it. */
+        PLAYING_RECEIVER,
+        /** Nothing is playing and there is only one receiver to choose from. */
+        SOLE_RECEIVER,
+        /** Nothing is playing and the user picked this receiver last in the current audio context. */
+        CONTEXT_RECEIVER,
+        /** Nothing is playing and the user would very likely pick this receiver in the selector. */
+        PREDICTED_RECEIVER,
+        /** Let the user choose with the selector. */
+        SHOW_SELECTOR,
+        /** Music is playing but we can't tell who is playing it, let regular priorities decide. */
+        PASS_THROUGH
+    }
+
+    private Route route = Route.IGNORE;
+
+    private int keyCode;
+
+    private boolean abort;
+
+    private boolean dispatch;
+
+    private R receiver;
+
+    private String lastMediaButtonReceiver;
+
+    void set(Route route, int keyCode, boolean abort, boolean dispatch, R receiver, String lastMediaButtonReceiver) {
+        this.route = route;
+        this.keyCode = keyCode;
+        this.abort = abort;
+        this.dispatch = dispatch;
+        this.receiver = receiver;
+        this.lastMediaButtonReceiver = lastMediaButtonReceiver;
+    }
+
+    /**
+     * @return Where the press goes.
+     */
+    public Route getRoute() {
+        return route;
+    }
+
+    /**
+     * @return The adjusted key code to forward.
+     */
+    public int getKeyCode() {
+        return keyCode;
+    }
+
+    /**
+     * @return Whether the broadcast should be aborted so other receivers
+     *         don't get it.
+     */
+    public boolean isAbort() {
+        return abort;
+    }
+
+    /**
+     * @return Whether this event should be acted on. Forwarding and showing
+     *         the selector happen once per press, on key up.
+     */
+    public boolean isDispatch() {
+        return dispatch;
+    }
+
+    /**
+     * @return The receiver for {@link Route#PLAYING_RECEIVER} and
+     *         {@link Route#SOLE_RECEIVER}, otherwise null.
+     */
+    public R getReceiver() {
+        return receiver;
+    }
+
+    /**
+     * @return The flattened component name for {@link Route#LAST_RECEIVER},
+     *         otherwise null.
+     */
+    public String getLastMediaButtonReceiver() {
+        return lastMediaButtonReceiver;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import java.util.List;
+
+import com.harleensahni.android.mbr.core.RouteDecision.Route;
+
+/**
+ * Decides where a media button press should go. Pure logic, the caller
+ * supplies the device state and carries out the decision.
+ * 
+ * @author Harleen Sahni
+ */
+public final class Router {
+
+    /**
+     * Prevent instantiation.
+     */
+    private Router() {
+        // Intentionally blank
+    }
+
+    /**
+     * Decides where a key event should go.
+     * 
+     * @param action
+     *            The key event's action, {@link MediaKeys#ACTION_DOWN} or
+     *            {@link MediaKeys#ACTION_UP}.
+     * @param keyCode
+     *            The key event's key code.
+     * @param keyTable
+     *            How to classify and remap the key code.
+     * @param state
+     *            The device state, only queried as needed.
+     * @param directory
+     *            The media button receivers.
+     * @param decision
+     *            Filled in with the decision.
+     */
+    public static <R> void decide(int action, int keyCode, KeyTable keyTable, RoutingState state,
+            ReceiverDirectory<R> directory, RouteDecision<R> decision) {
+        int adjustedKeyCode = keyTable.getKeyCode(keyCode);
+
+        // Don't want to capture volume buttons
+        if (adjustedKeyCode == KeyTable.NOT_MEDIA_KEY) {
+            decision.set(Route.IGNORE, keyCode, false, false, null, null);
+            return;
+        }
+
+        if (state.isSelectorOpen()) {
+            // The selector handles both up and down itself
+            decision.set(Route.SELECTOR_OPEN, adjustedKeyCode, true, true, null, null);
+            return;
+        }
+
+        boolean up = action == MediaKeys.ACTION_UP;
+
+        if (state.isFanOut(adjustedKeyCode)) {
+            // Sent to the targets as a whole press on the up
+            decision.set(Route.FAN_OUT, adjustedKeyCode, true, up, null, null);
+            return;
+        }
+
+        if (state.isMusicActive()) {
+            // Streamed presses are forwarded event by event, so holding a key
+            // works
+            boolean dispatch = up || state.isStreaming();
+            String lastMediaButtonReceiver = state.getLastMediaButtonReceiver();
+            if (lastMediaButtonReceiver != null) {
+                decision.set(Route.LAST_RECEIVER, adjustedKeyCode, false, dispatch, null, lastMediaButtonReceiver);
+                return;
+            }
+
+            // XXX Need to improve this behavior, somethings doesn't work. For
+            // instance, if you select "Listen" App, and then hit next, the
+            // built in music app handles it because it has a higher priority.
+            // If we could change priorities on app selection and have it
+            // stick, would probably be good enough to handle this. One thing
+            // to do would be to add specific classes that check for each known
+            // app if our generic way doesn't work well for them
+
+            // Go by the apps the platform last told us are playing.
+            // TODO Need to handle case with multiple matches, maybe by showing
+            // selector. For now the highest priority receiver wins.
+            List<String> playingPackageNames = state.getPlayingPackageNames();
+            R playing = directory.findReceiverForPackages(playingPackageNames);
+            if (playing != null) {
+                decision.set(Route.PLAYING_RECEIVER, adjustedKeyCode, true, dispatch, playing, null);
+            } else if (state.isConservative()) {
+                decision.set(Route.SHOW_SELECTOR, adjustedKeyCode, true, up, null, null);
+            } else {
+                decision.set(Route.PASS_THROUGH, adjustedKeyCode, false, false, null, null);
+            }
+            return;
+        }
+
+        // No music playing
+        String contextReceiverId = state.getContextReceiverId();
+        if (contextReceiverId != null) {
+            R contextReceiver = directory.findSelectableReceiver(contextReceiverId);
+            if (contextReceiver != null) {
+                decision.set(Route.CONTEXT_RECEIVER, adjustedKeyCode, true, up, contextReceiver, null);
+                return;
+            }
+        }
+
+        R sole = directory.getSoleVisibleReceiver();
+        if (sole != null) {
+            // Not using last media button receiver since we want this feature
+            // to work just as well on Android version < 4.0
+            decision.set(Route.SOLE_RECEIVER, adjustedKeyCode, true, up, sole, null);
+            return;
+        }
+
+        // The down is swallowed either way and only the up acts, so only
+        // predict for the up
+        R predicted = up ? state.predictReceiver(adjustedKeyCode, directory.getSelectableReceivers(),
+                directory.getNames()) : null;
+        if (predicted != null) {
+            decision.set(Route.PREDICTED_RECEIVER, adjustedKeyCode, true, true, predicted, null);
+        } else {
+            decision.set(Route.SHOW_SELECTOR, adjustedKeyCode, true, up, null, null);
+        }
+    }
+}
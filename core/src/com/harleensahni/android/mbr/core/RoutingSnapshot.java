@@ -0,0 +1,194 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a process needs to route a press without asking the
+ * {@code PackageManager} or parsing preferences: the media button receivers in
+ * priority order and the values of the settings and state routing reads, all
+ * as strings.
+ * <p>
+ * Encoded in a compact binary form: a magic number, {@link #VERSION}, the
+ * length of the rest, the receivers as package and class names, then the
+ * values as key and value pairs. Strings are UTF-8 prefixed with their length.
+ * 
+ * @author Harleen Sahni
+ */
+public final class RoutingSnapshot {
+
+    /** "MBRS". */
+    private static final int MAGIC = 0x4d425253;
+
+    /** Changed whenever the encoding changes, older snapshots are ignored. */
+    public static final int VERSION = 1;
+
+    /** Bytes before the length-counted body: magic, version and length. */
+    private static final int HEADER_BYTES = 12;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final List<String> packageNames;
+
+    private final List<String> classNames;
+
+    private final Map<String, String> values;
+
+    /**
+     * Creates a snapshot.
+     * 
+     * @param packageNames
+     *            The package names of the receivers, in priority order.
+     * @param classNames
+     *            The class names of the receivers, in the same order.
+     * @param values
+     *            The values by key, null values are left out.
+     */
+    public RoutingSnapshot(List<String> packageNames, List<String> classNames, Map<String, String> values) {
+        if (packageNames.size() != classNames.size()) {
+            throw new IllegalArgumentException("Receivers have " + packageNames.size() + " package names and "
+                    + classNames.size() + " class names");
+        }
+        this.packageNames = Collections.unmodifiableList(new ArrayList<String>(packageNames));
+        this.classNames = Collections.unmodifiableList(new ArrayList<String>(classNames));
+        Map<String, String> copy = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            if (entry.getValue() != null) {
+                copy.put(entry.getKey(), entry.getValue());
+            }
+        }
+        this.values = Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * @return The number of receivers.
+     */
+    public int getReceiverCount() {
+        return packageNames.size();
+    }
+
+    /**
+     * @return The package name of the receiver at {@code index}.
+     */
+    public String getPackageName(int index) {
+        return packageNames.get(index);
+    }
+
+    /**
+     * @return The class name of the receiver at {@code index}.
+     */
+    public String getClassName(int index) {
+        return classNames.get(index);
+    }
+
+    /**
+     * Gets a value.
+     * 
+     * @param key
+     *            The key.
+     * @return The value, or null if there was none when the snapshot was
+     *         taken.
+     */
+    public String getValue(String key) {
+        return values.get(key);
+    }
+
+    /**
+     * Encodes the snapshot.
+     * 
+     * @return The encoded snapshot.
+     */
+    public byte[] encode() {
+        List<byte[]> strings = new ArrayList<byte[]>();
+        for (int i = 0; i < packageNames.size(); i++) {
+            strings.add(packageNames.get(i).getBytes(UTF_8));
+            strings.add(classNames.get(i).getBytes(UTF_8));
+        }
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            strings.add(entry.getKey().getBytes(UTF_8));
+            strings.add(entry.getValue().getBytes(UTF_8));
+        }
+        // Receiver count and value count, then each string with its length
+        int bodyLength = 8;
+        for (byte[] string : strings) {
+            bodyLength += 4 + string.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + bodyLength);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(bodyLength);
+        buffer.putInt(packageNames.size()).putInt(values.size());
+        for (byte[] string : strings) {
+            buffer.putInt(string.length).put(string);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a snapshot from the buffer's position to its limit.
+     * 
+     * @param buffer
+     *            The encoded snapshot, for instance a mapped file.
+     * @return The snapshot, or null if the buffer doesn't hold a whole
+     *         snapshot of this {@link #VERSION}.
+     */
+    public static RoutingSnapshot decode(ByteBuffer buffer) {
+        try {
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getInt() != buffer.remaining()) {
+                return null;
+            }
+            int receiverCount = buffer.getInt();
+            int valueCount = buffer.getInt();
+            if (receiverCount < 0 || valueCount < 0) {
+                return null;
+            }
+            List<String> packageNames = new ArrayList<String>(Math.min(receiverCount, 64));
+            List<String> classNames = new ArrayList<String>(Math.min(receiverCount, 64));
+            for (int i = 0; i < receiverCount; i++) {
+                packageNames.add(getString(buffer));
+                classNames.add(getString(buffer));
+            }
+            Map<String, String> values = new LinkedHashMap<String, String>();
+            for (int i = 0; i < valueCount; i++) {
+                values.put(getString(buffer), getString(buffer));
+            }
+            return new RoutingSnapshot(packageNames, classNames, values);
+        } catch (BufferUnderflowException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            // A string length that doesn't fit
+            return null;
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import java.util.List;
+
+/**
+ * The state of the device that routing looks at. {@link Router} only asks for
+ * what it needs for a given press, in the order below, so implementations can
+ * fetch each value lazily.
+ * 
+ * @author Harleen Sahni
+ */
+public interface RoutingState {
+
+    /** Whether our selector is open and should get presses directly. */
+    boolean isSelectorOpen();
+
+    /**
+     * Whether the user wants presses of a key sent to several receivers at
+     * once, whatever is playing.
+     * 
+     * @param keyCode
+     *            The remapped key code of the press.
+     */
+    boolean isFanOut(int keyCode);
+
+    /** Whether any app is playing music. */
+    boolean isMusicActive();
+
+    /**
+     * Whether the user wants presses for a playing app streamed to it, each
+     * down, repeat and up as it comes, instead of forwarded as one press on
+     * the up.
+     */
+    boolean isStreaming();
+
+    /**
+     * The flattened component name of the last receiver another app registered
+     * as the media button receiver, or null if we don't know of one.
+     */
+    String getLastMediaButtonReceiver();
+
+    /**
+     * Package names of the apps that are playing, as last told by the
+     * platform or last guessed. Should be answered from memory, not by asking
+     * the system on each press.
+     */
+    List<String> getPlayingPackageNames();
+
+    /**
+     * Whether the user wants us to be conservative, showing the selector
+     * instead of letting regular priorities decide when we can't tell who is
+     * playing music.
+     */
+    boolean isConservative();
+
+    /**
+     * The id of the receiver the user picked last in the current audio
+     * context, such as the connected bluetooth device, if the user wants
+     * presses to go straight to it.
+     * 
+     * @return The receiver's id, or null to carry on routing.
+     */
+    String getContextReceiverId();
+
+    /**
+     * Predicts which receiver the user would pick in the selector for a press,
+     * if the user wants the selector skipped when the prediction is confident.
+     * 
+     * @param keyCode
+     *            The remapped key code of the press.
+     * @param candidates
+     *            The receivers the selector would show, other than our own.
+     * @param names
+     *            Gets the receivers' names.
+     * @return The predicted receiver, or null to show the selector.
+     */
+    <R> R predictReceiver(int keyCode, List<R> candidates, ReceiverNames<R> names);
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+/**
+ * What {@link SelectionPredictor} knows about a press when it predicts or
+ * learns which receiver the user picks for it: the key, the time of day, where
+ * audio is going and which receiver was acted on last.
+ * <p>
+ * Immutable.
+ * 
+ * @author Harleen Sahni
+ */
+public final class SelectionFeatures {
+
+    /** Audio is going to the phone's speaker. */
+    public static final String AUDIO_ROUTE_SPEAKER = "speaker";
+
+    /** Audio is going to a wired headset. */
+    public static final String AUDIO_ROUTE_WIRED = "wired";
+
+    /** Audio is going to a bluetooth headset or speaker. */
+    public static final String AUDIO_ROUTE_BLUETOOTH = "bluetooth";
+
+    /** How many hours of the day fall in the same bucket. */
+    static final int HOURS_PER_BUCKET = 4;
+
+    /** How many values each feature can take, for smoothing. */
+    static final int KEY_CODE_VALUES = 10;
+    static final int HOUR_BUCKET_VALUES = 24 / HOURS_PER_BUCKET;
+    static final int AUDIO_ROUTE_VALUES = 3;
+
+    static final int KEY_CODE = 0;
+    static final int HOUR_BUCKET = 1;
+    static final int AUDIO_ROUTE = 2;
+    static final int LAST_ACTED = 3;
+    static final int COUNT = 4;
+
+    /** The feature values, indexed by the constants above, as stored. */
+    private final String[] values = new String[COUNT];
+
+    /**
+     * Creates features.
+     * 
+     * @param keyCode
+     *            The remapped key code of the press.
+     * @param hourOfDay
+     *            The hour of the day, 0 to 23.
+     * @param audioRoute
+     *            One of the {@code AUDIO_ROUTE_} constants.
+     * @param lastActedId
+     *            Id of the receiver last acted on, may be null.
+     */
+    public SelectionFeatures(int keyCode, int hourOfDay, String audioRoute, String lastActedId) {
+        // Prefixed so that values of different features never collide
+        values[KEY_CODE] = "k" + keyCode;
+        values[HOUR_BUCKET] = "h" + (hourOfDay / HOURS_PER_BUCKET);
+        values[AUDIO_ROUTE] = "r" + audioRoute;
+        values[LAST_ACTED] = "l" + (lastActedId == null ? "" : lastActedId);
+    }
+
+    /**
+     * @return The value of a feature, as stored.
+     */
+    String getValue(int feature) {
+        return values[feature];
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Learns which receiver the user picks in the selector given the
+ * {@link SelectionFeatures} of the press, and predicts it for later presses.
+ * A naive Bayes classifier: for each receiver it counts how often it was
+ * picked and how often each feature value came with it, smoothed so that
+ * unseen values don't rule a receiver out. Counts halve every
+ * {@link #HALF_LIFE_MILLIS} so that a change of habits wins over time.
+ * Encodes to a compact string for persisting.
+ * <p>
+ * Not thread safe.
+ * 
+ * @author Harleen Sahni
+ */
+public final class SelectionPredictor {
+
+    /** How long it takes for a selection to count half as much. */
+    public static final long HALF_LIFE_MILLIS = 30L * 24 * 60 * 60 * 1000;
+
+    /**
+     * The share of the probability the predicted receiver needs before it's
+     * worth skipping the selector.
+     */
+    public static final double MIN_CONFIDENCE = 0.8;
+
+    /**
+     * How many (decayed) times the predicted receiver must have been picked,
+     * so that a couple of selections don't make a confident prediction.
+     */
+    static final double MIN_SELECTIONS = 3;
+
+    /** Added to every count, so unseen values don't rule a receiver out. */
+    private static final double SMOOTHING = 1;
+
+    /** How many receivers are remembered. The least picked are dropped. */
+    private static final int MAX_RECORDS = 64;
+
+    private static final class Record {
+        /** Times picked, as of {@link #lastUsed}. */
+        double count;
+        long lastUsed;
+        /** Times picked with each feature value, as of {@link #lastUsed}. */
+        final Map<String, Double> valueCounts = new HashMap<String, Double>();
+
+        Record(double count, long lastUsed) {
+            this.count = count;
+            this.lastUsed = lastUsed;
+        }
+
+        /**
+         * Decays all the counts to {@code now}. They all decay by the same
+         * factor, so their ratios, which the likelihoods come from, stay the
+         * same.
+         */
+        void decayTo(long now) {
+            if (now <= lastUsed) {
+                // The clock went back, don't make counts grow
+                return;
+            }
+            double factor = decay(now - lastUsed);
+            count *= factor;
+            for (Map.Entry<String, Double> entry : valueCounts.entrySet()) {
+                entry.setValue(entry.getValue() * factor);
+            }
+            lastUsed = now;
+        }
+
+        double getValueCount(String value) {
+            Double valueCount = valueCounts.get(value);
+            return valueCount == null ? 0 : valueCount;
+        }
+    }
+
+    private final Map<String, Record> records = new HashMap<String, Record>();
+
+    /**
+     * Learns that the user picked a receiver for a press.
+     * 
+     * @param id
+     *            The receiver's id.
+     * @param features
+     *            What we knew about the press.
+     * @param now
+     *            The current wall clock time.
+     */
+    public void recordSelection(String id, SelectionFeatures features, long now) {
+        Record record = records.get(id);
+        if (record == null) {
+            if (records.size() >= MAX_RECORDS) {
+                removeLowest(now);
+            }
+            record = new Record(0, now);
+            records.put(id, record);
+        }
+        record.decayTo(now);
+        record.count += 1;
+        for (int i = 0; i < SelectionFeatures.COUNT; i++) {
+            String value = features.getValue(i);
+            record.valueCounts.put(value, record.getValueCount(value) + 1);
+        }
+    }
+
+    /**
+     * Predicts which of {@code candidates} the user would pick for a press.
+     * 
+     * @param candidates
+     *            The receivers the user could pick from.
+     * @param names
+     *            Gets the receivers' ids.
+     * @param features
+     *            What we know about the press.
+     * @param minConfidence
+     *            The share of the probability, between 0 and 1, the predicted
+     *            receiver needs.
+     * @param now
+     *            The current wall clock time.
+     * @return The predicted receiver, or null if no receiver is likely enough.
+     */
+    public <R> R predict(List<R> candidates, ReceiverNames<R> names, SelectionFeatures features,
+            double minConfidence, long now) {
+        R best = null;
+        double bestScore = 0;
+        double bestCount = 0;
+        double totalScore = 0;
+        for (int i = 0; i < candidates.size(); i++) {
+            R candidate = candidates.get(i);
+            Record record = records.get(names.getId(candidate));
+            double count = 0;
+            double decay = 1;
+            if (record != null) {
+                decay = now > record.lastUsed ? decay(now - record.lastUsed) : 1;
+                count = record.count * decay;
+            }
+
+            // Prior times the likelihood of each feature value given the
+            // receiver. The last acted receiver is one of the candidates, or
+            // none.
+            double score = count + SMOOTHING;
+            for (int feature = 0; feature < SelectionFeatures.COUNT; feature++) {
+                double valueCount = record == null ? 0 : record.getValueCount(features.getValue(feature)) * decay;
+                int values = feature == SelectionFeatures.LAST_ACTED ? candidates.size() + 1 : getValues(feature);
+                score *= (valueCount + SMOOTHING) / (count + SMOOTHING * values);
+            }
+
+            totalScore += score;
+            if (score > bestScore) {
+                best = candidate;
+                bestScore = score;
+                bestCount = count;
+            }
+        }
+        if (best == null || bestCount < MIN_SELECTIONS || bestScore < minConfidence * totalScore) {
+            return null;
+        }
+        return best;
+    }
+
+    /**
+     * @return Whether nothing was ever learned.
+     */
+    public boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    /**
+     * Encodes what was learned as one line per receiver, for
+     * {@link #decode(String)}.
+     */
+    public String encode() {
+        StringBuilder encoded = new StringBuilder();
+        for (Map.Entry<String, Record> entry : records.entrySet()) {
+            Record record = entry.getValue();
+            encoded.append(entry.getKey()).append('\t').append(record.count).append('\t').append(record.lastUsed);
+            for (Map.Entry<String, Double> valueCount : record.valueCounts.entrySet()) {
+                encoded.append('\t').append(valueCount.getKey()).append('\t').append(valueCount.getValue());
+            }
+            encoded.append('\n');
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Decodes what {@link #encode()} produced. Lines that can't be parsed are
+     * skipped.
+     * 
+     * @param encoded
+     *            The encoded predictor, may be null.
+     * @return The predictor.
+     */
+    public static SelectionPredictor decode(String encoded) {
+        SelectionPredictor predictor = new SelectionPredictor();
+        if (encoded == null) {
+            return predictor;
+        }
+        for (String line : encoded.split("\n")) {
+            String[] fields = line.split("\t");
+            if (fields.length < 3 || fields.length % 2 == 0) {
+                continue;
+            }
+            try {
+                Record record = new Record(Double.parseDouble(fields[1]), Long.parseLong(fields[2]));
+                for (int i = 3; i < fields.length; i += 2) {
+                    record.valueCounts.put(fields[i], Double.parseDouble(fields[i + 1]));
+                }
+                predictor.records.put(fields[0], record);
+            } catch (NumberFormatException e) {
+                // Skip it
+            }
+        }
+        return predictor;
+    }
+
+    private void removeLowest(long now) {
+        String lowestId = null;
+        double lowestCount = Double.MAX_VALUE;
+        for (Map.Entry<String, Record> entry : records.entrySet()) {
+            Record record = entry.getValue();
+            double count = now > record.lastUsed ? record.count * decay(now - record.lastUsed) : record.count;
+            if (count < lowestCount) {
+                lowestCount = count;
+                lowestId = entry.getKey();
+            }
+        }
+        records.remove(lowestId);
+    }
+
+    private static int getValues(int feature) {
+        switch (feature) {
+        case SelectionFeatures.KEY_CODE:
+            return SelectionFeatures.KEY_CODE_VALUES;
+        case SelectionFeatures.HOUR_BUCKET:
+            return SelectionFeatures.HOUR_BUCKET_VALUES;
+        default:
+            return SelectionFeatures.AUDIO_ROUTE_VALUES;
+        }
+    }
+
+    private static double decay(long elapsedMillis) {
+        return Math.pow(0.5, (double) elapsedMillis / HALF_LIFE_MILLIS);
+    }
+}
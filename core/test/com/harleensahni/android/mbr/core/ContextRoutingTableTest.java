@@ -0,0 +1,78 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the lookups, bluetooth fallback and encoding of
+ * {@link ContextRoutingTable}.
+ * 
+ * @author Harleen Sahni
+ */
+public class ContextRoutingTableTest {
+
+    private final ContextRoutingTable table = new ContextRoutingTable();
+
+    @Test
+    public void getsThePickOfEachContext() {
+        table.put(ContextRoutingTable.WIRED, "a");
+        table.put(ContextRoutingTable.SPEAKER, "b");
+        table.put(ContextRoutingTable.WIRED, "c");
+        assertEquals("c", table.getReceiverId(ContextRoutingTable.WIRED));
+        assertEquals("b", table.getReceiverId(ContextRoutingTable.SPEAKER));
+        assertNull(table.getReceiverId(ContextRoutingTable.DOCK));
+    }
+
+    @Test
+    public void unknownDeviceGoesByTheLastBluetoothPick() {
+        table.put(ContextRoutingTable.bluetooth("car"), "a");
+        table.put(ContextRoutingTable.bluetooth("speaker"), "b");
+        assertEquals("a", table.getReceiverId(ContextRoutingTable.bluetooth("car")));
+        assertEquals("b", table.getReceiverId(ContextRoutingTable.bluetooth("headphones")));
+        assertEquals("b", table.getReceiverId(ContextRoutingTable.BLUETOOTH));
+    }
+
+    @Test
+    public void dropsTheLeastRecentlyPickedContexts() {
+        table.put(ContextRoutingTable.WIRED, "a");
+        for (int i = 0; i < 32; i++) {
+            table.put("dock" + i, "b");
+        }
+        assertNull(table.getReceiverId(ContextRoutingTable.WIRED));
+        assertEquals("b", table.getReceiverId("dock0"));
+    }
+
+    @Test
+    public void encodesAndDecodes() {
+        table.put(ContextRoutingTable.WIRED, "a");
+        table.put(ContextRoutingTable.bluetooth("car"), "b");
+        ContextRoutingTable decoded = ContextRoutingTable.decode(table.encode());
+        assertEquals("a", decoded.getReceiverId(ContextRoutingTable.WIRED));
+        assertEquals("b", decoded.getReceiverId(ContextRoutingTable.bluetooth("car")));
+        assertEquals("b", decoded.getReceiverId(ContextRoutingTable.bluetooth("other")));
+    }
+
+    @Test
+    public void decodeSkipsWhatItCantParse() {
+        assertTrue(ContextRoutingTable.decode(null).isEmpty());
+        assertTrue(ContextRoutingTable.decode("wired\n\tx\ty\n").isEmpty());
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the window and ring of {@link DuplicateEventFilter}.
+ * 
+ * @author Harleen Sahni
+ */
+public class DuplicateEventFilterTest {
+
+    private final DuplicateEventFilter filter = new DuplicateEventFilter();
+
+    @Test
+    public void copyWithinTheWindowIsADuplicate() {
+        assertFalse(filter.isDuplicate(1000, MediaKeys.KEYCODE_MEDIA_NEXT, MediaKeys.ACTION_DOWN, 3, 1010));
+        assertTrue(filter.isDuplicate(1000, MediaKeys.KEYCODE_MEDIA_NEXT, MediaKeys.ACTION_DOWN, 3,
+                1010 + DuplicateEventFilter.WINDOW_MILLIS));
+    }
+
+    @Test
+    public void copyAfterTheWindowIsNotADuplicate() {
+        assertFalse(filter.isDuplicate(1000, MediaKeys.KEYCODE_MEDIA_NEXT, MediaKeys.ACTION_DOWN, 3, 1010));
+        assertFalse(filter.isDuplicate(1000, MediaKeys.KEYCODE_MEDIA_NEXT, MediaKeys.ACTION_DOWN, 3,
+                1010 + DuplicateEventFilter.WINDOW_MILLIS + 1));
+    }
+
+    @Test
+    public void eventsWithoutATimeAreNeverDuplicates() {
+        assertFalse(filter.isDuplicate(0, MediaKeys.KEYCODE_MEDIA_NEXT, MediaKeys.ACTION_DOWN, 3, 1000));
+        assertFalse(filter.isDuplicate(0, MediaKeys.KEYCODE_MEDIA_NEXT, MediaKeys.ACTION_DOWN, 3, 1000));
+    }
+
+    @Test
+    public void differentEventsAreNotDuplicates() {
+        assertFalse(filter.isDuplicate(1000, MediaKeys.KEYCODE_MEDIA_NEXT, MediaKeys.ACTION_DOWN, 3, 1000));
+        assertFalse(filter.isDuplicate(1000, MediaKeys.KEYCODE_MEDIA_NEXT, MediaKeys.ACTION_UP, 3, 1000));
+        assertFalse(filter.isDuplicate(1000, MediaKeys.KEYCODE_MEDIA_PREVIOUS, MediaKeys.ACTION_DOWN, 3, 1000));
+        assertFalse(filter.isDuplicate(1000, MediaKeys.KEYCODE_MEDIA_NEXT, MediaKeys.ACTION_DOWN, 4, 1000));
+        assertFalse(filter.isDuplicate(1001, MediaKeys.KEYCODE_MEDIA_NEXT, MediaKeys.ACTION_DOWN, 3, 1000));
+    }
+
+    @Test
+    public void forgetsEventsPushedOutOfTheRing() {
+        assertFalse(filter.isDuplicate(1000, MediaKeys.KEYCODE_MEDIA_NEXT, MediaKeys.ACTION_DOWN, 3, 1000));
+        for (int i = 1; i <= DuplicateEventFilter.CAPACITY; i++) {
+            assertFalse(filter.isDuplicate(1000 + i, MediaKeys.KEYCODE_MEDIA_NEXT, MediaKeys.ACTION_DOWN, 3, 1000));
+        }
+        assertFalse(filter.isDuplicate(1000, MediaKeys.KEYCODE_MEDIA_NEXT, MediaKeys.ACTION_DOWN, 3, 1000));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the configuration and target picking of {@link FanOut}.
+ * 
+ * @author Harleen Sahni
+ */
+public class FanOutTest {
+
+    private static final ReceiverNames<String> NAMES = new ReceiverNames<String>() {
+        @Override
+        public String getId(String receiver) {
+            return receiver;
+        }
+
+        @Override
+        public String getPackageName(String receiver) {
+            return receiver;
+        }
+
+        @Override
+        public String getClassName(String receiver) {
+            return receiver;
+        }
+    };
+
+    private static final List<String> SELECTABLE = Arrays.asList("a", "b", "c");
+
+    @Test
+    public void parsesTheKeyCodes() {
+        FanOut fanOut = new FanOut(MediaKeys.KEYCODE_MEDIA_STOP + ", x,-1," + MediaKeys.KEYCODE_MEDIA_PAUSE, "");
+        assertTrue(fanOut.isFanOut(MediaKeys.KEYCODE_MEDIA_STOP));
+        assertTrue(fanOut.isFanOut(MediaKeys.KEYCODE_MEDIA_PAUSE));
+        assertFalse(fanOut.isFanOut(MediaKeys.KEYCODE_MEDIA_NEXT));
+        assertFalse(fanOut.isFanOut(-1));
+    }
+
+    @Test
+    public void noKeyCodesFanOutByDefault() {
+        assertFalse(new FanOut("", "").isFanOut(MediaKeys.KEYCODE_MEDIA_STOP));
+        assertFalse(new FanOut(null, null).isFanOut(MediaKeys.KEYCODE_MEDIA_STOP));
+    }
+
+    @Test
+    public void goesToAllSelectableReceiversWhenNoneAreChosen() {
+        FanOut fanOut = new FanOut("", "");
+        assertTrue(fanOut.getChosenIds().isEmpty());
+        assertEquals(SELECTABLE, fanOut.getTargets(SELECTABLE, NAMES));
+    }
+
+    @Test
+    public void goesToTheChosenReceiversInPriorityOrder() {
+        FanOut fanOut = new FanOut("", "c,a,gone");
+        assertEquals(Arrays.asList("a", "c"), fanOut.getTargets(SELECTABLE, NAMES));
+    }
+
+    @Test
+    public void goesToAllWhenNoneOfTheChosenAreLeft() {
+        FanOut fanOut = new FanOut("", "gone");
+        assertEquals(SELECTABLE, fanOut.getTargets(SELECTABLE, NAMES));
+        assertEquals(Collections.<String> emptyList(), fanOut.getTargets(Collections.<String> emptyList(), NAMES));
+    }
+}
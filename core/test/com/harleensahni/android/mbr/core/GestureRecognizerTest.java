@@ -0,0 +1,124 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.harleensahni.android.mbr.core.GestureRecognizer.Gesture;
+
+/**
+ * Tests the timing of {@link GestureRecognizer}.
+ * 
+ * @author Harleen Sahni
+ */
+public class GestureRecognizerTest {
+
+    private static final long CLICK_TIMEOUT = 400;
+    private static final long LONG_PRESS = 1000;
+
+    private final GestureRecognizer recognizer = new GestureRecognizer(CLICK_TIMEOUT, LONG_PRESS);
+
+    /** Clicks at {@code at}, returning what the up completed. */
+    private Gesture click(long at) {
+        assertNull(recognizer.onKey(MediaKeys.ACTION_DOWN, at, at));
+        return recognizer.onKey(MediaKeys.ACTION_UP, at + 50, at + 50);
+    }
+
+    @Test
+    public void singleClickWaitsForTheClickTimeout() {
+        assertNull(click(0));
+        assertEquals(50 + CLICK_TIMEOUT, recognizer.getDeadline());
+        assertNull(recognizer.onDeadline(50 + CLICK_TIMEOUT - 1));
+        assertEquals(Gesture.SINGLE_CLICK, recognizer.onDeadline(50 + CLICK_TIMEOUT));
+        assertEquals(GestureRecognizer.NO_DEADLINE, recognizer.getDeadline());
+    }
+
+    @Test
+    public void secondClickWithinTheTimeoutIsADoubleClick() {
+        assertNull(click(0));
+        assertNull(click(300));
+        assertNull(recognizer.onDeadline(300 + 50 + CLICK_TIMEOUT - 1));
+        assertEquals(Gesture.DOUBLE_CLICK, recognizer.onDeadline(300 + 50 + CLICK_TIMEOUT));
+    }
+
+    @Test
+    public void thirdClickCompletesATripleClickRightAway() {
+        assertNull(click(0));
+        assertNull(click(300));
+        assertEquals(Gesture.TRIPLE_CLICK, click(600));
+        assertEquals(GestureRecognizer.NO_DEADLINE, recognizer.getDeadline());
+    }
+
+    @Test
+    public void holdingIsALongPressOnceTheDeadlinePasses() {
+        assertNull(recognizer.onKey(MediaKeys.ACTION_DOWN, 0, 0));
+        assertEquals(LONG_PRESS, recognizer.getDeadline());
+        assertTrue(recognizer.isPressed());
+        assertEquals(Gesture.LONG_PRESS, recognizer.onDeadline(LONG_PRESS));
+        // The up of the hold doesn't count as a click
+        assertNull(recognizer.onKey(MediaKeys.ACTION_UP, LONG_PRESS + 500, LONG_PRESS + 500));
+        assertFalse(recognizer.isPressed());
+        assertEquals(GestureRecognizer.NO_DEADLINE, recognizer.getDeadline());
+    }
+
+    @Test
+    public void repeatsDontMoveTheLongPressDeadline() {
+        recognizer.onKey(MediaKeys.ACTION_DOWN, 0, 0);
+        recognizer.onKey(MediaKeys.ACTION_DOWN, 500, 500);
+        recognizer.onKey(MediaKeys.ACTION_DOWN, 900, 900);
+        assertEquals(LONG_PRESS, recognizer.getDeadline());
+    }
+
+    @Test
+    public void holdAfterAClickIsALongPress() {
+        assertNull(click(0));
+        assertNull(recognizer.onKey(MediaKeys.ACTION_DOWN, 200, 200));
+        assertEquals(Gesture.LONG_PRESS, recognizer.onDeadline(200 + LONG_PRESS));
+        assertNull(recognizer.onKey(MediaKeys.ACTION_UP, 200 + LONG_PRESS + 100, 200 + LONG_PRESS + 100));
+        assertEquals(GestureRecognizer.NO_DEADLINE, recognizer.getDeadline());
+    }
+
+    @Test
+    public void ignoresAnUpWithoutADown() {
+        assertNull(recognizer.onKey(MediaKeys.ACTION_UP, 0, 0));
+        assertEquals(GestureRecognizer.NO_DEADLINE, recognizer.getDeadline());
+    }
+
+    @Test
+    public void missingOrStaleEventTimesAreTakenAsNow() {
+        long now = 100000;
+        // Unset, from long ago and from the future
+        assertNull(recognizer.onKey(MediaKeys.ACTION_DOWN, 0, now));
+        assertEquals(now + LONG_PRESS, recognizer.getDeadline());
+        assertNull(recognizer.onKey(MediaKeys.ACTION_UP, now - LONG_PRESS, now + 50));
+        assertNull(recognizer.onDeadline(now + 50 + CLICK_TIMEOUT - 1));
+        assertNull(recognizer.onKey(MediaKeys.ACTION_DOWN, now + 5000, now + 100));
+        assertNull(recognizer.onKey(MediaKeys.ACTION_UP, 0, now + 150));
+        assertEquals(Gesture.DOUBLE_CLICK, recognizer.onDeadline(now + 150 + CLICK_TIMEOUT));
+    }
+
+    @Test
+    public void newClickTimeoutAppliesFromTheNextClick() {
+        recognizer.setClickTimeoutMillis(100);
+        assertNull(click(0));
+        assertEquals(Gesture.SINGLE_CLICK, recognizer.onDeadline(150));
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Tests how {@link HeldKeys} tells presses apart and forgets them.
+ * 
+ * @author Harleen Sahni
+ */
+public class HeldKeysTest {
+
+    private final HeldKeys<String> held = new HeldKeys<String>();
+
+    @Test
+    public void repeatsAndUpFollowTheDown() {
+        held.hold(MediaKeys.KEYCODE_MEDIA_NEXT, 100, "a");
+        assertEquals("a", held.get(MediaKeys.KEYCODE_MEDIA_NEXT, 100));
+        assertEquals("a", held.release(MediaKeys.KEYCODE_MEDIA_NEXT, 100));
+        assertNull(held.get(MediaKeys.KEYCODE_MEDIA_NEXT, 100));
+        assertNull(held.release(MediaKeys.KEYCODE_MEDIA_NEXT, 100));
+    }
+
+    @Test
+    public void pressesAreToldApartByKeyAndDownTime() {
+        held.hold(MediaKeys.KEYCODE_MEDIA_NEXT, 100, "a");
+        held.hold(MediaKeys.KEYCODE_MEDIA_PREVIOUS, 100, "b");
+        held.hold(MediaKeys.KEYCODE_MEDIA_NEXT, 200, "c");
+        assertEquals("a", held.get(MediaKeys.KEYCODE_MEDIA_NEXT, 100));
+        assertEquals("b", held.get(MediaKeys.KEYCODE_MEDIA_PREVIOUS, 100));
+        assertEquals("c", held.get(MediaKeys.KEYCODE_MEDIA_NEXT, 200));
+        assertNull(held.get(MediaKeys.KEYCODE_MEDIA_STOP, 100));
+    }
+
+    @Test
+    public void holdingAgainReplacesTheTarget() {
+        held.hold(MediaKeys.KEYCODE_MEDIA_NEXT, 100, "a");
+        held.hold(MediaKeys.KEYCODE_MEDIA_NEXT, 100, "b");
+        assertEquals("b", held.release(MediaKeys.KEYCODE_MEDIA_NEXT, 100));
+        assertNull(held.get(MediaKeys.KEYCODE_MEDIA_NEXT, 100));
+    }
+
+    @Test
+    public void forgetsTheOldestWhenFull() {
+        for (int i = 0; i < 5; i++) {
+            held.hold(MediaKeys.KEYCODE_MEDIA_NEXT, i, "t" + i);
+        }
+        assertNull(held.get(MediaKeys.KEYCODE_MEDIA_NEXT, 0));
+        for (int i = 1; i < 5; i++) {
+            assertEquals("t" + i, held.get(MediaKeys.KEYCODE_MEDIA_NEXT, i));
+        }
+    }
+}
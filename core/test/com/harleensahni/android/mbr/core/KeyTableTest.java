@@ -0,0 +1,71 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the classification and remapping of {@link KeyTable}.
+ * 
+ * @author Harleen Sahni
+ */
+public class KeyTableTest {
+
+    @Test
+    public void mediaKeysAreThemselves() {
+        assertEquals(MediaKeys.KEYCODE_MEDIA_NEXT, KeyTable.DEFAULT.getKeyCode(MediaKeys.KEYCODE_MEDIA_NEXT));
+        assertEquals(MediaKeys.KEYCODE_HEADSETHOOK, KeyTable.DEFAULT.getKeyCode(MediaKeys.KEYCODE_HEADSETHOOK));
+        assertTrue(KeyTable.DEFAULT.isMediaKey(MediaKeys.KEYCODE_MEDIA_STOP));
+    }
+
+    @Test
+    public void playAndPauseArePlayPause() {
+        assertEquals(MediaKeys.KEYCODE_MEDIA_PLAY_PAUSE, KeyTable.DEFAULT.getKeyCode(MediaKeys.KEYCODE_MEDIA_PLAY));
+        assertEquals(MediaKeys.KEYCODE_MEDIA_PLAY_PAUSE, KeyTable.DEFAULT.getKeyCode(MediaKeys.KEYCODE_MEDIA_PAUSE));
+    }
+
+    @Test
+    public void otherKeysArentMediaKeys() {
+        // Volume up, a key code past the table and a negative one
+        assertFalse(KeyTable.DEFAULT.isMediaKey(24));
+        assertEquals(KeyTable.NOT_MEDIA_KEY, KeyTable.DEFAULT.getKeyCode(24));
+        assertFalse(KeyTable.DEFAULT.isMediaKey(1000));
+        assertFalse(KeyTable.DEFAULT.isMediaKey(-1));
+    }
+
+    @Test
+    public void remapMakesANewTable() {
+        KeyTable table = KeyTable.DEFAULT.remap(MediaKeys.KEYCODE_HEADSETHOOK, MediaKeys.KEYCODE_MEDIA_NEXT);
+        assertEquals(MediaKeys.KEYCODE_MEDIA_NEXT, table.getKeyCode(MediaKeys.KEYCODE_HEADSETHOOK));
+        assertEquals(MediaKeys.KEYCODE_HEADSETHOOK, KeyTable.DEFAULT.getKeyCode(MediaKeys.KEYCODE_HEADSETHOOK));
+    }
+
+    @Test
+    public void remappingAKeyToItselfKeepsItDistinct() {
+        KeyTable table = KeyTable.DEFAULT.remap(MediaKeys.KEYCODE_MEDIA_PAUSE, MediaKeys.KEYCODE_MEDIA_PAUSE);
+        assertEquals(MediaKeys.KEYCODE_MEDIA_PAUSE, table.getKeyCode(MediaKeys.KEYCODE_MEDIA_PAUSE));
+        assertEquals(MediaKeys.KEYCODE_MEDIA_PLAY_PAUSE, table.getKeyCode(MediaKeys.KEYCODE_MEDIA_PLAY));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void onlyMediaKeysCanBeRemapped() {
+        KeyTable.DEFAULT.remap(MediaKeys.KEYCODE_HEADSETHOOK, 24);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the decay, ranking and encoding of {@link ReceiverUsage}.
+ * 
+ * @author Harleen Sahni
+ */
+public class ReceiverUsageTest {
+
+    private static final ReceiverNames<String> NAMES = new ReceiverNames<String>() {
+        @Override
+        public String getId(String receiver) {
+            return receiver;
+        }
+
+        @Override
+        public String getPackageName(String receiver) {
+            return receiver;
+        }
+
+        @Override
+        public String getClassName(String receiver) {
+            return receiver;
+        }
+    };
+
+    private static final long NOW = 1000000000000L;
+
+    private static final double DELTA = 1e-9;
+
+    private final ReceiverUsage usage = new ReceiverUsage();
+
+    private List<String> sort(String preferredId, String... receivers) {
+        List<String> sorted = new ArrayList<String>(Arrays.asList(receivers));
+        usage.sort(sorted, NAMES, preferredId, NOW);
+        return sorted;
+    }
+
+    @Test
+    public void selectionsHalveEveryHalfLife() {
+        usage.recordSelection("a", NOW);
+        usage.recordSelection("a", NOW);
+        assertEquals(2, usage.getScore("a", NOW), DELTA);
+        assertEquals(1, usage.getScore("a", NOW + ReceiverUsage.HALF_LIFE_MILLIS), DELTA);
+        assertEquals(0, usage.getScore("b", NOW), DELTA);
+        assertEquals(NOW, usage.getLastUsed("a"));
+    }
+
+    @Test
+    public void clockGoingBackDoesntGrowTheScore() {
+        usage.recordSelection("a", NOW);
+        assertEquals(1, usage.getScore("a", NOW - ReceiverUsage.HALF_LIFE_MILLIS), DELTA);
+        usage.recordSelection("a", NOW - 1000);
+        assertEquals(NOW, usage.getLastUsed("a"));
+    }
+
+    @Test
+    public void recentPicksOutrankOldOnes() {
+        long old = NOW - 3 * ReceiverUsage.HALF_LIFE_MILLIS;
+        for (int i = 0; i < 4; i++) {
+            usage.recordSelection("old", old);
+        }
+        usage.recordSelection("new", NOW);
+        assertEquals(Arrays.asList("new", "old", "never"), sort(null, "never", "old", "new"));
+    }
+
+    @Test
+    public void tiesKeepTheirOrderExceptForThePreferredOne() {
+        assertEquals(Arrays.asList("a", "b", "c"), sort(null, "a", "b", "c"));
+        assertEquals(Arrays.asList("c", "a", "b"), sort("c", "a", "b", "c"));
+    }
+
+    @Test
+    public void encodesAndDecodes() {
+        assertTrue(usage.isEmpty());
+        usage.recordSelection("a", NOW);
+        usage.recordSelection("b", NOW - 1000);
+        ReceiverUsage decoded = ReceiverUsage.decode(usage.encode());
+        assertFalse(decoded.isEmpty());
+        assertEquals(usage.getScore("a", NOW), decoded.getScore("a", NOW), DELTA);
+        assertEquals(NOW - 1000, decoded.getLastUsed("b"));
+    }
+
+    @Test
+    public void decodeSkipsWhatItCantParse() {
+        ReceiverUsage decoded = ReceiverUsage.decode("a\tx\t1\nb\t1.0\t5\nc\n");
+        assertEquals(0, decoded.getLastUsed("a"));
+        assertEquals(5, decoded.getLastUsed("b"));
+        assertTrue(ReceiverUsage.decode(null).isEmpty());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests the backoff and budget of {@link RegistrationGuard}.
+ * 
+ * @author Harleen Sahni
+ */
+public class RegistrationGuardTest {
+
+    private static final String COMPETITOR = "com.example/com.example.Receiver";
+
+    @Test
+    public void takeoverLongAfterOurRegistrationIsTakenBackRightAway() {
+        RegistrationGuard guard = new RegistrationGuard(10, 60 * 1000);
+        guard.onRegistered(1000);
+        assertEquals(5000, guard.onTakeover(COMPETITOR, 5000));
+        assertEquals(0, guard.getCompetitors().get(0).getFights());
+    }
+
+    @Test
+    public void fightsBackOffExponentially() {
+        RegistrationGuard guard = new RegistrationGuard(100, 1000);
+        long now = 100000;
+        long backoff = RegistrationGuard.BASE_BACKOFF_MILLIS;
+        for (int i = 0; i < 4; i++) {
+            guard.onRegistered(now);
+            now += 100;
+            assertEquals(now + backoff, guard.onTakeover(COMPETITOR, now));
+            now += backoff;
+            backoff *= 2;
+        }
+        assertEquals(4, guard.getCompetitors().get(0).getFightsInARow());
+    }
+
+    @Test
+    public void backoffIsCapped() {
+        RegistrationGuard guard = new RegistrationGuard(100, 1);
+        long now = 100000;
+        long at = now;
+        for (int i = 0; i < 40; i++) {
+            guard.onRegistered(now);
+            now += 100;
+            at = guard.onTakeover(COMPETITOR, now);
+            now = at;
+        }
+        guard.onRegistered(now);
+        assertEquals(now + 100 + RegistrationGuard.MAX_BACKOFF_MILLIS, guard.onTakeover(COMPETITOR, now + 100));
+    }
+
+    @Test
+    public void backoffResetsAfterAQuietPeriod() {
+        RegistrationGuard guard = new RegistrationGuard(100, 1);
+        guard.onRegistered(100000);
+        guard.onTakeover(COMPETITOR, 100100);
+        guard.onRegistered(100600);
+        guard.onTakeover(COMPETITOR, 100700);
+        assertEquals(2, guard.getCompetitors().get(0).getFightsInARow());
+
+        // Not a fight, and long enough since its last takeover
+        long later = 100700 + RegistrationGuard.QUIET_MILLIS;
+        assertEquals(later, guard.onTakeover(COMPETITOR, later));
+        assertEquals(0, guard.getCompetitors().get(0).getFightsInARow());
+    }
+
+    @Test
+    public void takeoverWaitsForTheBudget() {
+        RegistrationGuard guard = new RegistrationGuard(2, 10000);
+        guard.onRegistered(100);
+        guard.onRegistered(200);
+        // The first registration has to leave the window
+        assertEquals(10100, guard.onTakeover(COMPETITOR, 5000));
+        assertEquals(1, guard.getDeferredCount());
+        guard.onRegistered(10100);
+        // Now the second one
+        assertEquals(10200, guard.onTakeover(COMPETITOR, 10100 + RegistrationGuard.FIGHT_MILLIS + 1 - 10000));
+    }
+
+    @Test
+    public void countsEachCompetitorSeparately() {
+        RegistrationGuard guard = new RegistrationGuard(10, 1);
+        guard.onTakeover("a/a.Receiver", 1000);
+        guard.onTakeover(COMPETITOR, 2000);
+        guard.onTakeover(COMPETITOR, 3000);
+        assertEquals(COMPETITOR, guard.getCompetitors().get(0).getName());
+        assertEquals(2, guard.getCompetitors().get(0).getTakeovers());
+        assertEquals(1, guard.getCompetitors().get(1).getTakeovers());
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.harleensahni.android.mbr.core.RouteDecision.Route;
+
+/**
+ * Tests the order {@link Router} decides in, with receivers given as
+ * {@code package/class} strings.
+ * 
+ * @author Harleen Sahni
+ */
+public class RouterTest {
+
+    private static final String OWN = "own/own.Receiver";
+    private static final String PLAYER = "player/player.Receiver";
+    private static final String OTHER = "other/other.Receiver";
+
+    private static final ReceiverNames<String> NAMES = new ReceiverNames<String>() {
+        @Override
+        public String getId(String receiver) {
+            return receiver;
+        }
+
+        @Override
+        public String getPackageName(String receiver) {
+            return receiver.substring(0, receiver.indexOf('/'));
+        }
+
+        @Override
+        public String getClassName(String receiver) {
+            return receiver.substring(receiver.indexOf('/') + 1);
+        }
+    };
+
+    /** Routing state with fixed answers. */
+    private static final class FixedRoutingState implements RoutingState {
+        boolean selectorOpen;
+        boolean fanOut;
+        boolean musicActive;
+        boolean streaming;
+        String lastMediaButtonReceiver;
+        List<String> playingPackageNames = Collections.emptyList();
+        boolean conservative;
+        String contextReceiverId;
+        String predictedId;
+
+        @Override
+        public boolean isSelectorOpen() {
+            return selectorOpen;
+        }
+
+        @Override
+        public boolean isFanOut(int keyCode) {
+            return fanOut;
+        }
+
+        @Override
+        public boolean isMusicActive() {
+            return musicActive;
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return streaming;
+        }
+
+        @Override
+        public String getLastMediaButtonReceiver() {
+            return lastMediaButtonReceiver;
+        }
+
+        @Override
+        public List<String> getPlayingPackageNames() {
+            return playingPackageNames;
+        }
+
+        @Override
+        public boolean isConservative() {
+            return conservative;
+        }
+
+        @Override
+        public String getContextReceiverId() {
+            return contextReceiverId;
+        }
+
+        @Override
+        public <R> R predictReceiver(int keyCode, List<R> candidates, ReceiverNames<R> names) {
+            for (R candidate : candidates) {
+                if (names.getId(candidate).equals(predictedId)) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+    }
+
+    private FixedRoutingState state;
+
+    private ReceiverDirectory<String> directory;
+
+    private RouteDecision<String> decision;
+
+    @Before
+    public void setUp() {
+        state = new FixedRoutingState();
+        directory = new ReceiverDirectory<String>(Arrays.asList(OWN, PLAYER, OTHER), new HashSet<String>(),
+                "own.Receiver", NAMES);
+        decision = new RouteDecision<String>();
+    }
+
+    private void decide(int action, int keyCode) {
+        Router.decide(action, keyCode, KeyTable.DEFAULT, state, directory, decision);
+    }
+
+    @Test
+    public void ignoresKeysThatArentMediaKeys() {
+        state.selectorOpen = true;
+        decide(MediaKeys.ACTION_UP, 24);
+        assertEquals(Route.IGNORE, decision.getRoute());
+        assertFalse(decision.isAbort());
+        assertFalse(decision.isDispatch());
+    }
+
+    @Test
+    public void handsKeysToTheOpenSelectorFirst() {
+        state.selectorOpen = true;
+        state.fanOut = true;
+        state.musicActive = true;
+        decide(MediaKeys.ACTION_DOWN, MediaKeys.KEYCODE_MEDIA_NEXT);
+        assertEquals(Route.SELECTOR_OPEN, decision.getRoute());
+        assertTrue(decision.isAbort());
+        assertTrue(decision.isDispatch());
+    }
+
+    @Test
+    public void fansOutOnTheUpWhateverIsPlaying() {
+        state.fanOut = true;
+        state.musicActive = true;
+        state.lastMediaButtonReceiver = PLAYER;
+        decide(MediaKeys.ACTION_DOWN, MediaKeys.KEYCODE_MEDIA_NEXT);
+        assertEquals(Route.FAN_OUT, decision.getRoute());
+        assertFalse(decision.isDispatch());
+        decide(MediaKeys.ACTION_UP, MediaKeys.KEYCODE_MEDIA_NEXT);
+        assertEquals(Route.FAN_OUT, decision.getRoute());
+        assertTrue(decision.isDispatch());
+    }
+
+    @Test
+    public void sendsToTheLastReceiverWhileMusicPlays() {
+        state.musicActive = true;
+        state.lastMediaButtonReceiver = OTHER;
+        state.playingPackageNames = Arrays.asList("player");
+        decide(MediaKeys.ACTION_UP, MediaKeys.KEYCODE_MEDIA_PLAY);
+        assertEquals(Route.LAST_RECEIVER, decision.getRoute());
+        assertEquals(OTHER, decision.getLastMediaButtonReceiver());
+        assertEquals(MediaKeys.KEYCODE_MEDIA_PLAY_PAUSE, decision.getKeyCode());
+        assertFalse(decision.isAbort());
+        assertTrue(decision.isDispatch());
+    }
+
+    @Test
+    public void dispatchesTheDownOnlyWhenStreaming() {
+        state.musicActive = true;
+        state.lastMediaButtonReceiver = OTHER;
+        decide(MediaKeys.ACTION_DOWN, MediaKeys.KEYCODE_MEDIA_NEXT);
+        assertFalse(decision.isDispatch());
+        state.streaming = true;
+        decide(MediaKeys.ACTION_DOWN, MediaKeys.KEYCODE_MEDIA_NEXT);
+        assertTrue(decision.isDispatch());
+    }
+
+    @Test
+    public void sendsToThePlayingReceiverWithoutALastReceiver() {
+        state.musicActive = true;
+        state.playingPackageNames = Arrays.asList("unknown", "player");
+        decide(MediaKeys.ACTION_UP, MediaKeys.KEYCODE_MEDIA_NEXT);
+        assertEquals(Route.PLAYING_RECEIVER, decision.getRoute());
+        assertEquals(PLAYER, decision.getReceiver());
+        assertTrue(decision.isAbort());
+    }
+
+    @Test
+    public void passesThroughWhenThePlayingAppIsUnknown() {
+        state.musicActive = true;
+        decide(MediaKeys.ACTION_UP, MediaKeys.KEYCODE_MEDIA_NEXT);
+        assertEquals(Route.PASS_THROUGH, decision.getRoute());
+        assertFalse(decision.isAbort());
+        assertFalse(decision.isDispatch());
+    }
+
+    @Test
+    public void showsTheSelectorWhenThePlayingAppIsUnknownAndConservative() {
+        state.musicActive = true;
+        state.conservative = true;
+        decide(MediaKeys.ACTION_UP, MediaKeys.KEYCODE_MEDIA_NEXT);
+        assertEquals(Route.SHOW_SELECTOR, decision.getRoute());
+        assertTrue(decision.isDispatch());
+    }
+
+    @Test
+    public void sendsToTheContextReceiverWhenNothingPlays() {
+        state.contextReceiverId = OTHER;
+        state.predictedId = PLAYER;
+        decide(MediaKeys.ACTION_UP, MediaKeys.KEYCODE_MEDIA_PLAY_PAUSE);
+        assertEquals(Route.CONTEXT_RECEIVER, decision.getRoute());
+        assertEquals(OTHER, decision.getReceiver());
+    }
+
+    @Test
+    public void skipsAHiddenContextReceiver() {
+        directory = new ReceiverDirectory<String>(Arrays.asList(OWN, PLAYER, OTHER),
+                new HashSet<String>(Arrays.asList(OTHER)), "own.Receiver", NAMES);
+        state.contextReceiverId = OTHER;
+        decide(MediaKeys.ACTION_UP, MediaKeys.KEYCODE_MEDIA_PLAY_PAUSE);
+        // Only the player is left visible besides our own
+        assertEquals(Route.SOLE_RECEIVER, decision.getRoute());
+        assertEquals(PLAYER, decision.getReceiver());
+    }
+
+    @Test
+    public void predictsOnlyForTheUp() {
+        state.predictedId = PLAYER;
+        decide(MediaKeys.ACTION_DOWN, MediaKeys.KEYCODE_MEDIA_PLAY_PAUSE);
+        assertEquals(Route.SHOW_SELECTOR, decision.getRoute());
+        assertTrue(decision.isAbort());
+        assertFalse(decision.isDispatch());
+        decide(MediaKeys.ACTION_UP, MediaKeys.KEYCODE_MEDIA_PLAY_PAUSE);
+        assertEquals(Route.PREDICTED_RECEIVER, decision.getRoute());
+        assertEquals(PLAYER, decision.getReceiver());
+    }
+
+    @Test
+    public void showsTheSelectorWhenNothingElseDecides() {
+        decide(MediaKeys.ACTION_UP, MediaKeys.KEYCODE_MEDIA_PLAY_PAUSE);
+        assertEquals(Route.SHOW_SELECTOR, decision.getRoute());
+        assertNull(decision.getReceiver());
+        assertTrue(decision.isDispatch());
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests encoding and decoding {@link RoutingSnapshot}s.
+ * 
+ * @author Harleen Sahni
+ */
+public class RoutingSnapshotTest {
+
+    private static RoutingSnapshot snapshot() {
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("enabled", "true");
+        values.put("hidden_apps", "com.example/com.example.Receiver,été");
+        values.put("missing", null);
+        return new RoutingSnapshot(Arrays.asList("com.example", "org.example"),
+                Arrays.asList("com.example.Receiver", "org.example.Receiver"), values);
+    }
+
+    @Test
+    public void decodesWhatWasEncoded() {
+        RoutingSnapshot decoded = RoutingSnapshot.decode(ByteBuffer.wrap(snapshot().encode()));
+        assertEquals(2, decoded.getReceiverCount());
+        assertEquals("com.example", decoded.getPackageName(0));
+        assertEquals("com.example.Receiver", decoded.getClassName(0));
+        assertEquals("org.example", decoded.getPackageName(1));
+        assertEquals("org.example.Receiver", decoded.getClassName(1));
+        assertEquals("true", decoded.getValue("enabled"));
+        assertEquals("com.example/com.example.Receiver,été", decoded.getValue("hidden_apps"));
+        assertNull(decoded.getValue("missing"));
+    }
+
+    @Test
+    public void decodesAnEmptySnapshot() {
+        RoutingSnapshot empty = new RoutingSnapshot(Collections.<String> emptyList(),
+                Collections.<String> emptyList(), Collections.<String, String> emptyMap());
+        assertEquals(0, RoutingSnapshot.decode(ByteBuffer.wrap(empty.encode())).getReceiverCount());
+    }
+
+    @Test
+    public void rejectsAnotherVersion() {
+        byte[] encoded = snapshot().encode();
+        ByteBuffer.wrap(encoded).putInt(4, RoutingSnapshot.VERSION + 1);
+        assertNull(RoutingSnapshot.decode(ByteBuffer.wrap(encoded)));
+    }
+
+    @Test
+    public void rejectsSomethingElse() {
+        byte[] encoded = snapshot().encode();
+        encoded[0] ^= 1;
+        assertNull(RoutingSnapshot.decode(ByteBuffer.wrap(encoded)));
+    }
+
+    @Test
+    public void rejectsATruncatedSnapshot() {
+        byte[] encoded = snapshot().encode();
+        for (int length = 0; length < encoded.length; length++) {
+            assertNull(RoutingSnapshot.decode(ByteBuffer.wrap(encoded, 0, length)));
+        }
+    }
+
+    @Test
+    public void rejectsABadStringLength() {
+        byte[] encoded = snapshot().encode();
+        // The length of the first package name
+        ByteBuffer.wrap(encoded).putInt(20, Integer.MAX_VALUE);
+        assertNull(RoutingSnapshot.decode(ByteBuffer.wrap(encoded)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requiresAClassNamePerPackageName() {
+        new RoutingSnapshot(Arrays.asList("com.example"), Collections.<String> emptyList(),
+                Collections.<String, String> emptyMap());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the thresholds and decay of {@link SelectionPredictor}.
+ * 
+ * @author Harleen Sahni
+ */
+public class SelectionPredictorTest {
+
+    private static final ReceiverNames<String> NAMES = new ReceiverNames<String>() {
+        @Override
+        public String getId(String receiver) {
+            return receiver;
+        }
+
+        @Override
+        public String getPackageName(String receiver) {
+            return receiver;
+        }
+
+        @Override
+        public String getClassName(String receiver) {
+            return receiver;
+        }
+    };
+
+    private static final List<String> CANDIDATES = Arrays.asList("a", "b");
+
+    private static final SelectionFeatures FEATURES = new SelectionFeatures(MediaKeys.KEYCODE_MEDIA_PLAY_PAUSE, 9,
+            SelectionFeatures.AUDIO_ROUTE_WIRED, null);
+
+    private static final long NOW = 1000000000000L;
+
+    private final SelectionPredictor predictor = new SelectionPredictor();
+
+    private void pick(String id, int times, long at) {
+        for (int i = 0; i < times; i++) {
+            predictor.recordSelection(id, FEATURES, at);
+        }
+    }
+
+    private String predict(SelectionPredictor from, long at) {
+        return from.predict(CANDIDATES, NAMES, FEATURES, SelectionPredictor.MIN_CONFIDENCE, at);
+    }
+
+    @Test
+    public void predictsAConsistentPick() {
+        pick("a", 3, NOW);
+        assertEquals("a", predict(predictor, NOW));
+    }
+
+    @Test
+    public void needsEnoughSelections() {
+        pick("a", 2, NOW);
+        assertNull(predict(predictor, NOW));
+    }
+
+    @Test
+    public void needsConfidence() {
+        pick("a", 5, NOW);
+        pick("b", 4, NOW);
+        assertNull(predict(predictor, NOW));
+    }
+
+    @Test
+    public void oldPicksCountLess() {
+        pick("a", 8, NOW);
+        assertEquals("a", predict(predictor, NOW + SelectionPredictor.HALF_LIFE_MILLIS));
+        // Quartered to 2, fewer than needed
+        assertNull(predict(predictor, NOW + 2 * SelectionPredictor.HALF_LIFE_MILLIS));
+    }
+
+    @Test
+    public void recentPicksOutweighOldOnes() {
+        pick("a", 6, NOW);
+        pick("b", 6, NOW + 4 * SelectionPredictor.HALF_LIFE_MILLIS);
+        assertEquals("b", predict(predictor, NOW + 4 * SelectionPredictor.HALF_LIFE_MILLIS));
+    }
+
+    @Test
+    public void predictsTheSameAfterDecoding() {
+        pick("a", 3, NOW);
+        pick("b", 1, NOW);
+        SelectionPredictor decoded = SelectionPredictor.decode(predictor.encode());
+        assertEquals(predict(predictor, NOW), predict(decoded, NOW));
+        assertEquals("a", predict(decoded, NOW));
+    }
+
+    @Test
+    public void decodingSkipsBadLines() {
+        pick("a", 3, NOW);
+        SelectionPredictor decoded = SelectionPredictor.decode("b\tnot a number\t0\n" + predictor.encode());
+        assertEquals("a", predict(decoded, NOW));
+    }
+}
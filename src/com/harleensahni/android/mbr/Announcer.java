@@ -0,0 +1,362 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr;
+
+import static com.harleensahni.android.mbr.Constants.TAG;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import android.content.Context;
+import android.content.pm.ResolveInfo;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.speech.tts.TextToSpeech;
+import android.speech.tts.TextToSpeech.OnInitListener;
+import android.speech.tts.TextToSpeech.OnUtteranceCompletedListener;
+import android.util.Log;
+
+import com.harleensahni.android.mbr.receivers.MediaButtonReceiver;
+
+/**
+ * Long lived text to speech for the selector's announcements. Owned by
+ * {@link MediaButtonMonitorService}, so the engine is already initialized when
+ * the selector opens instead of being started every time.
+ * <p>
+ * App names and the selector's phrases are synthesized ahead of time to audio
+ * files in the cache directory and registered with
+ * {@link TextToSpeech#addSpeech}, so speaking them just plays the file. Text
+ * that hasn't been synthesized yet is spoken live. Synthesis and file work
+ * happen on a background thread.
+ * 
+ * @author Harleen Sahni
+ */
+public final class Announcer implements OnInitListener, OnUtteranceCompletedListener {
+
+    private static final String DIRECTORY_NAME = "tts";
+
+    private static final String ENCODING = "UTF-8";
+
+    /** Longest file name we create, most file systems allow 255 bytes. */
+    private static final int MAX_FILE_NAME_LENGTH = 200;
+
+    private static Announcer instance;
+
+    private final Context context;
+
+    /** Background thread for synthesis and file work. */
+    private final Handler handler;
+
+    /**
+     * Where synthesized speech goes. Per locale, since the speech for the same
+     * text differs between them.
+     */
+    private final File directory;
+
+    /** Guarded by this. Null while nobody holds the announcer. */
+    private TextToSpeech textToSpeech;
+
+    /** Guarded by this. */
+    private boolean ready;
+
+    /** Guarded by this. How many {@link #acquire()}s haven't been released. */
+    private int holders;
+
+    /** Guarded by this. Spoken once the engine is ready. */
+    private String pendingText;
+
+    /** Guarded by this. Texts to synthesize once the engine is ready. */
+    private final Set<String> wanted = new HashSet<String>();
+
+    /** Guarded by this. Texts registered with the engine or being synthesized. */
+    private final Set<String> prepared = new HashSet<String>();
+
+    private Announcer(Context context) {
+        this.context = context;
+        directory = new File(new File(context.getCacheDir(), DIRECTORY_NAME), Locale.getDefault().toString());
+        HandlerThread thread = new HandlerThread("MediaButtonRouter-tts", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Gets the announcer for this process.
+     * 
+     * @param context
+     *            Any context, the application context is used.
+     * @return The announcer.
+     */
+    public static synchronized Announcer getInstance(Context context) {
+        if (instance == null) {
+            instance = new Announcer(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Starts the engine if it isn't running yet. Every call must be matched by
+     * a {@link #release()}, the engine is shut down when the last holder
+     * releases it.
+     */
+    public synchronized void acquire() {
+        holders++;
+        if (textToSpeech == null) {
+            ready = false;
+            prepared.clear();
+            textToSpeech = new TextToSpeech(context, this);
+        }
+    }
+
+    /**
+     * Releases a hold taken with {@link #acquire()}.
+     */
+    public synchronized void release() {
+        if (holders > 0 && --holders == 0 && textToSpeech != null) {
+            textToSpeech.shutdown();
+            textToSpeech = null;
+            ready = false;
+            pendingText = null;
+        }
+    }
+
+    /**
+     * Speaks {@code text}, interrupting whatever is being spoken. If the engine
+     * isn't ready yet, the text is spoken as soon as it is, replacing any text
+     * that was waiting.
+     * 
+     * @param text
+     *            The text to speak.
+     */
+    public synchronized void speak(String text) {
+        if (ready) {
+            textToSpeech.speak(text, TextToSpeech.QUEUE_FLUSH, null);
+        } else {
+            pendingText = text;
+        }
+    }
+
+    /**
+     * Stops speaking.
+     */
+    public synchronized void stop() {
+        pendingText = null;
+        if (ready) {
+            textToSpeech.stop();
+        }
+    }
+
+    /**
+     * Synthesizes {@code texts} in the background so that speaking them later
+     * is instant.
+     * 
+     * @param texts
+     *            The texts that will be spoken.
+     */
+    public synchronized void prepare(Collection<String> texts) {
+        wanted.addAll(texts);
+        if (ready) {
+            handler.post(synthesizeWanted);
+        }
+    }
+
+    /**
+     * Synthesizes the names of {@code receivers} and the selector's
+     * announcements that don't name an app, in the background.
+     * 
+     * @param receivers
+     *            The media button receivers.
+     */
+    public void prepareReceivers(final List<ResolveInfo> receivers) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                List<String> texts = getAnnouncements(context, null);
+                AppInfoCache appInfoCache = AppInfoCache.getInstance(context);
+                for (ResolveInfo receiver : receivers) {
+                    if (!MediaButtonReceiver.class.getName().equals(receiver.activityInfo.name)) {
+                        texts.add(appInfoCache.getLabel(receiver));
+                    }
+                }
+                prepare(texts);
+            }
+        });
+    }
+
+    /**
+     * Gets the announcements the selector can open with for an app.
+     * 
+     * @param context
+     *            The context.
+     * @param appName
+     *            The name of the selected app, or null if none is selected.
+     * @return The announcements for every action.
+     */
+    public static List<String> getAnnouncements(Context context, String appName) {
+        int[] actionTextIds = { R.string.play_speak_text, R.string.pause_play_speak_text,
+                R.string.pause_speak_text, R.string.next_speak_text, R.string.previous_speak_text,
+                R.string.stop_speak_text };
+        List<String> announcements = new ArrayList<String>(actionTextIds.length);
+        for (int actionTextId : actionTextIds) {
+            String actionText = context.getString(actionTextId);
+            announcements.add(appName == null ? String.format(context.getString(R.string.announce_speak_text),
+                    actionText) : String.format(context.getString(R.string.application_announce_speak_text),
+                    actionText, appName));
+        }
+        return announcements;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void onInit(int status) {
+        if (textToSpeech == null) {
+            // Released before it finished starting
+            return;
+        }
+        if (status != TextToSpeech.SUCCESS) {
+            Log.w(TAG, "Text to speech failed to start: " + status);
+            return;
+        }
+        ready = true;
+        textToSpeech.setOnUtteranceCompletedListener(this);
+        if (pendingText != null) {
+            textToSpeech.speak(pendingText, TextToSpeech.QUEUE_FLUSH, null);
+            pendingText = null;
+        }
+        handler.post(registerSynthesized);
+        handler.post(synthesizeWanted);
+    }
+
+    /**
+     * Called when a text has been synthesized to its file. The utterance id is
+     * the text.
+     */
+    @Override
+    public void onUtteranceCompleted(String text) {
+        File file = getFile(text);
+        if (file != null && getTemporaryFile(file).renameTo(file)) {
+            synchronized (this) {
+                if (ready) {
+                    textToSpeech.addSpeech(text, file.getPath());
+                }
+            }
+        }
+    }
+
+    /** Registers what was synthesized by earlier processes. */
+    private final Runnable registerSynthesized = new Runnable() {
+        @Override
+        public void run() {
+            String[] names = directory.list();
+            if (names == null) {
+                return;
+            }
+            for (String name : names) {
+                String text = getText(name);
+                if (text != null) {
+                    synchronized (Announcer.this) {
+                        if (ready && prepared.add(text)) {
+                            textToSpeech.addSpeech(text, new File(directory, name).getPath());
+                        }
+                    }
+                }
+            }
+        }
+    };
+
+    /** Synthesizes what's wanted and not yet prepared. */
+    private final Runnable synthesizeWanted = new Runnable() {
+        @Override
+        public void run() {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                return;
+            }
+            List<String> texts;
+            synchronized (Announcer.this) {
+                texts = new ArrayList<String>(wanted);
+                wanted.clear();
+            }
+            for (String text : texts) {
+                File file = getFile(text);
+                if (file == null) {
+                    continue;
+                }
+                boolean synthesized = file.exists();
+                synchronized (Announcer.this) {
+                    if (!ready) {
+                        // Do it when the engine is back
+                        wanted.add(text);
+                    } else if (prepared.add(text)) {
+                        if (synthesized) {
+                            textToSpeech.addSpeech(text, file.getPath());
+                        } else {
+                            HashMap<String, String> params = new HashMap<String, String>();
+                            params.put(TextToSpeech.Engine.KEY_PARAM_UTTERANCE_ID, text);
+                            textToSpeech.synthesizeToFile(text, params, getTemporaryFile(file).getPath());
+                        }
+                    }
+                }
+            }
+        }
+    };
+
+    /**
+     * Gets the file the speech of {@code text} is kept in. The name is the
+     * encoded text, so the text can be recovered from it.
+     * 
+     * @return The file, or null if the text is too long to be a file name.
+     */
+    private File getFile(String text) {
+        try {
+            String name = URLEncoder.encode(text, ENCODING) + ".wav";
+            return name.length() > MAX_FILE_NAME_LENGTH ? null : new File(directory, name);
+        } catch (UnsupportedEncodingException e) {
+            return null;
+        }
+    }
+
+    private static File getTemporaryFile(File file) {
+        return new File(file.getPath() + ".tmp");
+    }
+
+    /**
+     * @return The text that {@link #getFile(String)} named {@code name} after,
+     *         or null if it isn't one of ours.
+     */
+    private static String getText(String name) {
+        if (!name.endsWith(".wav")) {
+            return null;
+        }
+        try {
+            return URLDecoder.decode(name.substring(0, name.length() - ".wav".length()), ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
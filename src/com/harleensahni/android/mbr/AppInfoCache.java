@@ -0,0 +1,455 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr;
+
+import static com.harleensahni.android.mbr.Constants.TAG;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.content.pm.ResolveInfo;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Cache of the labels and icons of media button receivers, so that showing
+ * them doesn't mean loading resources from other apps' APKs every time.
+ * <p>
+ * Labels are kept in memory apart from the icons, which are kept in a small
+ * LRU, so getting a label never loads or decodes an icon. Both are written to
+ * the cache directory under the receiver's package, class and the package's
+ * last update time, so they survive the process being killed. An updated
+ * package gets a new file name, and {@link #invalidate(String)} drops what's
+ * in memory and on disk for it when {@link MediaButtonMonitorService} sees a
+ * package change. Disk writes, {@link #preload(List)} and
+ * {@link #load(ResolveInfo, Runnable)} happen on a background thread. The UI
+ * thread should only get what {@link #isLoaded(ResolveInfo)} says is in
+ * memory, or use {@link #getLoadedLabel(ResolveInfo)}.
+ * 
+ * @author Harleen Sahni
+ */
+public final class AppInfoCache {
+
+    /** How many receivers' icons to keep in memory. More than a selector shows. */
+    private static final int MEMORY_ENTRIES = 32;
+
+    /** Bumped whenever the file format changes. */
+    private static final int FILE_VERSION = 1;
+
+    private static final String DIRECTORY_NAME = "app_info";
+
+    private static AppInfoCache instance;
+
+    /** A receiver's label and icon. */
+    private static final class Entry {
+        final String label;
+        final Bitmap icon;
+
+        Entry(String label, Bitmap icon) {
+            this.label = label;
+            this.icon = icon;
+        }
+    }
+
+    private final PackageManager packageManager;
+
+    private final Resources resources;
+
+    private final File directory;
+
+    /** Labels of the receivers, guarded by itself. */
+    private final Map<String, String> labels = new HashMap<String, String>();
+
+    /** Icons of the receivers, null for none. Access ordered, guarded by itself. */
+    private final Map<String, Bitmap> icons = new LinkedHashMap<String, Bitmap>(MEMORY_ENTRIES, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Bitmap> eldest) {
+            return size() > MEMORY_ENTRIES;
+        }
+    };
+
+    /** Background thread for disk writes and loading. */
+    private final Handler handler;
+
+    /** Tells the UI thread about loaded entries. */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private AppInfoCache(Context context) {
+        packageManager = context.getPackageManager();
+        resources = context.getResources();
+        directory = new File(context.getCacheDir(), DIRECTORY_NAME);
+        HandlerThread thread = new HandlerThread("MediaButtonRouter-appinfo", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Gets the cache for this process.
+     * 
+     * @param context
+     *            Any context, the application context is used.
+     * @return The cache.
+     */
+    public static synchronized AppInfoCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new AppInfoCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the name of the app a receiver belongs to, loading it if it isn't
+     * in memory but never its icon.
+     * 
+     * @param resolveInfo
+     *            The receiver.
+     * @return The app's label.
+     */
+    public String getLabel(ResolveInfo resolveInfo) {
+        String key = getKey(resolveInfo);
+        String label;
+        synchronized (labels) {
+            label = labels.get(key);
+        }
+        if (label != null) {
+            return label;
+        }
+        Entry entry = read(getFile(resolveInfo), false);
+        label = entry != null ? entry.label : Utils.getAppName(resolveInfo, packageManager);
+        synchronized (labels) {
+            labels.put(key, label);
+        }
+        return label;
+    }
+
+    /**
+     * Gets the name of the app a receiver belongs to from memory, for the UI
+     * thread. If it isn't in memory yet it's loaded in the background.
+     * 
+     * @param resolveInfo
+     *            The receiver.
+     * @return The app's label, or its package name until the label is loaded.
+     */
+    public String getLoadedLabel(final ResolveInfo resolveInfo) {
+        String label;
+        synchronized (labels) {
+            label = labels.get(getKey(resolveInfo));
+        }
+        if (label != null) {
+            return label;
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                getLabel(resolveInfo);
+            }
+        });
+        return resolveInfo.activityInfo.packageName;
+    }
+
+    /**
+     * Gets the icon of a receiver.
+     * 
+     * @param resolveInfo
+     *            The receiver.
+     * @return A new drawable of the receiver's icon, or null if it has none we
+     *         can draw.
+     */
+    public Drawable getIcon(ResolveInfo resolveInfo) {
+        Bitmap icon = getEntry(resolveInfo).icon;
+        return icon == null ? null : new BitmapDrawable(resources, icon);
+    }
+
+    /**
+     * Checks whether a receiver's label and icon are in memory, so getting
+     * them doesn't touch the disk or the {@code PackageManager}.
+     * 
+     * @param resolveInfo
+     *            The receiver.
+     * @return Whether the receiver is loaded.
+     */
+    public boolean isLoaded(ResolveInfo resolveInfo) {
+        String key = getKey(resolveInfo);
+        synchronized (labels) {
+            if (!labels.containsKey(key)) {
+                return false;
+            }
+        }
+        synchronized (icons) {
+            return icons.containsKey(key);
+        }
+    }
+
+    /**
+     * Loads a receiver into the cache in the background.
+     * 
+     * @param resolveInfo
+     *            The receiver.
+     * @param onLoaded
+     *            Run on the main thread once it's loaded.
+     */
+    public void load(final ResolveInfo resolveInfo, final Runnable onLoaded) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                getEntry(resolveInfo);
+                mainHandler.post(onLoaded);
+            }
+        });
+    }
+
+    /**
+     * Loads the receivers into the cache in the background, so they're ready
+     * when the selector or settings show them.
+     * 
+     * @param receivers
+     *            The receivers to load.
+     */
+    public void preload(final List<ResolveInfo> receivers) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (ResolveInfo resolveInfo : receivers) {
+                    getEntry(resolveInfo);
+                }
+            }
+        });
+    }
+
+    /**
+     * Forgets everything about a package, in memory and on disk. Called when
+     * it is updated or removed.
+     * 
+     * @param packageName
+     *            The package.
+     */
+    public void invalidate(final String packageName) {
+        final String prefix = packageName + '-';
+        synchronized (labels) {
+            removeKeys(labels, prefix);
+        }
+        synchronized (icons) {
+            removeKeys(icons, prefix);
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                deleteFiles(prefix, null);
+            }
+        });
+    }
+
+    private static void removeKeys(Map<String, ?> map, String prefix) {
+        for (Iterator<String> keys = map.keySet().iterator(); keys.hasNext();) {
+            if (keys.next().startsWith(prefix)) {
+                keys.remove();
+            }
+        }
+    }
+
+    private static String getKey(ResolveInfo resolveInfo) {
+        return resolveInfo.activityInfo.packageName + '-' + resolveInfo.activityInfo.name;
+    }
+
+    /** Gets the cache file of a receiver as its package is now. */
+    private File getFile(ResolveInfo resolveInfo) {
+        return new File(directory, getKey(resolveInfo) + '-'
+                + getUpdateTime(resolveInfo.activityInfo.applicationInfo));
+    }
+
+    /** Gets a receiver's label and icon, loading them if they aren't in memory. */
+    private Entry getEntry(ResolveInfo resolveInfo) {
+        String key = getKey(resolveInfo);
+        String label;
+        synchronized (labels) {
+            label = labels.get(key);
+        }
+        if (label != null) {
+            synchronized (icons) {
+                if (icons.containsKey(key)) {
+                    return new Entry(label, icons.get(key));
+                }
+            }
+        }
+
+        final String prefix = key + '-';
+        final File file = getFile(resolveInfo);
+        Entry entry = read(file, true);
+        if (entry == null) {
+            final Entry loaded = load(resolveInfo);
+            entry = loaded;
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    write(file, loaded);
+                    // Whatever is left from before the package was updated
+                    deleteFiles(prefix, file.getName());
+                }
+            });
+        }
+        synchronized (labels) {
+            labels.put(key, entry.label);
+        }
+        synchronized (icons) {
+            icons.put(key, entry.icon);
+        }
+        return entry;
+    }
+
+    /**
+     * Gets when a package was last installed or updated. Before Gingerbread
+     * there is no last update time, so the APK's modification time is used.
+     */
+    private long getUpdateTime(ApplicationInfo applicationInfo) {
+        if (Build.VERSION.SDK_INT >= Utils.GINGERBREAD_API_LEVEL) {
+            try {
+                return packageManager.getPackageInfo(applicationInfo.packageName, 0).lastUpdateTime;
+            } catch (NameNotFoundException e) {
+                // Being removed, fall through
+            }
+        }
+        return new File(applicationInfo.sourceDir).lastModified();
+    }
+
+    private Entry load(ResolveInfo resolveInfo) {
+        String label = Utils.getAppName(resolveInfo, packageManager);
+        Drawable drawable = resolveInfo.loadIcon(packageManager);
+        Bitmap icon = null;
+        if (drawable instanceof BitmapDrawable) {
+            icon = ((BitmapDrawable) drawable).getBitmap();
+        } else if (drawable != null && drawable.getIntrinsicWidth() > 0 && drawable.getIntrinsicHeight() > 0) {
+            icon = Bitmap.createBitmap(drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight(),
+                    Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(icon);
+            drawable.setBounds(0, 0, drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight());
+            drawable.draw(canvas);
+        }
+        return new Entry(label, icon);
+    }
+
+    /**
+     * Reads a cache file.
+     * 
+     * @param file
+     *            The file.
+     * @param withIcon
+     *            Whether to decode the icon too, or only read the label.
+     * @return The entry, without an icon unless asked for, or null if there is
+     *         no current file.
+     */
+    private Entry read(File file, boolean withIcon) {
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FILE_VERSION) {
+                return null;
+            }
+            String label = in.readUTF();
+            Bitmap icon = withIcon && in.readBoolean() ? BitmapFactory.decodeStream(in) : null;
+            return new Entry(label, icon);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read cached app info " + file, e);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    private void write(File file, Entry entry) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+        // Written to a temporary file first so a reader never sees half an
+        // entry
+        File temporary = new File(directory, file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            out.writeInt(FILE_VERSION);
+            out.writeUTF(entry.label);
+            out.writeBoolean(entry.icon != null);
+            if (entry.icon != null) {
+                entry.icon.compress(Bitmap.CompressFormat.PNG, 100, out);
+            }
+            out.close();
+            out = null;
+            if (!temporary.renameTo(file)) {
+                temporary.delete();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not cache app info " + file, e);
+            temporary.delete();
+        } finally {
+            close(out);
+        }
+    }
+
+    /**
+     * Deletes the cache files whose names start with {@code prefix}, except
+     * {@code keep}.
+     */
+    private void deleteFiles(String prefix, String keep) {
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(prefix) && !name.equals(keep)) {
+                    new File(directory, name).delete();
+                }
+            }
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing to do
+            }
+        }
+    }
+}
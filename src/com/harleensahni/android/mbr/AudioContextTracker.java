@@ -0,0 +1,214 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr;
+
+import static com.harleensahni.android.mbr.Constants.TAG;
+
+import java.util.List;
+
+import android.bluetooth.BluetoothA2dp;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothProfile;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.media.AudioManager;
+import android.os.Build;
+import android.util.Log;
+
+import com.harleensahni.android.mbr.core.ContextRoutingTable;
+
+/**
+ * Keeps track of where audio is going: which bluetooth device is connected,
+ * whether a wired headset is plugged in or the phone is docked. Kept current
+ * by bluetooth, headset plug and dock broadcasts while
+ * {@link MediaButtonMonitorService} has it {@link #register registered}. The
+ * headset plug and dock broadcasts are sticky, so registering also picks up
+ * the current state, and from Honeycomb on the A2DP profile tells which
+ * bluetooth device was already connected. Without the service we can only
+ * ask the {@code AudioManager}, which doesn't tell which bluetooth device it
+ * is; {@link ContextRoutingTable} then goes by the last pick on any bluetooth
+ * device.
+ * 
+ * @author Harleen Sahni
+ */
+public final class AudioContextTracker {
+
+    private static AudioContextTracker instance;
+
+    private final AudioManager audioManager;
+
+    /**
+     * Context of the connected bluetooth audio device, without its address if
+     * it was connected before we registered, or null.
+     */
+    private volatile String bluetoothContext;
+
+    private volatile boolean wiredHeadset;
+
+    private volatile boolean docked;
+
+    /** Whether the broadcasts keep us current. */
+    private volatile boolean registered;
+
+    private final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String action = intent.getAction();
+            if (Intent.ACTION_HEADSET_PLUG.equals(action)) {
+                wiredHeadset = intent.getIntExtra("state", 0) == 1;
+            } else if (Intent.ACTION_DOCK_EVENT.equals(action)) {
+                docked = intent.getIntExtra(Intent.EXTRA_DOCK_STATE,
+                        Intent.EXTRA_DOCK_STATE_UNDOCKED) != Intent.EXTRA_DOCK_STATE_UNDOCKED;
+            } else {
+                BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
+                if (device == null) {
+                    return;
+                }
+                boolean connected;
+                if (BluetoothDevice.ACTION_ACL_CONNECTED.equals(action)) {
+                    connected = true;
+                } else if (BluetoothDevice.ACTION_ACL_DISCONNECTED.equals(action)) {
+                    connected = false;
+                } else {
+                    connected = intent.getIntExtra(BluetoothProfile.EXTRA_STATE,
+                            BluetoothProfile.STATE_DISCONNECTED) == BluetoothProfile.STATE_CONNECTED;
+                }
+                String deviceContext = ContextRoutingTable.bluetooth(device.getAddress());
+                if (connected) {
+                    bluetoothContext = deviceContext;
+                } else if (deviceContext.equals(bluetoothContext)
+                        || ContextRoutingTable.BLUETOOTH.equals(bluetoothContext)) {
+                    bluetoothContext = null;
+                }
+            }
+            Log.d(TAG, "Audio context is now " + getContext());
+        }
+    };
+
+    private AudioContextTracker(Context context) {
+        audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+    }
+
+    /**
+     * Gets the tracker for this process.
+     * 
+     * @param context
+     *            Any context, the application context is used.
+     * @return The tracker.
+     */
+    public static synchronized AudioContextTracker getInstance(Context context) {
+        if (instance == null) {
+            instance = new AudioContextTracker(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Starts listening for the broadcasts that keep us current.
+     * 
+     * @param context
+     *            The context to register with, which must call
+     *            {@link #unregister(Context)} when it goes away.
+     */
+    void register(Context context) {
+        IntentFilter filter = new IntentFilter(Intent.ACTION_HEADSET_PLUG);
+        filter.addAction(Intent.ACTION_DOCK_EVENT);
+        if (Build.VERSION.SDK_INT >= Utils.HONEYCOMB_API_LEVEL) {
+            filter.addAction(BluetoothA2dp.ACTION_CONNECTION_STATE_CHANGED);
+        } else {
+            // No public A2DP broadcast before Honeycomb, any connected device
+            // will have to do
+            filter.addAction(BluetoothDevice.ACTION_ACL_CONNECTED);
+            filter.addAction(BluetoothDevice.ACTION_ACL_DISCONNECTED);
+        }
+        // Devices connected before now don't get a broadcast
+        bluetoothContext = audioManager.isBluetoothA2dpOn() ? ContextRoutingTable.BLUETOOTH : null;
+        context.registerReceiver(receiver, filter);
+        registered = true;
+        if (bluetoothContext != null && Build.VERSION.SDK_INT >= Utils.HONEYCOMB_API_LEVEL) {
+            findConnectedDevice(context);
+        }
+    }
+
+    /**
+     * Asks the A2DP profile which device is connected, so a device connected
+     * before we registered gets its own context too.
+     */
+    private void findConnectedDevice(Context context) {
+        final BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+        if (adapter == null) {
+            return;
+        }
+        adapter.getProfileProxy(context, new BluetoothProfile.ServiceListener() {
+            @Override
+            public void onServiceConnected(int profile, BluetoothProfile proxy) {
+                List<BluetoothDevice> devices = proxy.getConnectedDevices();
+                // Unless a broadcast has told us better meanwhile
+                if (!devices.isEmpty() && ContextRoutingTable.BLUETOOTH.equals(bluetoothContext)) {
+                    bluetoothContext = ContextRoutingTable.bluetooth(devices.get(0).getAddress());
+                    Log.d(TAG, "Audio context is now " + getContext());
+                }
+                adapter.closeProfileProxy(profile, proxy);
+            }
+
+            @Override
+            public void onServiceDisconnected(int profile) {
+                // Nothing to do
+            }
+        }, BluetoothProfile.A2DP);
+    }
+
+    /**
+     * Stops listening for broadcasts.
+     * 
+     * @param context
+     *            The context passed to {@link #register(Context)}.
+     */
+    void unregister(Context context) {
+        registered = false;
+        context.unregisterReceiver(receiver);
+    }
+
+    /**
+     * Gets the current audio context, as used by {@link ContextRoutingTable}.
+     * A bluetooth device wins over a wired headset, which wins over a dock.
+     * 
+     * @return The context.
+     */
+    public String getContext() {
+        if (registered) {
+            String bluetooth = bluetoothContext;
+            if (bluetooth != null) {
+                return bluetooth;
+            } else if (wiredHeadset) {
+                return ContextRoutingTable.WIRED;
+            } else if (docked) {
+                return ContextRoutingTable.DOCK;
+            }
+            return ContextRoutingTable.SPEAKER;
+        }
+
+        if (audioManager.isBluetoothA2dpOn()) {
+            return ContextRoutingTable.BLUETOOTH;
+        } else if (audioManager.isWiredHeadsetOn()) {
+            return ContextRoutingTable.WIRED;
+        }
+        return ContextRoutingTable.SPEAKER;
+    }
+}
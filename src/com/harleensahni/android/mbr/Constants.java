@@ -28,7 +28,6 @@ public class Constants {
 
     public static final String TAG = "MediaButtonRouter";
     public static final String INTENT_ACTION_VIEW_MEDIA_BUTTON_LIST = "com.harleensahni.android.VIEW_MEDIA_LIST";
-    public static final String INTENT_ACTION_VIEW_MEDIA_LIST_KEYPRESS = "com.harleensahni.android.VIEW_MEDIA_LIST_KEYPRESS";
     public static final String ENABLED_PREF_KEY = "enable_receiver";
     public static final String INTRO_SHOWN_KEY = "intro_shown";
     public static final String TIMEOUT_KEY = "timeout";
@@ -37,4 +36,23 @@ public class Constants {
     public static final String HIDDEN_APPS_KEY = "hidden_apps";
     public static final String LAST_MEDIA_BUTTON_RECEIVER = "last_media_button_receiver";
     public static final String DISABLE_TTS = "disable_tts";
+    public static final String HEADSET_BUTTON_KEY = "headset_button";
+    public static final String SEPARATE_PLAY_PAUSE_KEY = "separate_play_pause";
+    public static final String HEADSET_GESTURES_KEY = "headset_gestures";
+    public static final String GESTURE_TIMEOUT_KEY = "gesture_timeout";
+    public static final String RECEIVER_USAGE_KEY = "receiver_usage";
+    public static final String AUTO_ROUTE_KEY = "auto_route";
+    public static final String SELECTION_MODEL_KEY = "selection_model";
+    public static final String CONTEXT_ROUTING_KEY = "context_routing";
+    public static final String CONTEXT_ROUTES_KEY = "context_routes";
+    public static final String REGISTRATION_BUDGET_KEY = "registration_budget";
+    public static final String FAN_OUT_KEYS_KEY = "fan_out_keys";
+    public static final String FAN_OUT_APPS_KEY = "fan_out_apps";
+    public static final String STREAMING_KEY = "streaming_passthrough";
+
+    /**
+     * Key used to store and retrieve last selected receiver that actually was
+     * forwarded a media button by the user.
+     */
+    public static final String SELECTION_ACTED_KEY = "btButtonSelectionActed";
 }
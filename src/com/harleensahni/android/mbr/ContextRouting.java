@@ -0,0 +1,89 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr;
+
+import android.content.Context;
+import android.content.pm.ResolveInfo;
+
+import com.harleensahni.android.mbr.core.ContextRoutingTable;
+
+/**
+ * The {@link ContextRoutingTable} of this device, keyed by the
+ * {@link AudioContextTracker}'s context and persisted through the
+ * {@link StateStore} under {@link Constants#CONTEXT_ROUTES_KEY}.
+ * 
+ * @author Harleen Sahni
+ */
+public final class ContextRouting {
+
+    private static ContextRouting instance;
+
+    private final StateStore stateStore;
+
+    private final MediaReceiverRegistry receiverRegistry;
+
+    private final AudioContextTracker tracker;
+
+    /** Guarded by this. */
+    private final ContextRoutingTable table;
+
+    private ContextRouting(Context context) {
+        stateStore = StateStore.getInstance(context);
+        receiverRegistry = MediaReceiverRegistry.getInstance(context);
+        tracker = AudioContextTracker.getInstance(context);
+        table = ContextRoutingTable.decode(stateStore.getString(Constants.CONTEXT_ROUTES_KEY, null));
+    }
+
+    /**
+     * Gets the context routing for this process.
+     * 
+     * @param context
+     *            Any context, the application context is used.
+     * @return The context routing.
+     */
+    public static synchronized ContextRouting getInstance(Context context) {
+        if (instance == null) {
+            instance = new ContextRouting(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Records that the user picked a receiver in the current audio context.
+     * 
+     * @param resolveInfo
+     *            The receiver.
+     */
+    public void recordSelection(ResolveInfo resolveInfo) {
+        String audioContext = tracker.getContext();
+        String id = receiverRegistry.getReceiverNames().getId(resolveInfo);
+        synchronized (this) {
+            table.put(audioContext, id);
+            stateStore.putString(Constants.CONTEXT_ROUTES_KEY, table.encode());
+        }
+    }
+
+    /**
+     * @return Id of the receiver the user picked last in the current audio
+     *         context, or null.
+     */
+    public String getReceiverId() {
+        String audioContext = tracker.getContext();
+        synchronized (this) {
+            return table.getReceiverId(audioContext);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+/**
+ * A single resettable deadline that runs a callback on a {@link Handler}'s
+ * thread, without a thread of its own. Pushing the deadline later, e.g. on
+ * every user interaction, only records the new time: the callback that is
+ * already posted notices it fired early and reposts itself once for the rest.
+ * Only moving the deadline earlier touches the handler's queue, so nothing is
+ * allocated or churned per reschedule.
+ * 
+ * @author Harleen Sahni
+ */
+public final class DeadlineTimer {
+
+    private static final long NOT_SCHEDULED = -1;
+
+    private final Handler handler;
+
+    private final Runnable callback;
+
+    private final Runnable fire = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (DeadlineTimer.this) {
+                postedAt = NOT_SCHEDULED;
+                if (deadline == NOT_SCHEDULED) {
+                    return;
+                }
+                if (SystemClock.uptimeMillis() < deadline) {
+                    // Extended since we were posted
+                    post(deadline);
+                    return;
+                }
+                deadline = NOT_SCHEDULED;
+            }
+            callback.run();
+        }
+    };
+
+    /** When the callback should run, or {@link #NOT_SCHEDULED}. */
+    private long deadline = NOT_SCHEDULED;
+
+    /** The uptime {@link #fire} is posted for, or {@link #NOT_SCHEDULED}. */
+    private long postedAt = NOT_SCHEDULED;
+
+    /**
+     * @param handler
+     *            The handler whose thread runs {@code callback}.
+     * @param callback
+     *            What to run when the deadline passes.
+     */
+    public DeadlineTimer(Handler handler, Runnable callback) {
+        this.handler = handler;
+        this.callback = callback;
+    }
+
+    /**
+     * Sets the deadline, replacing any earlier one.
+     * 
+     * @param uptimeMillis
+     *            When to run the callback, in
+     *            {@link SystemClock#uptimeMillis()} time.
+     */
+    public synchronized void schedule(long uptimeMillis) {
+        deadline = uptimeMillis;
+        if (postedAt == NOT_SCHEDULED) {
+            post(uptimeMillis);
+        } else if (uptimeMillis < postedAt) {
+            handler.removeCallbacks(fire);
+            post(uptimeMillis);
+        }
+    }
+
+    /**
+     * Cancels the deadline, if any.
+     */
+    public synchronized void cancel() {
+        deadline = NOT_SCHEDULED;
+        if (postedAt != NOT_SCHEDULED) {
+            handler.removeCallbacks(fire);
+            postedAt = NOT_SCHEDULED;
+        }
+    }
+
+    private void post(long uptimeMillis) {
+        postedAt = uptimeMillis;
+        handler.postAtTime(fire, uptimeMillis);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr;
+
+import static com.harleensahni.android.mbr.Constants.TAG;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.content.pm.ResolveInfo;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.harleensahni.android.mbr.core.FanOut;
+import com.harleensahni.android.mbr.core.ReceiverDirectory;
+
+/**
+ * Sends presses of the keys the user picked in
+ * {@link Constants#FAN_OUT_KEYS_KEY} to all visible receivers, or to the ones
+ * in {@link Constants#FAN_OUT_APPS_KEY}. The presses are handed to the system
+ * one after the other without waiting for any receiver to get them, so they're
+ * delivered to all receivers at about the same time.
+ * <p>
+ * Regular broadcasts don't report back, so whether each receiver got the press
+ * isn't known. Getting results would take ordered broadcasts, which the
+ * system delivers one receiver after the other. The report of the last
+ * fanned out press, which receivers it was handed over for and how long that
+ * took, is kept for {@link MediaButtonConfigure}.
+ * 
+ * @author Harleen Sahni
+ */
+public final class FanOutDispatcher implements OnSharedPreferenceChangeListener {
+
+    private static FanOutDispatcher instance;
+
+    private final Context context;
+
+    private final SharedPreferences preferences;
+
+    private final StateStore stateStore;
+
+    private volatile FanOut fanOut;
+
+    /** Report of the last fanned out press, empty if there was none. */
+    private volatile String lastReport = "";
+
+    private FanOutDispatcher(Context context) {
+        this.context = context;
+        // Preferences only keep weak references to their listeners, we're
+        // kept alive by instance.
+        preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        preferences.registerOnSharedPreferenceChangeListener(this);
+        stateStore = StateStore.getInstance(context);
+        stateStore.registerListener(this);
+        RoutingSnapshotStore settings = RoutingSnapshotStore.getInstance(context);
+        fanOut = new FanOut(settings.getString(Constants.FAN_OUT_KEYS_KEY, ""), settings.getString(
+                Constants.FAN_OUT_APPS_KEY, ""));
+    }
+
+    /**
+     * Gets the dispatcher for this process.
+     * 
+     * @param context
+     *            Any context, the application context is used.
+     * @return The dispatcher.
+     */
+    public static synchronized FanOutDispatcher getInstance(Context context) {
+        if (instance == null) {
+            instance = new FanOutDispatcher(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Checks whether presses of a key fan out.
+     * 
+     * @param keyCode
+     *            The remapped key code.
+     * @return Whether they do.
+     */
+    public boolean isFanOut(int keyCode) {
+        return fanOut.isFanOut(keyCode);
+    }
+
+    /**
+     * Sends a down and an up of {@code keyCode} to each fan out target.
+     * 
+     * @param directory
+     *            The media button receivers.
+     * @param keyCode
+     *            The key code to send.
+     */
+    public void send(ReceiverDirectory<ResolveInfo> directory, int keyCode) {
+        List<ResolveInfo> targets = fanOut.getTargets(directory.getSelectableReceivers(), directory.getNames());
+        List<String> handedOver = new ArrayList<String>(targets.size());
+        long startNanos = System.nanoTime();
+        for (ResolveInfo target : targets) {
+            try {
+                MediaButtonIntents.send(context, new ComponentName(target.activityInfo.packageName,
+                        target.activityInfo.name), keyCode);
+                handedOver.add(directory.getNames().getId(target));
+            } catch (RuntimeException e) {
+                // One receiver failing shouldn't keep the others from it
+                Log.w(TAG, "Couldn't fan out " + keyCode + " to " + target.activityInfo.name, e);
+            }
+        }
+        lastReport = FanOut.report(keyCode, handedOver, (System.nanoTime() - startNanos) / 1000);
+        Log.d(TAG, lastReport);
+    }
+
+    /**
+     * @return The report of the last fanned out press, empty if there was
+     *         none.
+     */
+    public String report() {
+        return lastReport;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        if (Constants.FAN_OUT_KEYS_KEY.equals(key) || Constants.FAN_OUT_APPS_KEY.equals(key)) {
+            fanOut = new FanOut(preferences.getString(Constants.FAN_OUT_KEYS_KEY, ""), stateStore.getString(
+                    Constants.FAN_OUT_APPS_KEY, ""));
+        }
+    }
+}
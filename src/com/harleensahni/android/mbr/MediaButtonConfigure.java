@@ -19,12 +19,17 @@ import static com.harleensahni.android.mbr.Constants.TAG;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import android.app.AlertDialog;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.content.pm.ResolveInfo;
+import android.os.Build;
 import android.os.Bundle;
 import android.preference.CheckBoxPreference;
 import android.preference.Preference;
@@ -47,6 +52,10 @@ import com.harleensahni.android.mbr.receivers.MediaButtonReceiver;
 public class MediaButtonConfigure extends PreferenceActivity implements OnSharedPreferenceChangeListener {
 
     private static final int TEXT_TO_SPEECH_CHECK_CODE = 123;
+
+    /** Keeps the keys of the fan out app check boxes apart from the others. */
+    private static final String FAN_OUT_KEY_PREFIX = "fan_out:";
+
     private SharedPreferences preferences;
 
     /**
@@ -56,9 +65,7 @@ public class MediaButtonConfigure extends PreferenceActivity implements OnShared
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         
-        String hiddenReceiverIdsString = PreferenceManager.getDefaultSharedPreferences(this).getString(
-                Constants.HIDDEN_APPS_KEY, "");
-        List<String> hiddenIds = Arrays.asList(hiddenReceiverIdsString.split(","));
+        Set<String> hiddenIds = MediaReceiverRegistry.getInstance(this).getHiddenReceiverIds();
         final List<String> missingHiddenIds = new ArrayList<String>(hiddenIds);
         
         addPreferencesFromResource(R.xml.preferences);
@@ -99,21 +106,21 @@ public class MediaButtonConfigure extends PreferenceActivity implements OnShared
                     hiddenApps.append(missingHiddenId);
                 }
 
-                PreferenceManager.getDefaultSharedPreferences(MediaButtonConfigure.this).edit()
-                        .putString(Constants.HIDDEN_APPS_KEY, hiddenApps.toString()).commit();
+                StateStore.getInstance(MediaButtonConfigure.this).putString(Constants.HIDDEN_APPS_KEY,
+                        hiddenApps.toString());
 
                 return true;
             }
         };
 
-        List<ResolveInfo> mediaReceivers = Utils.getMediaReceivers(getPackageManager(), false, null);
+        List<ResolveInfo> mediaReceivers = Utils.getMediaReceivers(this, false);
         for (ResolveInfo mediaReceiver : mediaReceivers) {
             if (MediaButtonReceiver.class.getName().equals(mediaReceiver.activityInfo.name)) {
                 continue;
             }
             String receiverId = Utils.getMediaReceiverUniqueID(mediaReceiver, getPackageManager());
             CheckBoxPreference showReceiverPreference = new CheckBoxPreference(this);
-            showReceiverPreference.setTitle(Utils.getAppName(mediaReceiver, getPackageManager()));
+            setAppTitle(showReceiverPreference, mediaReceiver);
             showReceiverPreference.setPersistent(false);
             showReceiverPreference.setKey(receiverId);
             showReceiverPreference.setChecked(!hiddenIds.contains(showReceiverPreference.getKey()));
@@ -123,6 +130,38 @@ public class MediaButtonConfigure extends PreferenceActivity implements OnShared
             
             missingHiddenIds.remove(receiverId);
         }
+        addFanOutApps(mediaReceivers);
+
+        findPreference("press_latency").setOnPreferenceClickListener(new OnPreferenceClickListener() {
+
+            public boolean onPreferenceClick(Preference preference) {
+                showPressLatency();
+                return true;
+            }
+        });
+
+        findPreference("registration_fights").setOnPreferenceClickListener(new OnPreferenceClickListener() {
+
+            public boolean onPreferenceClick(Preference preference) {
+                showRegistrationFights();
+                return true;
+            }
+        });
+
+        // Playback can only be followed through media sessions, which need
+        // notification access, from Lollipop on
+        Preference playbackAccessPreference = findPreference("playback_access");
+        if (Build.VERSION.SDK_INT >= Utils.LOLLIPOP_API_LEVEL) {
+            playbackAccessPreference.setOnPreferenceClickListener(new OnPreferenceClickListener() {
+
+                public boolean onPreferenceClick(Preference preference) {
+                    startActivity(new Intent("android.settings.ACTION_NOTIFICATION_LISTENER_SETTINGS"));
+                    return true;
+                }
+            });
+        } else {
+            getPreferenceScreen().removePreference(playbackAccessPreference);
+        }
 
         Eula.show(this);
         Utils.showIntroifNeccessary(this);
@@ -169,6 +208,10 @@ public class MediaButtonConfigure extends PreferenceActivity implements OnShared
         if (Utils.isHandlingThroughSoleReceiver()) {
             preferences.unregisterOnSharedPreferenceChangeListener(this);
         }
+        // The hidden and fan out apps are settings, which must not be lost if
+        // the process is killed once we're gone. Committed in the background,
+        // the UI thread doesn't wait on the disk.
+        StateStore.getInstance(this).flushSoon();
     }
 
     @Override
@@ -185,6 +228,115 @@ public class MediaButtonConfigure extends PreferenceActivity implements OnShared
 
     }
 
+    /**
+     * Adds a category with a check box per app, for choosing which apps get
+     * fanned out presses. None checked means all visible apps.
+     * 
+     * @param mediaReceivers
+     *            The receivers, including our own.
+     */
+    private void addFanOutApps(List<ResolveInfo> mediaReceivers) {
+        PreferenceCategory fanOutAppsCategory = new PreferenceCategory(this);
+        fanOutAppsCategory.setTitle(R.string.fan_out_apps_header);
+        getPreferenceScreen().addPreference(fanOutAppsCategory);
+
+        Set<String> chosenIds = new HashSet<String>(Arrays.asList(StateStore.getInstance(this)
+                .getString(Constants.FAN_OUT_APPS_KEY, "").split(",")));
+        final List<CheckBoxPreference> fanOutCheckBoxPreferences = new ArrayList<CheckBoxPreference>();
+        OnPreferenceChangeListener fanOutChangeListener = new OnPreferenceChangeListener() {
+
+            @Override
+            public boolean onPreferenceChange(Preference preference, Object newValue) {
+                StringBuilder fanOutApps = new StringBuilder();
+                for (CheckBoxPreference checkBoxPreference : fanOutCheckBoxPreferences) {
+                    boolean checked = preference == checkBoxPreference ? Boolean.TRUE.equals(newValue)
+                            : checkBoxPreference.isChecked();
+                    if (checked) {
+                        if (fanOutApps.length() > 0) {
+                            fanOutApps.append(',');
+                        }
+                        fanOutApps.append(checkBoxPreference.getKey().substring(FAN_OUT_KEY_PREFIX.length()));
+                    }
+                }
+                StateStore.getInstance(MediaButtonConfigure.this).putString(Constants.FAN_OUT_APPS_KEY,
+                        fanOutApps.toString());
+                return true;
+            }
+        };
+
+        for (ResolveInfo mediaReceiver : mediaReceivers) {
+            if (MediaButtonReceiver.class.getName().equals(mediaReceiver.activityInfo.name)) {
+                continue;
+            }
+            String receiverId = Utils.getMediaReceiverUniqueID(mediaReceiver, getPackageManager());
+            CheckBoxPreference fanOutPreference = new CheckBoxPreference(this);
+            setAppTitle(fanOutPreference, mediaReceiver);
+            fanOutPreference.setPersistent(false);
+            fanOutPreference.setKey(FAN_OUT_KEY_PREFIX + receiverId);
+            fanOutPreference.setChecked(chosenIds.contains(receiverId));
+            fanOutPreference.setOnPreferenceChangeListener(fanOutChangeListener);
+            fanOutAppsCategory.addPreference(fanOutPreference);
+            fanOutCheckBoxPreferences.add(fanOutPreference);
+        }
+    }
+
+    /**
+     * Titles a preference with the name of a receiver's app, showing the
+     * package name until the {@link AppInfoCache} has loaded it.
+     */
+    private void setAppTitle(final Preference preference, final ResolveInfo mediaReceiver) {
+        final AppInfoCache appInfoCache = AppInfoCache.getInstance(this);
+        if (appInfoCache.isLoaded(mediaReceiver)) {
+            preference.setTitle(appInfoCache.getLabel(mediaReceiver));
+            return;
+        }
+        preference.setTitle(mediaReceiver.activityInfo.packageName);
+        appInfoCache.load(mediaReceiver, new Runnable() {
+            @Override
+            public void run() {
+                preference.setTitle(appInfoCache.getLabel(mediaReceiver));
+            }
+        });
+    }
+
+    /**
+     * Shows the {@link PressLatency} report, with buttons to export it as text
+     * or reset it. The last fanned out press is reported with it.
+     */
+    private void showPressLatency() {
+        final String report = PressLatency.report() + FanOutDispatcher.getInstance(this).report();
+        new AlertDialog.Builder(this).setTitle(R.string.press_latency_title)
+                .setMessage(report.length() > 0 ? report : getString(R.string.press_latency_empty))
+                .setPositiveButton(R.string.press_latency_export, new DialogInterface.OnClickListener() {
+                    public void onClick(DialogInterface dialog, int which) {
+                        Intent exportIntent = new Intent(Intent.ACTION_SEND);
+                        exportIntent.setType("text/plain");
+                        exportIntent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.press_latency_title));
+                        exportIntent.putExtra(Intent.EXTRA_TEXT, report);
+                        startActivity(Intent.createChooser(exportIntent, getString(R.string.press_latency_export)));
+                    }
+                }).setNeutralButton(R.string.press_latency_reset, new DialogInterface.OnClickListener() {
+                    public void onClick(DialogInterface dialog, int which) {
+                        PressLatency.reset();
+                    }
+                }).setNegativeButton(R.string.close_button, null).show();
+    }
+
+    /**
+     * Shows the {@link RegistrationFights} counters, with a button to reset
+     * them.
+     */
+    private void showRegistrationFights() {
+        String report = RegistrationFights.report();
+        new AlertDialog.Builder(this).setTitle(R.string.registration_fights_title)
+                .setMessage(report.length() > 0 ? report : getString(R.string.registration_fights_empty))
+                .setNeutralButton(R.string.registration_fights_reset, new DialogInterface.OnClickListener() {
+                    public void onClick(DialogInterface dialog, int which) {
+                        RegistrationFights.reset();
+                    }
+                }).setNegativeButton(R.string.close_button, null).show();
+    }
+
     /**
      * {@inheritDoc}
      */
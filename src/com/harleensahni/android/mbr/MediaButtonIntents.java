@@ -0,0 +1,175 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.view.KeyEvent;
+
+/**
+ * Sends media button presses to receivers. Keeps a media button intent per
+ * receiver, built once and reused for every press, so that a quick run of
+ * presses to the same player, like skipping several tracks, costs little more
+ * than the two key events and the broadcasts themselves. Receivers named by a
+ * flattened component name, like {@link Constants#LAST_MEDIA_BUTTON_RECEIVER},
+ * are only parsed the first time.
+ * <p>
+ * Streamed presses are sent event by event, as they came in.
+ * <p>
+ * Presses are sent as regular broadcasts, since nobody needs their result. A
+ * receiver that aborts them gets a warning logged, but otherwise works the
+ * same.
+ * 
+ * @author Harleen Sahni
+ */
+final class MediaButtonIntents {
+
+    /** How many receivers to keep intents for. More than anyone switches between. */
+    private static final int MAX_TEMPLATES = 16;
+
+    /** Intents by receiver, guarded by the class. */
+    private static final Map<ComponentName, Intent> templates = new LinkedHashMap<ComponentName, Intent>(
+            MAX_TEMPLATES, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ComponentName, Intent> eldest) {
+            return size() > MAX_TEMPLATES;
+        }
+    };
+
+    /** Intents by flattened receiver name, guarded by the class. */
+    private static final Map<String, Intent> flattenedTemplates = new LinkedHashMap<String, Intent>(MAX_TEMPLATES,
+            0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Intent> eldest) {
+            return size() > MAX_TEMPLATES;
+        }
+    };
+
+    /**
+     * Prevent instantiation.
+     */
+    private MediaButtonIntents() {
+        // Intentionally blank
+    }
+
+    /**
+     * Sends a down and an up of {@code keyCode} to a receiver.
+     * 
+     * @param context
+     *            The context to send from.
+     * @param receiver
+     *            The receiver.
+     * @param keyCode
+     *            The key code to send.
+     */
+    static void send(Context context, ComponentName receiver, int keyCode) {
+        send(context, getTemplate(receiver), keyCode);
+    }
+
+    /**
+     * Sends a down and an up of {@code keyCode} to a receiver.
+     * 
+     * @param context
+     *            The context to send from.
+     * @param flattenedReceiver
+     *            The receiver's flattened component name.
+     * @param keyCode
+     *            The key code to send.
+     */
+    static void send(Context context, String flattenedReceiver, int keyCode) {
+        send(context, getTemplate(flattenedReceiver), keyCode);
+    }
+
+    /**
+     * Sends a key event to a receiver as it is.
+     * 
+     * @param context
+     *            The context to send from.
+     * @param receiver
+     *            The receiver.
+     * @param keyEvent
+     *            The key event to send.
+     */
+    static void send(Context context, ComponentName receiver, KeyEvent keyEvent) {
+        send(context, getTemplate(receiver), keyEvent);
+    }
+
+    /**
+     * Sends a key event to a receiver as it is.
+     * 
+     * @param context
+     *            The context to send from.
+     * @param flattenedReceiver
+     *            The receiver's flattened component name.
+     * @param keyEvent
+     *            The key event to send.
+     */
+    static void send(Context context, String flattenedReceiver, KeyEvent keyEvent) {
+        send(context, getTemplate(flattenedReceiver), keyEvent);
+    }
+
+    private static synchronized Intent getTemplate(ComponentName receiver) {
+        Intent template = templates.get(receiver);
+        if (template == null) {
+            template = createTemplate(receiver);
+            templates.put(receiver, template);
+        }
+        return template;
+    }
+
+    private static synchronized Intent getTemplate(String flattenedReceiver) {
+        Intent template = flattenedTemplates.get(flattenedReceiver);
+        if (template == null) {
+            template = createTemplate(ComponentName.unflattenFromString(flattenedReceiver));
+            flattenedTemplates.put(flattenedReceiver, template);
+        }
+        return template;
+    }
+
+    private static Intent createTemplate(ComponentName receiver) {
+        Intent template = new Intent(Intent.ACTION_MEDIA_BUTTON);
+        template.setComponent(receiver);
+        return template;
+    }
+
+    private static void send(Context context, Intent template, int keyCode) {
+        long now = SystemClock.uptimeMillis();
+        // The intent is copied when it's sent, so it can be changed and sent
+        // again right after, as long as no one else does at the same time
+        synchronized (template) {
+            template.putExtra(Intent.EXTRA_KEY_EVENT, new KeyEvent(now, now, KeyEvent.ACTION_DOWN, keyCode, 0));
+            context.sendBroadcast(template);
+            template.putExtra(Intent.EXTRA_KEY_EVENT, new KeyEvent(now, now, KeyEvent.ACTION_UP, keyCode, 0));
+            context.sendBroadcast(template);
+        }
+    }
+
+    private static void send(Context context, Intent template, KeyEvent keyEvent) {
+        synchronized (template) {
+            template.putExtra(Intent.EXTRA_KEY_EVENT, keyEvent);
+            context.sendBroadcast(template);
+        }
+    }
+}
@@ -16,15 +16,17 @@
 package com.harleensahni.android.mbr;
 
 import android.app.Service;
+import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
+import android.content.IntentFilter;
 import android.database.ContentObserver;
 import android.media.AudioManager;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.provider.Settings;
 import android.util.Log;
@@ -35,6 +37,14 @@ import com.harleensahni.android.mbr.receivers.MediaButtonReceiver;
  * Monitors when the media button receiver registered with the audio manager changes, and sets 
  * it back to media button router's receiver. Allows media button router to correctly intercept
  * all media button presses.
+ * <p>
+ * Also owns the {@link MediaReceiverRegistry}, keeping it and the
+ * {@link AppInfoCache} fresh while packages are installed, updated and removed,
+ * keeps the {@link Announcer} warm for the selector and the
+ * {@link AudioContextTracker} and {@link PlaybackTracker} current.
+ * <p>
+ * An app that keeps taking the receiver back is not fought right away, see
+ * {@link RegistrationFights}.
  * 
  * @author Peter Haight
  */
@@ -43,6 +53,36 @@ import com.harleensahni.android.mbr.receivers.MediaButtonReceiver;
     public SettingsObserver mSettingsObserver;
     public ComponentName mComponentName;
     public AudioManager mAudioManager;
+    private MediaReceiverRegistry mReceiverRegistry;
+    private AppInfoCache mAppInfoCache;
+    /** Null if text to speech is disabled. */
+    private Announcer mAnnouncer;
+    private final Handler mHandler = new Handler();
+
+    /** Takes the receiver back once the backoff after a takeover is over. */
+    private final Runnable mRegisterRunnable = new Runnable() {
+        public void run() {
+            registerMediaButtonReceiver();
+        }
+    };
+
+    /**
+     * Refreshes the receiver registry when packages change, since that may add
+     * or remove media button receivers, and drops the package's cached labels
+     * and icons.
+     */
+    private final BroadcastReceiver mPackageChangeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Log.d(TAG, "Package change " + intent.getAction() + ", refreshing media receiver registry");
+            mAppInfoCache.invalidate(intent.getData().getSchemeSpecificPart());
+            mReceiverRegistry.refresh();
+            mAppInfoCache.preload(mReceiverRegistry.getReceivers());
+            if (mAnnouncer != null) {
+                mAnnouncer.prepareReceivers(mReceiverRegistry.getReceivers());
+            }
+        }
+    };
 
     private class SettingsObserver extends ContentObserver {
         ContentResolver mContentResolver;
@@ -63,15 +103,17 @@ import com.harleensahni.android.mbr.receivers.MediaButtonReceiver;
             Log.d("SettingsObserver", "MEDIA_BUTTON_RECEIVER changed to " + receiverName);
             Log.d("SettingsObserver", "'" + receiverName + "' == '" + mMonitorService.mComponentName.flattenToString()
                     + "'");
-            if (!selfChange
+            if (!selfChange && receiverName != null
                     && !receiverName.equals(mMonitorService.mComponentName.flattenToString())
                     && !receiverName
                             .equals("com.harleensahni.android.mbr/com.harleensahni.android.mbr.ReceiverSelector$1")) {
-                SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(mMonitorService
-                        .getApplicationContext());
-                preferences.edit().putString(Constants.LAST_MEDIA_BUTTON_RECEIVER, receiverName).commit();
-                Log.d("SettingsObserver", "Set LAST_MEDIA_BUTTON_RECEIVER to" + receiverName);
-                mMonitorService.registerMediaButtonReceiver();
+                StateStore stateStore = StateStore.getInstance(mMonitorService);
+                if (!receiverName.equals(stateStore.getString(Constants.LAST_MEDIA_BUTTON_RECEIVER, null))) {
+                    stateStore.putString(Constants.LAST_MEDIA_BUTTON_RECEIVER, receiverName);
+                    Log.d("SettingsObserver", "Set LAST_MEDIA_BUTTON_RECEIVER to" + receiverName);
+                }
+                PlaybackTracker.getInstance(mMonitorService).onMediaButtonReceiverChanged();
+                mMonitorService.scheduleRegistration(receiverName);
             }
         }
     }
@@ -86,6 +128,26 @@ import com.harleensahni.android.mbr.receivers.MediaButtonReceiver;
         mComponentName = new ComponentName(getPackageName(), MediaButtonReceiver.class.getName());
         mSettingsObserver = new SettingsObserver(this);
         mAudioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
+
+        mReceiverRegistry = MediaReceiverRegistry.getInstance(this);
+        mAppInfoCache = AppInfoCache.getInstance(this);
+        mAppInfoCache.preload(mReceiverRegistry.getReceivers());
+
+        if (!PreferenceManager.getDefaultSharedPreferences(this).getBoolean(Constants.DISABLE_TTS, false)) {
+            mAnnouncer = Announcer.getInstance(this);
+            mAnnouncer.acquire();
+            mAnnouncer.prepareReceivers(mReceiverRegistry.getReceivers());
+        }
+
+        IntentFilter packageFilter = new IntentFilter(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addDataScheme("package");
+        registerReceiver(mPackageChangeReceiver, packageFilter);
+
+        AudioContextTracker.getInstance(this).register(this);
+        PlaybackTracker.getInstance(this).register();
     }
 
     public int onStartCommand(Intent intent, int flags, int startId) {
@@ -96,11 +158,47 @@ import com.harleensahni.android.mbr.receivers.MediaButtonReceiver;
 
     public void onDestroy() {
         Log.d(TAG, "onDestroy() called. Unregistering media button receiver.");
+        mHandler.removeCallbacks(mRegisterRunnable);
         mAudioManager.unregisterMediaButtonEventReceiver(mComponentName);
+        unregisterReceiver(mPackageChangeReceiver);
+        AudioContextTracker.getInstance(this).unregister(this);
+        PlaybackTracker.getInstance(this).unregister();
+        if (mAnnouncer != null) {
+            mAnnouncer.release();
+        }
+        StateStore.getInstance(this).flush();
+        RoutingSnapshotStore.getInstance(this).flush();
     }
 
     public void registerMediaButtonReceiver() {
         Log.d(TAG, "registerMediaButtonReceiver()");
+        mHandler.removeCallbacks(mRegisterRunnable);
         mAudioManager.registerMediaButtonEventReceiver(mComponentName);
+        RegistrationFights.onRegistered();
+    }
+
+    /**
+     * Takes the media button receiver back from another app, right away or
+     * once we've backed off from fighting it and are within the budget.
+     * 
+     * @param competitor
+     *            The flattened component name the app registered.
+     */
+    private void scheduleRegistration(String competitor) {
+        int budget = RegistrationFights.DEFAULT_BUDGET;
+        try {
+            budget = Integer.parseInt(PreferenceManager.getDefaultSharedPreferences(this).getString(
+                    Constants.REGISTRATION_BUDGET_KEY, String.valueOf(budget)));
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Bad registration budget, using the default", e);
+        }
+        long at = RegistrationFights.onTakeover(competitor, budget);
+        mHandler.removeCallbacks(mRegisterRunnable);
+        if (at <= SystemClock.uptimeMillis()) {
+            registerMediaButtonReceiver();
+        } else {
+            Log.d(TAG, "Backing off from " + competitor + " for " + (at - SystemClock.uptimeMillis()) + "ms");
+            mHandler.postAtTime(mRegisterRunnable, at);
+        }
     }
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr;
+
+import static com.harleensahni.android.mbr.Constants.TAG;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.harleensahni.android.mbr.core.KeyTable;
+import com.harleensahni.android.mbr.core.MediaKeys;
+
+/**
+ * Holds the {@link KeyTable} built from the user's key preferences, and the
+ * headset gesture settings. Everything is only parsed when one of those
+ * preferences changes, so the receiver, the selector and forwarding all
+ * classify a press with a single array read. Changes are heard of both from
+ * the preferences screen and through the {@link StateStore}.
+ * 
+ * @author Harleen Sahni
+ */
+public final class MediaKeySettings implements OnSharedPreferenceChangeListener {
+
+    private static MediaKeySettings instance;
+
+    /** Used when the gesture timeout preference isn't a number. */
+    private static final long DEFAULT_GESTURE_TIMEOUT_MILLIS = 400;
+
+    private final SharedPreferences preferences;
+
+    private final StateStore stateStore;
+
+    private volatile KeyTable keyTable;
+
+    private volatile boolean headsetGestures;
+
+    private volatile long gestureTimeoutMillis;
+
+    private MediaKeySettings(Context context) {
+        // Preferences only keep weak references to their listeners, we're
+        // kept alive by instance.
+        preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        preferences.registerOnSharedPreferenceChangeListener(this);
+        stateStore = StateStore.getInstance(context);
+        stateStore.registerListener(this);
+        // Start from the snapshot, which doesn't wait for the preferences to
+        // load
+        RoutingSnapshotStore settings = RoutingSnapshotStore.getInstance(context);
+        keyTable = createKeyTable(settings.getBoolean(Constants.SEPARATE_PLAY_PAUSE_KEY, false),
+                settings.getString(Constants.HEADSET_BUTTON_KEY, String.valueOf(MediaKeys.KEYCODE_HEADSETHOOK)));
+        headsetGestures = settings.getBoolean(Constants.HEADSET_GESTURES_KEY, false);
+        gestureTimeoutMillis = parseGestureTimeout(settings.getString(Constants.GESTURE_TIMEOUT_KEY,
+                String.valueOf(DEFAULT_GESTURE_TIMEOUT_MILLIS)));
+    }
+
+    /**
+     * Gets the key settings for this process.
+     * 
+     * @param context
+     *            Any context, the application context is used.
+     * @return The key settings.
+     */
+    public static synchronized MediaKeySettings getInstance(Context context) {
+        if (instance == null) {
+            instance = new MediaKeySettings(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the key table with the user's remaps applied.
+     * 
+     * @return The key table.
+     */
+    public KeyTable getKeyTable() {
+        return keyTable;
+    }
+
+    /**
+     * Whether clicks and holds of the headset button are recognized as
+     * gestures instead of being routed as they are.
+     * 
+     * @return Whether headset gestures are on.
+     */
+    public boolean isHeadsetGestures() {
+        return headsetGestures;
+    }
+
+    /**
+     * Gets how long to wait after a headset button click for another one.
+     * 
+     * @return The timeout in milliseconds.
+     */
+    public long getGestureTimeoutMillis() {
+        return gestureTimeoutMillis;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        // Strings are read through the state store, which has the ones
+        // written through it before they're flushed
+        if (Constants.HEADSET_BUTTON_KEY.equals(key) || Constants.SEPARATE_PLAY_PAUSE_KEY.equals(key)) {
+            keyTable = createKeyTable(preferences.getBoolean(Constants.SEPARATE_PLAY_PAUSE_KEY, false),
+                    stateStore.getString(Constants.HEADSET_BUTTON_KEY, String.valueOf(MediaKeys.KEYCODE_HEADSETHOOK)));
+        } else if (Constants.HEADSET_GESTURES_KEY.equals(key)) {
+            headsetGestures = preferences.getBoolean(Constants.HEADSET_GESTURES_KEY, false);
+        } else if (Constants.GESTURE_TIMEOUT_KEY.equals(key)) {
+            gestureTimeoutMillis = parseGestureTimeout(stateStore.getString(Constants.GESTURE_TIMEOUT_KEY,
+                    String.valueOf(DEFAULT_GESTURE_TIMEOUT_MILLIS)));
+        }
+    }
+
+    private static KeyTable createKeyTable(boolean separatePlayPause, String headsetButton) {
+        KeyTable table = KeyTable.DEFAULT;
+        if (separatePlayPause) {
+            table = table.remap(MediaKeys.KEYCODE_MEDIA_PLAY, MediaKeys.KEYCODE_MEDIA_PLAY).remap(
+                    MediaKeys.KEYCODE_MEDIA_PAUSE, MediaKeys.KEYCODE_MEDIA_PAUSE);
+        }
+        try {
+            table = table.remap(MediaKeys.KEYCODE_HEADSETHOOK, Integer.parseInt(headsetButton));
+        } catch (IllegalArgumentException e) {
+            // Also covers NumberFormatException
+            Log.w(TAG, "Ignoring invalid headset button key code " + headsetButton);
+        }
+        return table;
+    }
+
+    private static long parseGestureTimeout(String timeout) {
+        try {
+            return Long.parseLong(timeout);
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Ignoring invalid gesture timeout " + timeout);
+            return DEFAULT_GESTURE_TIMEOUT_MILLIS;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr;
+
+import static com.harleensahni.android.mbr.Constants.TAG;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.util.Log;
+
+import com.harleensahni.android.mbr.core.ReceiverDirectory;
+import com.harleensahni.android.mbr.core.ReceiverNames;
+import com.harleensahni.android.mbr.core.RoutingSnapshot;
+import com.harleensahni.android.mbr.receivers.MediaButtonReceiver;
+import com.harleensahni.android.mbr.receivers.PackageChangeReceiver;
+
+/**
+ * In memory registry of the media button receivers installed on the device.
+ * The receivers are loaded from the {@code PackageManager} once and kept until
+ * a package is added, removed, replaced or changed. The manifest's
+ * {@link PackageChangeReceiver} drops them then, whether or not
+ * {@link MediaButtonMonitorService} is running, and the service reloads them
+ * right away.
+ * <p>
+ * The registry also keeps the set of receivers the user has hidden, parsed
+ * from {@link Constants#HIDDEN_APPS_KEY} through the
+ * {@link RoutingSnapshotStore} only when it changes, and the
+ * {@link ReceiverDirectory} the routing core uses to filter out hidden
+ * receivers and find the receiver of a running app.
+ * <p>
+ * Until it has loaded the receivers itself, routing uses the receivers of the
+ * current {@link RoutingSnapshot} if there is one.
+ *
+ * @author Harleen Sahni
+ */
+public final class MediaReceiverRegistry implements OnSharedPreferenceChangeListener {
+
+    private static MediaReceiverRegistry instance;
+
+    private final PackageManager packageManager;
+
+    private final RoutingSnapshotStore snapshotStore;
+
+    /** Names of {@code ResolveInfo} receivers for the routing core. */
+    private final ReceiverNames<ResolveInfo> receiverNames = new ReceiverNames<ResolveInfo>() {
+        @Override
+        public String getId(ResolveInfo receiver) {
+            return Utils.getMediaReceiverUniqueID(receiver, packageManager);
+        }
+
+        @Override
+        public String getPackageName(ResolveInfo receiver) {
+            return receiver.activityInfo.packageName;
+        }
+
+        @Override
+        public String getClassName(ResolveInfo receiver) {
+            return receiver.activityInfo.name;
+        }
+    };
+
+    /** Unmodifiable set of the ids of receivers the user has hidden. */
+    private volatile Set<String> hiddenReceiverIds;
+
+    /**
+     * Directory built from {@link #receivers} and {@link #hiddenReceiverIds},
+     * rebuilt when either of them changes.
+     */
+    private volatile ReceiverDirectory<ResolveInfo> directory;
+
+    /** Guarded by this. Directory of the receivers of {@link #snapshot}. */
+    private ReceiverDirectory<ResolveInfo> snapshotDirectory;
+
+    /** Guarded by this. Snapshot {@link #snapshotDirectory} was built from. */
+    private RoutingSnapshot snapshot;
+
+    /**
+     * Unmodifiable list of receivers in {@code PackageManager} priority order,
+     * or null if it needs to be (re)loaded.
+     */
+    private volatile List<ResolveInfo> receivers;
+
+    private MediaReceiverRegistry(Context context) {
+        packageManager = context.getPackageManager();
+
+        // The snapshot store has to hear of changes before we do, so that we
+        // don't read the old value from its snapshot
+        snapshotStore = RoutingSnapshotStore.getInstance(context);
+        StateStore.getInstance(context).registerListener(this);
+        hiddenReceiverIds = parseHiddenReceiverIds(snapshotStore.getString(Constants.HIDDEN_APPS_KEY, ""));
+    }
+
+    /**
+     * Gets the registry for this process.
+     *
+     * @param context
+     *            Any context, the application context is used.
+     * @return The registry.
+     */
+    public static synchronized MediaReceiverRegistry getInstance(Context context) {
+        if (instance == null) {
+            instance = new MediaReceiverRegistry(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the media button receivers, including our own, in priority order.
+     *
+     * @return An unmodifiable list of receivers. Callers that want to change it
+     *         must make a copy.
+     */
+    public List<ResolveInfo> getReceivers() {
+        List<ResolveInfo> current = receivers;
+        if (current == null) {
+            current = load();
+        }
+        return current;
+    }
+
+    /**
+     * Gets the directory the routing core uses to answer questions about the
+     * receivers. Rebuilt only when the receivers or the hidden ones change.
+     * 
+     * @return The directory.
+     */
+    public ReceiverDirectory<ResolveInfo> getDirectory() {
+        List<ResolveInfo> allReceivers = getReceivers();
+        Set<String> hiddenIds = hiddenReceiverIds;
+        ReceiverDirectory<ResolveInfo> current = directory;
+        if (current == null || current.getReceivers() != allReceivers || current.getHiddenReceiverIds() != hiddenIds) {
+            current = new ReceiverDirectory<ResolveInfo>(allReceivers, hiddenIds, MediaButtonReceiver.class.getName(),
+                    receiverNames);
+            directory = current;
+        }
+        return current;
+    }
+
+    /**
+     * Gets the directory to route a press with. Taken from the current
+     * {@link RoutingSnapshot} when the receivers aren't loaded, so a cold
+     * process doesn't have to query the {@code PackageManager}. The receivers
+     * then only carry their package and class names.
+     * 
+     * @return The directory.
+     */
+    public ReceiverDirectory<ResolveInfo> getRoutingDirectory() {
+        if (receivers == null) {
+            RoutingSnapshot current = snapshotStore.get();
+            if (current != null) {
+                return getDirectory(current);
+            }
+        }
+        return getDirectory();
+    }
+
+    private synchronized ReceiverDirectory<ResolveInfo> getDirectory(RoutingSnapshot current) {
+        Set<String> hiddenIds = hiddenReceiverIds;
+        if (snapshotDirectory == null || snapshot != current || snapshotDirectory.getHiddenReceiverIds() != hiddenIds) {
+            snapshotDirectory = new ReceiverDirectory<ResolveInfo>(Collections.unmodifiableList(RoutingSnapshotStore
+                    .toReceivers(current)), hiddenIds, MediaButtonReceiver.class.getName(), receiverNames);
+            snapshot = current;
+        }
+        return snapshotDirectory;
+    }
+
+    /**
+     * Gets the names of receivers, the id being the one returned by
+     * {@link Utils#getMediaReceiverUniqueID}.
+     * 
+     * @return The receiver names.
+     */
+    public ReceiverNames<ResolveInfo> getReceiverNames() {
+        return receiverNames;
+    }
+
+    /**
+     * Gets the media button receivers the user hasn't hidden, including our
+     * own, in priority order.
+     * 
+     * @return An unmodifiable list of receivers. Callers that want to change it
+     *         must make a copy.
+     */
+    public List<ResolveInfo> getVisibleReceivers() {
+        return getDirectory().getVisibleReceivers();
+    }
+
+    /**
+     * Gets the ids of the receivers the user has hidden, as returned by
+     * {@link Utils#getMediaReceiverUniqueID}.
+     * 
+     * @return An unmodifiable set of receiver ids.
+     */
+    public Set<String> getHiddenReceiverIds() {
+        return hiddenReceiverIds;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        if (Constants.HIDDEN_APPS_KEY.equals(key)) {
+            hiddenReceiverIds = parseHiddenReceiverIds(snapshotStore.getString(Constants.HIDDEN_APPS_KEY, ""));
+        }
+    }
+
+    /**
+     * Reloads the receivers from the {@code PackageManager}. Called when a
+     * package changes.
+     */
+    public void refresh() {
+        receivers = null;
+        load();
+    }
+
+    /**
+     * Drops the receivers, so they're reloaded when next needed. Called when a
+     * package changes.
+     */
+    public void invalidate() {
+        receivers = null;
+    }
+
+    private synchronized List<ResolveInfo> load() {
+        List<ResolveInfo> current = receivers;
+        if (current == null) {
+            current = Collections.unmodifiableList(Utils.queryMediaReceivers(packageManager));
+            receivers = current;
+            Log.d(TAG, "Media receiver registry loaded " + current.size() + " receivers");
+        }
+        return current;
+    }
+
+    private static Set<String> parseHiddenReceiverIds(String hiddenReceiverIdsString) {
+        Set<String> hiddenIds = new HashSet<String>();
+        for (String hiddenId : hiddenReceiverIdsString.split(",")) {
+            if (hiddenId.length() > 0) {
+                hiddenIds.add(hiddenId);
+            }
+        }
+        return Collections.unmodifiableSet(hiddenIds);
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr;
+
+import android.service.notification.NotificationListenerService;
+
+/**
+ * Notification listener the user gives notification access to, which from
+ * Lollipop on is what lets {@link PlaybackTracker} see the active media
+ * sessions. The notifications themselves are of no interest.
+ * 
+ * @author Harleen Sahni
+ */
+public class PlaybackListenerService extends NotificationListenerService {
+
+    @Override
+    public void onListenerConnected() {
+        PlaybackTracker.getInstance(this).onAccessChanged();
+    }
+}
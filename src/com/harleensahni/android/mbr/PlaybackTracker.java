@@ -0,0 +1,334 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr;
+
+import static com.harleensahni.android.mbr.Constants.TAG;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import android.app.ActivityManager;
+import android.app.ActivityManager.RunningServiceInfo;
+import android.content.ComponentName;
+import android.content.Context;
+import android.media.session.MediaController;
+import android.media.session.MediaSessionManager;
+import android.media.session.MediaSessionManager.OnActiveSessionsChangedListener;
+import android.media.session.PlaybackState;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Keeps track of which apps are playing, so routing can tell who to send a
+ * press to without asking the system.
+ * <p>
+ * From Lollipop on, while {@link MediaButtonMonitorService} has it
+ * {@link #register registered}, the active media sessions and their playback
+ * state keep it current. That requires the user to give
+ * {@link PlaybackListenerService} notification access; without it the
+ * sessions can't be seen.
+ * <p>
+ * Before Lollipop there are no sessions. KitKat's {@code RemoteController}
+ * shows a notification listener the playback state of the current
+ * {@code RemoteControlClient}, but not which app the client belongs to, and
+ * apps can't see who holds audio focus, so none of that can name the playing
+ * app. There, and without notification access, we fall back to guessing from
+ * the apps running foreground services, as players usually do while playing.
+ * The guess is taken in the background as soon as the tracker is created and
+ * when the service registers it, and only retaken, again in the background,
+ * when something suggests it changed: another app taking the media button
+ * receiver, a package change or a change of notification access. Before ICS
+ * the service doesn't run, so only package changes retake it there. Presses
+ * never ask the system, they use the last guess however old it is, none
+ * until the first is taken, and the up of a press always gets the answer its
+ * down got.
+ * 
+ * @author Harleen Sahni
+ */
+public final class PlaybackTracker {
+
+    private static PlaybackTracker instance;
+
+    private final Context context;
+
+    private final ActivityManager activityManager;
+
+    /** Background thread the foreground services are retaken on. */
+    private final Handler servicesHandler;
+
+    /** Unmodifiable list of the package names of the apps with playing sessions. */
+    private volatile List<String> sessionPackageNames = Collections.emptyList();
+
+    /** Whether {@link #sessionPackageNames} is kept current. */
+    private volatile boolean followingSessions;
+
+    /**
+     * Unmodifiable list of the package names of the started, foreground
+     * services, or null until first taken.
+     */
+    private volatile List<String> servicePackageNames;
+
+    private final Runnable servicesRunnable = new Runnable() {
+        @Override
+        public void run() {
+            takeServices();
+        }
+    };
+
+    /** The key code of the press {@link #pressAnswer} was given for. */
+    private int pressKeyCode;
+
+    /** The down time of the press {@link #pressAnswer} was given for. */
+    private long pressDownTime = -1;
+
+    /** What the down of the last press got, for its up to get the same. */
+    private List<String> pressAnswer;
+
+    /** Whether the platform keeps us current. */
+    private volatile boolean registered;
+
+    /** Main thread only. Handler callbacks are delivered on, null while unregistered. */
+    private Handler handler;
+
+    /** Main thread only. Tracks the media sessions while we're allowed to see them, or null. */
+    private Sessions sessions;
+
+    /**
+     * Follows the active media sessions and the playback state of each. Only
+     * loaded from Lollipop on.
+     */
+    private final class Sessions extends MediaController.Callback implements OnActiveSessionsChangedListener {
+        private final MediaSessionManager manager;
+        private final ComponentName listener;
+        private List<MediaController> controllers = Collections.emptyList();
+
+        Sessions() {
+            manager = (MediaSessionManager) context.getSystemService(Context.MEDIA_SESSION_SERVICE);
+            listener = new ComponentName(context, PlaybackListenerService.class);
+        }
+
+        /**
+         * Starts following the sessions.
+         * 
+         * @return Whether we're allowed to see them.
+         */
+        boolean start() {
+            try {
+                manager.addOnActiveSessionsChangedListener(this, listener, handler);
+                onActiveSessionsChanged(manager.getActiveSessions(listener));
+                return true;
+            } catch (SecurityException e) {
+                Log.d(TAG, "No notification access, can't follow media sessions");
+                return false;
+            }
+        }
+
+        void stop() {
+            manager.removeOnActiveSessionsChangedListener(this);
+            follow(Collections.<MediaController> emptyList());
+        }
+
+        @Override
+        public void onActiveSessionsChanged(List<MediaController> activeControllers) {
+            follow(activeControllers == null ? Collections.<MediaController> emptyList() : activeControllers);
+            update();
+        }
+
+        @Override
+        public void onPlaybackStateChanged(PlaybackState state) {
+            update();
+        }
+
+        @Override
+        public void onSessionDestroyed() {
+            update();
+        }
+
+        private void follow(List<MediaController> activeControllers) {
+            for (MediaController controller : controllers) {
+                controller.unregisterCallback(this);
+            }
+            controllers = new ArrayList<MediaController>(activeControllers);
+            for (MediaController controller : controllers) {
+                controller.registerCallback(this, handler);
+            }
+        }
+
+        /** Works out the playing apps, in the platform's session priority order. */
+        private void update() {
+            List<String> playing = new ArrayList<String>(controllers.size());
+            for (MediaController controller : controllers) {
+                PlaybackState state = controller.getPlaybackState();
+                String packageName = controller.getPackageName();
+                if (state != null && isPlaying(state.getState()) && !playing.contains(packageName)) {
+                    playing.add(packageName);
+                }
+            }
+            sessionPackageNames = Collections.unmodifiableList(playing);
+            Log.d(TAG, "Playing apps are now " + playing);
+        }
+
+        private boolean isPlaying(int state) {
+            return state == PlaybackState.STATE_PLAYING || state == PlaybackState.STATE_BUFFERING;
+        }
+    }
+
+    private PlaybackTracker(Context context) {
+        this.context = context;
+        activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        HandlerThread thread = new HandlerThread("MediaButtonRouter-playback", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        servicesHandler = new Handler(thread.getLooper());
+        // Seeded right away, so the guess is usually there by the time a
+        // press of a cold process needs it
+        refreshServices();
+    }
+
+    /**
+     * Gets the tracker for this process.
+     * 
+     * @param context
+     *            Any context, the application context is used.
+     * @return The tracker.
+     */
+    public static synchronized PlaybackTracker getInstance(Context context) {
+        if (instance == null) {
+            instance = new PlaybackTracker(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Starts listening to the platform. Must be called on the main thread.
+     */
+    void register() {
+        handler = new Handler();
+        registered = true;
+        onAccessChanged();
+        if (!followingSessions) {
+            refreshServices();
+        }
+    }
+
+    /**
+     * Stops listening to the platform. Must be called on the main thread.
+     */
+    void unregister() {
+        registered = false;
+        if (sessions != null) {
+            followingSessions = false;
+            sessions.stop();
+            sessions = null;
+        }
+        handler = null;
+        sessionPackageNames = Collections.emptyList();
+    }
+
+    /**
+     * Called when we may have been given notification access, which lets us
+     * follow the media sessions. Must be called on the main thread.
+     */
+    void onAccessChanged() {
+        if (!registered || sessions != null || Build.VERSION.SDK_INT < Utils.LOLLIPOP_API_LEVEL) {
+            return;
+        }
+        Sessions candidate = new Sessions();
+        if (candidate.start()) {
+            sessions = candidate;
+            followingSessions = true;
+        } else {
+            refreshServices();
+        }
+    }
+
+    /**
+     * Called when another app takes the media button receiver, which players
+     * do when they start playing. Retakes the foreground services guess in
+     * the background unless we're following the sessions.
+     */
+    void onMediaButtonReceiverChanged() {
+        if (!followingSessions) {
+            refreshServices();
+        }
+    }
+
+    /**
+     * Called when a package is added, removed or changed, which may stop or
+     * replace a player. Retakes the foreground services guess in the
+     * background if there is one to keep current.
+     */
+    public void onPackagesChanged() {
+        if (!followingSessions && servicePackageNames != null) {
+            refreshServices();
+        }
+    }
+
+    /**
+     * Gets the package names of the playing apps for a press: those with
+     * playing media sessions if we can follow them, otherwise those running
+     * foreground services as last guessed, however old the guess, or none if
+     * it hasn't been taken yet. The up of a press gets what its down got.
+     * 
+     * @param keyCode
+     *            The key code of the press.
+     * @param downTime
+     *            The down time of the press.
+     * @param up
+     *            Whether this is for the up of the press.
+     * @return An unmodifiable list of package names.
+     */
+    public synchronized List<String> getPlayingPackageNames(int keyCode, long downTime, boolean up) {
+        if (up && pressAnswer != null && pressKeyCode == keyCode && pressDownTime == downTime) {
+            List<String> answer = pressAnswer;
+            pressAnswer = null;
+            return answer;
+        }
+        List<String> answer;
+        if (followingSessions) {
+            answer = sessionPackageNames;
+        } else {
+            answer = servicePackageNames;
+            if (answer == null) {
+                answer = Collections.emptyList();
+            }
+        }
+        if (!up) {
+            pressKeyCode = keyCode;
+            pressDownTime = downTime;
+            pressAnswer = answer;
+        }
+        return answer;
+    }
+
+    private void refreshServices() {
+        servicesHandler.removeCallbacks(servicesRunnable);
+        servicesHandler.post(servicesRunnable);
+    }
+
+    private void takeServices() {
+        List<String> packageNames = new ArrayList<String>();
+        for (RunningServiceInfo runningService : activityManager.getRunningServices(Integer.MAX_VALUE)) {
+            if (runningService.started && runningService.foreground) {
+                packageNames.add(runningService.service.getPackageName());
+            }
+        }
+        servicePackageNames = Collections.unmodifiableList(packageNames);
+    }
+}
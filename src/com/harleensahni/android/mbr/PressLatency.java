@@ -0,0 +1,108 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr;
+
+import android.os.SystemClock;
+
+import com.harleensahni.android.mbr.core.LatencyStats;
+import com.harleensahni.android.mbr.core.LatencyStats.Stage;
+import com.harleensahni.android.mbr.core.RouteDecision.Route;
+
+/**
+ * The {@link LatencyStats} of presses handled by this process, since it
+ * started or was last reset from {@link MediaButtonConfigure}. Key events are
+ * timed in uptime milliseconds, our own stages with {@link System#nanoTime()}.
+ * 
+ * @author Harleen Sahni
+ */
+public final class PressLatency {
+
+    /**
+     * Extra with the uptime at which the selector was started, so it can time
+     * its launch.
+     */
+    public static final String EXTRA_SELECTOR_STARTED = "com.harleensahni.android.mbr.SELECTOR_STARTED";
+
+    private static final LatencyStats stats = new LatencyStats();
+
+    /**
+     * Prevent instantiation.
+     */
+    private PressLatency() {
+        // Intentionally blank
+    }
+
+    /**
+     * Records a stage that started at {@code startNanos}, as given by
+     * {@link System#nanoTime()}, and ended now.
+     */
+    public static void recordSinceNanos(Stage stage, Route route, long startNanos) {
+        stats.record(stage, route, (System.nanoTime() - startNanos) / 1000);
+    }
+
+    /**
+     * Records a stage that started at {@code startNanos} and ended at
+     * {@code endNanos}, both as given by {@link System#nanoTime()}.
+     */
+    public static void recordNanos(Stage stage, Route route, long startNanos, long endNanos) {
+        stats.record(stage, route, (endNanos - startNanos) / 1000);
+    }
+
+    /**
+     * Records a stage that started at {@code startUptime}, as given by
+     * {@link SystemClock#uptimeMillis()} or a key event's time, and ended now.
+     */
+    public static void recordSinceUptime(Stage stage, Route route, long startUptime) {
+        stats.record(stage, route, (SystemClock.uptimeMillis() - startUptime) * 1000);
+    }
+
+    /**
+     * Records a stage that started at {@code startUptime} and ended at
+     * {@code endUptime}, both as given by {@link SystemClock#uptimeMillis()}.
+     */
+    public static void recordUptime(Stage stage, Route route, long startUptime, long endUptime) {
+        stats.record(stage, route, (endUptime - startUptime) * 1000);
+    }
+
+    /**
+     * Checks whether a key event's time can start a stage. Headset bridges and
+     * apps injecting presses may leave it 0, or take it from another clock,
+     * which would record the whole uptime.
+     * 
+     * @param eventTime
+     *            The key event's time.
+     * @param uptime
+     *            Uptime when we got the key event, or later.
+     * @return Whether the time is in the past of {@code uptime}.
+     */
+    public static boolean isUsableEventTime(long eventTime, long uptime) {
+        return eventTime > 0 && eventTime <= uptime;
+    }
+
+    /**
+     * @return The stats as text, see {@link LatencyStats#report()}.
+     */
+    public static String report() {
+        return stats.report();
+    }
+
+    /**
+     * Forgets everything recorded.
+     */
+    public static void reset() {
+        stats.reset();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import android.content.Context;
+import android.content.pm.ResolveInfo;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
+import android.widget.ListView;
+import android.widget.TextView;
+
+/**
+ * Rows of the {@link ReceiverSelector}, one per receiver with its icon, label
+ * and an indicator on the selected one. Rows keep their views in a
+ * {@link ViewHolder}, and moving the selection only touches the indicators of
+ * the rows that lost and gained it instead of rebinding the whole list.
+ * <p>
+ * A receiver that isn't in the {@link AppInfoCache} yet is shown with the
+ * default icon and its package name while it loads in the background, so
+ * the UI thread never waits on the disk or the {@code PackageManager}.
+ * 
+ * @author Harleen Sahni
+ */
+final class ReceiverListAdapter extends BaseAdapter {
+
+    /** The views of a row and the receiver they show. */
+    private static final class ViewHolder {
+        final View indicator;
+        final ImageView icon;
+        final TextView name;
+        ResolveInfo receiver;
+
+        ViewHolder(View row) {
+            indicator = row.findViewById(R.id.receiverSelectionIndicator);
+            icon = (ImageView) row.findViewById(R.id.receiverAppImage);
+            name = (TextView) row.findViewById(R.id.receiverAppName);
+        }
+    }
+
+    private final LayoutInflater inflater;
+
+    private final AppInfoCache appInfoCache;
+
+    private final List<ResolveInfo> receivers;
+
+    /** Position of the selected receiver, -1 if none. */
+    private int selection = -1;
+
+    /** Receivers being loaded into the cache. */
+    private final Set<ResolveInfo> loading = new HashSet<ResolveInfo>();
+
+    /**
+     * Creates an adapter.
+     * 
+     * @param context
+     *            The selector.
+     * @param receivers
+     *            The receivers to show, not changed while the adapter is in
+     *            use.
+     */
+    ReceiverListAdapter(Context context, List<ResolveInfo> receivers) {
+        inflater = LayoutInflater.from(context);
+        appInfoCache = AppInfoCache.getInstance(context);
+        this.receivers = receivers;
+    }
+
+    @Override
+    public int getCount() {
+        return receivers.size();
+    }
+
+    @Override
+    public Object getItem(int position) {
+        return receivers.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        View row = convertView;
+        ViewHolder holder;
+        if (row == null) {
+            row = inflater.inflate(R.layout.media_receiver_view, parent, false);
+            holder = new ViewHolder(row);
+            row.setTag(holder);
+        } else {
+            holder = (ViewHolder) row.getTag();
+        }
+
+        ResolveInfo receiver = receivers.get(position);
+        if (holder.receiver != receiver) {
+            if (appInfoCache.isLoaded(receiver)) {
+                holder.receiver = receiver;
+                holder.icon.setImageDrawable(appInfoCache.getIcon(receiver));
+                holder.name.setText(appInfoCache.getLabel(receiver));
+            } else {
+                // Left unbound, so the row is bound again once it's loaded
+                holder.receiver = null;
+                holder.icon.setImageResource(android.R.drawable.sym_def_app_icon);
+                holder.name.setText(receiver.activityInfo.packageName);
+                load(receiver);
+            }
+        }
+        bindIndicator(holder, position);
+        return row;
+    }
+
+    private void load(final ResolveInfo receiver) {
+        if (loading.add(receiver)) {
+            appInfoCache.load(receiver, new Runnable() {
+                @Override
+                public void run() {
+                    loading.remove(receiver);
+                    notifyDataSetChanged();
+                }
+            });
+        }
+    }
+
+    /**
+     * Moves the selection indicator, rebinding only the rows of {@code list}
+     * that lost and gained it if they're showing.
+     * 
+     * @param list
+     *            The list showing this adapter.
+     * @param position
+     *            The newly selected position, -1 for none.
+     */
+    void setSelection(ListView list, int position) {
+        int previous = selection;
+        selection = position;
+        if (previous != position) {
+            rebindIndicator(list, previous);
+            rebindIndicator(list, position);
+        }
+    }
+
+    private void rebindIndicator(ListView list, int position) {
+        int child = position - list.getFirstVisiblePosition();
+        if (position < 0 || child < 0 || child >= list.getChildCount()) {
+            return;
+        }
+        Object holder = list.getChildAt(child).getTag();
+        // Header and footer rows aren't ours
+        if (holder instanceof ViewHolder) {
+            bindIndicator((ViewHolder) holder, position);
+        }
+    }
+
+    private void bindIndicator(ViewHolder holder, int position) {
+        holder.indicator.setVisibility(selection == position ? View.VISIBLE : View.INVISIBLE);
+    }
+}
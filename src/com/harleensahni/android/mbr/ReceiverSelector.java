@@ -18,10 +18,6 @@ package com.harleensahni.android.mbr;
 import static com.harleensahni.android.mbr.Constants.TAG;
 
 import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 
 import android.app.AlertDialog;
 import android.app.ListActivity;
@@ -36,26 +32,27 @@ import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.media.MediaPlayer.OnCompletionListener;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
-import android.speech.tts.TextToSpeech;
-import android.speech.tts.TextToSpeech.OnInitListener;
 import android.util.Log;
 import android.view.KeyEvent;
-import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.View.OnClickListener;
-import android.view.ViewGroup;
 import android.view.WindowManager;
-import android.widget.BaseAdapter;
 import android.widget.ImageView;
 import android.widget.ListView;
 import android.widget.TextView;
 
+import com.harleensahni.android.mbr.core.DuplicateEventFilter;
+import com.harleensahni.android.mbr.core.KeyTable;
+import com.harleensahni.android.mbr.core.LatencyStats.Stage;
+import com.harleensahni.android.mbr.core.RouteDecision.Route;
 import com.harleensahni.android.mbr.receivers.MediaButtonReceiver;
 
 /**
@@ -65,33 +62,13 @@ import com.harleensahni.android.mbr.receivers.MediaButtonReceiver;
  * 
  * @author Harleen Sahni
  */
-public class ReceiverSelector extends ListActivity implements OnInitListener, AudioManager.OnAudioFocusChangeListener {
-
-    private class SweepBroadcastReceiver extends BroadcastReceiver {
-        String name;
-
-        public SweepBroadcastReceiver(String name) {
-            this.name = name;
-        }
-
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            /* COMMENTED OUT FOR MARKET RELEASE Log.i(TAG, "Media Button Selector: After running broadcast receiver " + name + "have resultcode: "
-                    + getResultCode() + " result Data: " + getResultData()); */
-        }
-    }
+public class ReceiverSelector extends ListActivity implements AudioManager.OnAudioFocusChangeListener {
 
     /**
      * Key used to store and retrieve last selected receiver.
      */
     private static final String SELECTION_KEY = "btButtonSelection";
 
-    /**
-     * Key used to store and retrieve last selected receiver that actually was
-     * forwarded a media button by the user.
-     */
-    private static final String SELECTION_ACTED_KEY = "btButtonSelectionActed";
-
     /**
      * Number of seconds to wait before timing out and just cancelling.
      */
@@ -104,17 +81,26 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
      */
     private KeyEvent trappedKeyEvent;
 
+    /** Uptime at which we were shown for {@link #trappedKeyEvent}. */
+    private long shownUptime;
+
     /**
      * The {@code BroadcastReceiver}'s registered in the system for *
      * {@link Intent.ACTION_MEDIA_BUTTON}.
      */
     private List<ResolveInfo> receivers;
 
+    /** Shows {@link #receivers} and which one is selected. */
+    private ReceiverListAdapter adapter;
+
     /** The intent filter for registering our local {@code BroadcastReceiver}. */
     private IntentFilter uiIntentFilter;
 
-    /** The text to speech engine used to announce navigation to the user. */
-    private TextToSpeech textToSpeech;
+    /**
+     * Used to announce navigation to the user. Null if text to speech is
+     * disabled.
+     */
+    private Announcer announcer;
 
     /**
      * The receiver currently selected by bluetooth next/prev navigation. We
@@ -148,16 +134,13 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
     private boolean audioFocus;
 
     /**
-     * ScheduledExecutorService used to time out and close activity if the user
-     * doesn't make a selection within certain amount of time. Resets on user
-     * interaction.
+     * Used to time out and close activity if the user doesn't make a
+     * selection within certain amount of time. Resets on user interaction.
      */
-    private ScheduledExecutorService timeoutExecutor;
+    private DeadlineTimer timeoutTimer;
 
-    /**
-     * ScheduledFuture of timeout.
-     */
-    private ScheduledFuture<?> timeoutScheduledFuture;
+    /** Whether the timeout runs, only between onResume and onPause. */
+    private boolean timeoutEnabled;
 
     /** The cancel button. */
     private View cancelButton;
@@ -172,45 +155,27 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
 
     private boolean eulaAcceptedAlready;
 
+    /**
+     * Key events {@link #onMediaKeyEvent} handled. A press can reach it both
+     * from {@link #uiMediaReceiver} and from {@link MediaButtonReceiver}.
+     */
+    private final DuplicateEventFilter handledKeyEvents = new DuplicateEventFilter();
+
     /**
      * Local broadcast receiver that allows us to handle media button events for
-     * navigation inside the activity.
+     * navigation inside the activity on versions that still broadcast them.
+     * Otherwise {@link MediaButtonReceiver} hands them to us through
+     * {@link SelectorVisibility}.
      */
     private BroadcastReceiver uiMediaReceiver = new BroadcastReceiver() {
 
         @Override
         public void onReceive(Context context, Intent intent) {
-            if (Intent.ACTION_MEDIA_BUTTON.equals(intent.getAction())
-                    || Constants.INTENT_ACTION_VIEW_MEDIA_LIST_KEYPRESS.equals(intent.getAction())) {
+            if (Intent.ACTION_MEDIA_BUTTON.equals(intent.getAction())) {
                 KeyEvent navigationKeyEvent = (KeyEvent) intent.getExtras().get(Intent.EXTRA_KEY_EVENT);
-                int keyCode = navigationKeyEvent.getKeyCode();
-                if (Utils.isMediaButton(keyCode)) {
-                    /* COMMENTED OUT FOR MARKET RELEASE Log.i(TAG, "Media Button Selector: UI is directly handling key: " + navigationKeyEvent); */
-                    if (navigationKeyEvent.getAction() == KeyEvent.ACTION_UP) {
-                        switch (Utils.getAdjustedKeyCode(navigationKeyEvent)) {
-                        case KeyEvent.KEYCODE_MEDIA_NEXT:
-                            moveSelection(1);
-                            break;
-                        case KeyEvent.KEYCODE_MEDIA_PREVIOUS:
-                            moveSelection(-1);
-                            break;
-                        case KeyEvent.KEYCODE_HEADSETHOOK:
-                        case KeyEvent.KEYCODE_MEDIA_PLAY_PAUSE:
-                            select();
-                            break;
-                        case KeyEvent.KEYCODE_MEDIA_STOP:
-                            // just cancel
-                            finish();
-                            break;
-                        default:
-                            break;
-                        }
-                    }
-                    if (isOrderedBroadcast()) {
-                        abortBroadcast();
-                    }
+                if (onMediaKeyEvent(navigationKeyEvent) && isOrderedBroadcast()) {
+                    abortBroadcast();
                 }
-
             }
 
         }
@@ -223,21 +188,16 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
     private SharedPreferences preferences;
 
     /**
-     * {@inheritDoc}
+     * Announces to the user what we're handling. If text to speech is still
+     * starting, the announcement is made as soon as it's ready.
      */
-    @Override
-    public void onInit(int status) {
-        // text to speech initialized
-        // XXX This is where we announce to the user what we're handling. It's
-        // not clear that this will always get called. I don't know how else to
-        // query if the text to speech is started though.
-
+    private void announce() {
         // Only announce if we haven't before
-        if (!announced && trappedKeyEvent != null) {
+        if (announcer != null && !announced && trappedKeyEvent != null) {
             requestAudioFocus();
 
             String actionText = "";
-            switch (Utils.getAdjustedKeyCode(trappedKeyEvent)) {
+            switch (getKeyCode(trappedKeyEvent)) {
             case KeyEvent.KEYCODE_MEDIA_PLAY_PAUSE:
                 // This is just play even though the keycode is both play/pause,
                 // the app shouldn't handle
@@ -246,6 +206,12 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
                 actionText = getString(audioManager.isMusicActive() ? R.string.pause_play_speak_text
                         : R.string.play_speak_text);
                 break;
+            case Utils.KEYCODE_MEDIA_PLAY:
+                actionText = getString(R.string.play_speak_text);
+                break;
+            case Utils.KEYCODE_MEDIA_PAUSE:
+                actionText = getString(R.string.pause_speak_text);
+                break;
             case KeyEvent.KEYCODE_MEDIA_NEXT:
                 actionText = getString(R.string.next_speak_text);
                 break;
@@ -260,11 +226,11 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
             String textToSpeak = null;
             if (btButtonSelection >= 0 && btButtonSelection < receivers.size()) {
                 textToSpeak = String.format(getString(R.string.application_announce_speak_text), actionText,
-                        Utils.getAppName(receivers.get(btButtonSelection), getPackageManager()));
+                        AppInfoCache.getInstance(this).getLoadedLabel(receivers.get(btButtonSelection)));
             } else {
                 textToSpeak = String.format(getString(R.string.announce_speak_text), actionText);
             }
-            textToSpeech.speak(textToSpeak, TextToSpeech.QUEUE_FLUSH, null);
+            announcer.speak(textToSpeak);
             announced = true;
         }
     }
@@ -283,7 +249,6 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
         eulaAcceptedAlready = Eula.show(this);
 
         uiIntentFilter = new IntentFilter(Intent.ACTION_MEDIA_BUTTON);
-        uiIntentFilter.addAction(Constants.INTENT_ACTION_VIEW_MEDIA_LIST_KEYPRESS);
         uiIntentFilter.setPriority(Integer.MAX_VALUE);
 
         preferences = PreferenceManager.getDefaultSharedPreferences(this);
@@ -292,7 +257,11 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
         // developer guide
         boolean ttsDisabled = preferences.getBoolean(Constants.DISABLE_TTS, false);
 
-        textToSpeech = ttsDisabled ? null : new TextToSpeech(this, this);
+        announcer = ttsDisabled ? null : Announcer.getInstance(this);
+        if (announcer != null) {
+            // Usually already started by the monitor service
+            announcer.acquire();
+        }
 
         audioManager = (AudioManager) this.getSystemService(AUDIO_SERVICE);
         powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
@@ -300,10 +269,17 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
         // XXX can't use integer array, argh:
         // http://code.google.com/p/android/issues/detail?id=2096
         timeoutTime = Integer.valueOf(preferences.getString(Constants.TIMEOUT_KEY, "5"));
+        timeoutTimer = new DeadlineTimer(new Handler(), new Runnable() {
+            @Override
+            public void run() {
+                onTimeout();
+            }
+        });
 
-        btButtonSelection = preferences.getInt(SELECTION_KEY, -1);
+        StateStore stateStore = StateStore.getInstance(this);
+        btButtonSelection = stateStore.getInt(SELECTION_KEY, -1);
 
-        receivers = Utils.getMediaReceivers(getPackageManager(), true, getApplicationContext());
+        receivers = Utils.getMediaReceivers(getApplicationContext(), true);
 
         Boolean lastAnnounced = (Boolean) getLastNonConfigurationInstance();
         if (lastAnnounced != null) {
@@ -321,49 +297,22 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
                 }
             }
         }
-        // TODO MAYBE sort receivers by MRU so user doesn't have to skip as many
-        // apps,
-        // right now apps are sorted by priority (not set by the user, set by
-        // the app authors.. )
-        setListAdapter(new BaseAdapter() {
-
-            @Override
-            public int getCount() {
-                return receivers.size();
-            }
-
-            @Override
-            public Object getItem(int position) {
-                return receivers.get(position);
-            }
-
-            @Override
-            public long getItemId(int position) {
-                return position;
-            }
-
-            @Override
-            public View getView(int position, View convertView, ViewGroup parent) {
-
-                View view = convertView;
-                if (view == null) {
-                    LayoutInflater vi = (LayoutInflater) getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-                    view = vi.inflate(R.layout.media_receiver_view, null);
-                }
-
-                ResolveInfo resolveInfo = receivers.get(position);
-                view.findViewById(R.id.receiverSelectionIndicator).setVisibility(
-                        btButtonSelection == position ? View.VISIBLE : view.INVISIBLE);
-
-                ImageView imageView = (ImageView) view.findViewById(R.id.receiverAppImage);
-                imageView.setImageDrawable(resolveInfo.loadIcon(getPackageManager()));
-
-                TextView textView = (TextView) view.findViewById(R.id.receiverAppName);
-                textView.setText(Utils.getAppName(resolveInfo, getPackageManager()));
-                return view;
-
+        // Sort receivers by how often and recently they were picked so users
+        // don't have to skip as many apps. Apps never picked stay in priority
+        // order (not set by the user, set by the app authors..)
+        if (receivers != null) {
+            ReceiverUsageHistory usageHistory = ReceiverUsageHistory.getInstance(this);
+            String lastActedId = stateStore.getString(Constants.SELECTION_ACTED_KEY, null);
+            usageHistory.sort(receivers, lastActedId);
+            if (lastAnnounced == null && (!usageHistory.isEmpty() || lastActedId != null)) {
+                // Freshly opened, start on the most likely app. After a
+                // configuration change keep the user's place instead.
+                btButtonSelection = receivers.isEmpty() ? -1 : 0;
             }
-        });
+        }
+        adapter = new ReceiverListAdapter(this, receivers);
+        adapter.setSelection(getListView(), btButtonSelection);
+        setListAdapter(adapter);
         header = (TextView) findViewById(R.id.dialogHeader);
         cancelButton = findViewById(R.id.cancelButton);
         cancelButton.setOnClickListener(new OnClickListener() {
@@ -384,8 +333,8 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (textToSpeech != null) {
-            textToSpeech.shutdown();
+        if (announcer != null) {
+            announcer.release();
         }
         Log.d(TAG, "Media Button Selector: destroyed.");
     }
@@ -396,7 +345,7 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
     @Override
     protected void onListItemClick(ListView l, View v, int position, long id) {
         btButtonSelection = position;
-        getListView().invalidateViews();
+        adapter.setSelection(getListView(), btButtonSelection);
 
         forwardToMediaReceiver(position);
     }
@@ -410,15 +359,22 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
         Log.d(TAG, "Media Button Selector: onPause");
         Log.d(TAG, "Media Button Selector: unegistered UI receiver");
         unregisterReceiver(uiMediaReceiver);
+        SelectorVisibility.onPause(this);
         if (wakeLock.isHeld()) {
             wakeLock.release();
         }
-        if (textToSpeech != null) {
-            textToSpeech.stop();
+        if (announcer != null) {
+            announcer.stop();
+            // Next time we'll probably open with this selection
+            if (btButtonSelection >= 0 && btButtonSelection < receivers.size()) {
+                announcer.prepare(Announcer.getAnnouncements(this,
+                        AppInfoCache.getInstance(this).getLoadedLabel(receivers.get(btButtonSelection))));
+            }
         }
-        timeoutExecutor.shutdownNow();
+        timeoutEnabled = false;
+        timeoutTimer.cancel();
         audioManager.abandonAudioFocus(this);
-        preferences.edit().putInt(SELECTION_KEY, btButtonSelection).commit();
+        StateStore.getInstance(this).putInt(SELECTION_KEY, btButtonSelection);
     }
 
     @Override
@@ -451,6 +407,13 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
         // list view and which don't.
         if (getIntent().getExtras() != null && getIntent().getExtras().get(Intent.EXTRA_KEY_EVENT) != null) {
             trappedKeyEvent = (KeyEvent) getIntent().getExtras().get(Intent.EXTRA_KEY_EVENT);
+            shownUptime = SystemClock.uptimeMillis();
+            long startedUptime = getIntent().getLongExtra(PressLatency.EXTRA_SELECTOR_STARTED, 0);
+            if (startedUptime > 0) {
+                PressLatency.recordUptime(Stage.SELECTOR_LAUNCH, Route.SHOW_SELECTOR, startedUptime, shownUptime);
+                // Only time the launch, not later resumes
+                getIntent().removeExtra(PressLatency.EXTRA_SELECTOR_STARTED);
+            }
 
             /* COMMENTED OUT FOR MARKET RELEASE Log.i(TAG, "Media Button Selector: handling event: " + trappedKeyEvent + " from intent:" + getIntent()); */
 
@@ -460,10 +423,16 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
             getListView().setFocusableInTouchMode(true);
 
             String action = "";
-            switch (Utils.getAdjustedKeyCode(trappedKeyEvent)) {
+            switch (getKeyCode(trappedKeyEvent)) {
             case KeyEvent.KEYCODE_MEDIA_PLAY_PAUSE:
                 action = getString(audioManager.isMusicActive() ? R.string.pausePlay : R.string.play);
                 break;
+            case Utils.KEYCODE_MEDIA_PLAY:
+                action = getString(R.string.play);
+                break;
+            case Utils.KEYCODE_MEDIA_PAUSE:
+                action = getString(R.string.pause);
+                break;
             case KeyEvent.KEYCODE_MEDIA_NEXT:
                 action = getString(R.string.next);
                 break;
@@ -479,6 +448,7 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
                 // scroll to last selected item
                 getListView().setSelection(btButtonSelection);
             }
+            announce();
         } else {
             /* COMMENTED OUT FOR MARKET RELEASE Log.i(TAG, "Media Button Selector: launched without key event, started with intent: " + getIntent()); */
 
@@ -491,6 +461,7 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
         }
         Log.d(TAG, "Media Button Selector: Registered UI receiver");
         registerReceiver(uiMediaReceiver, uiIntentFilter);
+        SelectorVisibility.onResume(this);
 
         // power on device's screen so we can interact with it, otherwise on
         // pause gets called immediately.
@@ -504,7 +475,7 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
                 | PowerManager.ON_AFTER_RELEASE, TAG);
         wakeLock.setReferenceCounted(false);
         wakeLock.acquire();
-        timeoutExecutor = Executors.newSingleThreadScheduledExecutor();
+        timeoutEnabled = true;
         if (introDialog == null && eulaAcceptedAlready) {
             // Don't time out in the middle of showing the dialog, that's rude.
             // We could reset timeout here, but this is the first time the user
@@ -550,23 +521,7 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
      * Resets the timeout before the application is automatically dismissed.
      */
     private void resetTimeout() {
-        if (timeoutScheduledFuture != null) {
-            timeoutScheduledFuture.cancel(false);
-        }
-
-        timeoutScheduledFuture = timeoutExecutor.schedule(new Runnable() {
-            @Override
-            public void run() {
-                runOnUiThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        onTimeout();
-                    }
-                });
-
-            }
-        }, timeoutTime, TimeUnit.SECONDS);
-
+        timeoutTimer.schedule(SystemClock.uptimeMillis() + timeoutTime * 1000L);
     }
 
     /**
@@ -577,11 +532,66 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
         super.onUserInteraction();
 
         // Reset timeout before we finish
-        if (!timeoutExecutor.isShutdown()) {
+        if (timeoutEnabled) {
             resetTimeout();
         }
     }
 
+    /**
+     * Navigates the list or acts on a media key event while we're shown. Must
+     * be called on the main thread.
+     * 
+     * @param navigationKeyEvent
+     *            The key event.
+     * @return Whether it was a media key, which nobody else should get.
+     */
+    boolean onMediaKeyEvent(KeyEvent navigationKeyEvent) {
+        int keyCode = getKeyCode(navigationKeyEvent);
+        if (keyCode == KeyTable.NOT_MEDIA_KEY) {
+            return false;
+        }
+        if (handledKeyEvents.isDuplicate(navigationKeyEvent.getEventTime(), navigationKeyEvent.getKeyCode(),
+                navigationKeyEvent.getAction(), navigationKeyEvent.getDeviceId(), SystemClock.uptimeMillis())) {
+            return true;
+        }
+        /* COMMENTED OUT FOR MARKET RELEASE Log.i(TAG, "Media Button Selector: UI is directly handling key: " + navigationKeyEvent); */
+        if (navigationKeyEvent.getAction() == KeyEvent.ACTION_UP) {
+            switch (keyCode) {
+            case KeyEvent.KEYCODE_MEDIA_NEXT:
+                moveSelection(1);
+                break;
+            case KeyEvent.KEYCODE_MEDIA_PREVIOUS:
+                moveSelection(-1);
+                break;
+            case KeyEvent.KEYCODE_HEADSETHOOK:
+            case KeyEvent.KEYCODE_MEDIA_PLAY_PAUSE:
+            case Utils.KEYCODE_MEDIA_PLAY:
+            case Utils.KEYCODE_MEDIA_PAUSE:
+                select();
+                break;
+            case KeyEvent.KEYCODE_MEDIA_STOP:
+                // just cancel
+                finish();
+                break;
+            default:
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the key code to act on for {@code keyEvent}, with the user's key
+     * remaps applied.
+     * 
+     * @param keyEvent
+     *            The key event.
+     * @return The key code, or {@link KeyTable#NOT_MEDIA_KEY}.
+     */
+    private int getKeyCode(KeyEvent keyEvent) {
+        return MediaKeySettings.getInstance(this).getKeyTable().getKeyCode(keyEvent.getKeyCode());
+    }
+
     /**
      * Forwards the {@code #trappedKeyEvent} to the receiver at specified
      * position.
@@ -594,14 +604,22 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
         if (resolveInfo != null) {
             if (trappedKeyEvent != null) {
 
+                PressLatency.recordSinceUptime(Stage.SELECTION, Route.SHOW_SELECTOR, shownUptime);
+                long dispatchNanos = System.nanoTime();
                 ComponentName selectedReceiver = new ComponentName(resolveInfo.activityInfo.packageName,
                         resolveInfo.activityInfo.name);
-                Utils.forwardKeyCodeToComponent(this, selectedReceiver, true,
-                        Utils.getAdjustedKeyCode(trappedKeyEvent),
-                        new SweepBroadcastReceiver(selectedReceiver.toString()));
+                Utils.forwardKeyCodeToComponent(this, selectedReceiver, true, getKeyCode(trappedKeyEvent));
+                PressLatency.recordSinceNanos(Stage.DISPATCH, Route.SHOW_SELECTOR, dispatchNanos);
+                if (PressLatency.isUsableEventTime(trappedKeyEvent.getEventTime(), SystemClock.uptimeMillis())) {
+                    PressLatency.recordSinceUptime(Stage.TOTAL, Route.SHOW_SELECTOR, trappedKeyEvent.getEventTime());
+                }
+                // learn from the pick before it becomes the last acted on app
+                SelectionModel.getInstance(this).recordSelection(resolveInfo, getKeyCode(trappedKeyEvent));
                 // save the last acted on app in case we have no idea who is
                 // playing music so we can make a guess
-                preferences.edit().putString(SELECTION_ACTED_KEY, resolveInfo.activityInfo.name).commit();
+                StateStore.getInstance(this).putString(Constants.SELECTION_ACTED_KEY, resolveInfo.activityInfo.name);
+                ReceiverUsageHistory.getInstance(this).recordSelection(resolveInfo);
+                ContextRouting.getInstance(this).recordSelection(resolveInfo);
                 finish();
             }
         }
@@ -630,12 +648,11 @@ public class ReceiverSelector extends ListActivity implements OnInitListener, Au
         }
 
         // May not highlight, but will scroll to item
-        getListView().invalidateViews();
+        adapter.setSelection(getListView(), btButtonSelection);
         getListView().setSelection(btButtonSelection);
 
-        if (textToSpeech != null) {
-            textToSpeech.speak(Utils.getAppName(receivers.get(btButtonSelection), getPackageManager()),
-                    TextToSpeech.QUEUE_FLUSH, null);
+        if (announcer != null) {
+            announcer.speak(AppInfoCache.getInstance(this).getLoadedLabel(receivers.get(btButtonSelection)));
         }
 
     }
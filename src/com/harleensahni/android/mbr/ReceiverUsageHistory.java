@@ -0,0 +1,92 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr;
+
+import java.util.List;
+
+import android.content.Context;
+import android.content.pm.ResolveInfo;
+
+import com.harleensahni.android.mbr.core.ReceiverUsage;
+
+/**
+ * The {@link ReceiverUsage} of this device, persisted through the
+ * {@link StateStore} under {@link Constants#RECEIVER_USAGE_KEY}.
+ * 
+ * @author Harleen Sahni
+ */
+public final class ReceiverUsageHistory {
+
+    private static ReceiverUsageHistory instance;
+
+    private final StateStore stateStore;
+
+    private final MediaReceiverRegistry receiverRegistry;
+
+    /** Guarded by this. */
+    private final ReceiverUsage usage;
+
+    private ReceiverUsageHistory(Context context) {
+        stateStore = StateStore.getInstance(context);
+        receiverRegistry = MediaReceiverRegistry.getInstance(context);
+        usage = ReceiverUsage.decode(stateStore.getString(Constants.RECEIVER_USAGE_KEY, null));
+    }
+
+    /**
+     * Gets the usage history for this process.
+     * 
+     * @param context
+     *            Any context, the application context is used.
+     * @return The usage history.
+     */
+    public static synchronized ReceiverUsageHistory getInstance(Context context) {
+        if (instance == null) {
+            instance = new ReceiverUsageHistory(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Records that the user picked a receiver.
+     * 
+     * @param resolveInfo
+     *            The receiver.
+     */
+    public synchronized void recordSelection(ResolveInfo resolveInfo) {
+        usage.recordSelection(receiverRegistry.getReceiverNames().getId(resolveInfo), System.currentTimeMillis());
+        stateStore.putString(Constants.RECEIVER_USAGE_KEY, usage.encode());
+    }
+
+    /**
+     * Sorts receivers from most to least likely to be picked.
+     * 
+     * @param receivers
+     *            The receivers, sorted in place.
+     * @param preferredId
+     *            Id of the receiver that goes first among receivers that are
+     *            equally likely, may be null.
+     */
+    public synchronized void sort(List<ResolveInfo> receivers, String preferredId) {
+        usage.sort(receivers, receiverRegistry.getReceiverNames(), preferredId, System.currentTimeMillis());
+    }
+
+    /**
+     * @return Whether the user never picked a receiver.
+     */
+    public synchronized boolean isEmpty() {
+        return usage.isEmpty();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr;
+
+import android.os.SystemClock;
+
+import com.harleensahni.android.mbr.core.RegistrationGuard;
+
+/**
+ * The {@link RegistrationGuard} for this process, deciding when
+ * {@link MediaButtonMonitorService} takes the media button receiver back from
+ * other apps and counting the takeovers for {@link MediaButtonConfigure}.
+ * Times are in uptime milliseconds.
+ * 
+ * @author Harleen Sahni
+ */
+public final class RegistrationFights {
+
+    /** Window the registration budget applies to. */
+    public static final long BUDGET_WINDOW_MILLIS = 10 * 60 * 1000;
+
+    /** Registrations per window when the user hasn't chosen. */
+    public static final int DEFAULT_BUDGET = 20;
+
+    private static final RegistrationGuard guard = new RegistrationGuard(DEFAULT_BUDGET, BUDGET_WINDOW_MILLIS);
+
+    /**
+     * Prevent instantiation.
+     */
+    private RegistrationFights() {
+        // Intentionally blank
+    }
+
+    /**
+     * Records that another app took the media button receiver.
+     * 
+     * @param competitor
+     *            The flattened component name the app registered.
+     * @param budget
+     *            The most registrations per {@link #BUDGET_WINDOW_MILLIS}.
+     * @return The uptime at which to take the receiver back.
+     */
+    public static synchronized long onTakeover(String competitor, int budget) {
+        guard.setBudget(budget);
+        return guard.onTakeover(competitor, SystemClock.uptimeMillis());
+    }
+
+    /**
+     * Records that we registered the media button receiver.
+     */
+    public static synchronized void onRegistered() {
+        guard.onRegistered(SystemClock.uptimeMillis());
+    }
+
+    /**
+     * @return The counters as text, empty if no app took the receiver.
+     */
+    public static synchronized String report() {
+        return guard.report();
+    }
+
+    /**
+     * Forgets the counters and backoffs.
+     */
+    public static synchronized void reset() {
+        guard.reset();
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr;
+
+import static com.harleensahni.android.mbr.Constants.TAG;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.content.pm.ActivityInfo;
+import android.content.pm.ResolveInfo;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.harleensahni.android.mbr.core.RoutingSnapshot;
+
+/**
+ * Keeps a {@link RoutingSnapshot} on disk so a process started by a press can
+ * route it without querying the {@code PackageManager} or parsing the
+ * preferences. The file is memory mapped and decoded on first use, and
+ * rewritten atomically on a background thread a little after the receivers,
+ * settings or state in it change.
+ * <p>
+ * Only what rarely changes is kept: the receivers, the settings, the apps the
+ * user has hidden or picked for fan out, and the last app that took the media
+ * button receiver, which only changes when another player takes it. State
+ * written as presses are routed, such as the usage history, would keep the
+ * snapshot out of date and the flash busy, so it is read from the
+ * {@link StateStore} instead. Writes that don't change a kept value are
+ * ignored.
+ * <p>
+ * From a change until the rewrite, and whenever the file is missing, from an
+ * older version or dropped because packages changed, there is no snapshot and
+ * readers go to the preferences and {@code PackageManager} as before.
+ * 
+ * @author Harleen Sahni
+ */
+public final class RoutingSnapshotStore implements OnSharedPreferenceChangeListener {
+
+    /** How long changes are collected before the snapshot is rewritten. */
+    private static final long WRITE_DELAY_MILLIS = 1000;
+
+    private static final String FILE_NAME = "routing.snapshot";
+
+    /** Settings the snapshot keeps, from the default shared preferences. */
+    private static final Set<String> SETTING_KEYS = new HashSet<String>(Arrays.asList(Constants.ENABLED_PREF_KEY,
+            Constants.CONSERVATIVE_PREF_KEY, Constants.CONTEXT_ROUTING_KEY, Constants.AUTO_ROUTE_KEY,
+            Constants.HEADSET_BUTTON_KEY, Constants.SEPARATE_PLAY_PAUSE_KEY, Constants.HEADSET_GESTURES_KEY,
+            Constants.GESTURE_TIMEOUT_KEY, Constants.FAN_OUT_KEYS_KEY, Constants.STREAMING_KEY));
+
+    /**
+     * State the snapshot keeps, strings from the {@link StateStore}. Only
+     * what rarely changes, not what routing writes.
+     */
+    private static final Set<String> STATE_KEYS = new HashSet<String>(Arrays.asList(Constants.HIDDEN_APPS_KEY,
+            Constants.FAN_OUT_APPS_KEY, Constants.LAST_MEDIA_BUTTON_RECEIVER));
+
+    private static RoutingSnapshotStore instance;
+
+    private final Context context;
+
+    private final File file;
+
+    private final SharedPreferences preferences;
+
+    private final StateStore stateStore;
+
+    /** Background thread the snapshot is written on. */
+    private final Handler handler;
+
+    /** The current snapshot, null while there is none. */
+    private volatile RoutingSnapshot snapshot;
+
+    /** Whether the file was read. */
+    private volatile boolean loaded;
+
+    /** Guarded by this. Counts the changes, so a write can tell it's late. */
+    private int generation;
+
+    /** Guarded by this. */
+    private boolean writeScheduled;
+
+    private final Runnable writeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private RoutingSnapshotStore(Context context) {
+        this.context = context;
+        file = new File(context.getFilesDir(), FILE_NAME);
+        HandlerThread thread = new HandlerThread("MediaButtonRouter-snapshot", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+
+        // Preferences only keep weak references to their listeners, we're
+        // kept alive by instance.
+        preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        preferences.registerOnSharedPreferenceChangeListener(this);
+        stateStore = StateStore.getInstance(context);
+        stateStore.registerListener(this);
+    }
+
+    /**
+     * Gets the snapshot store for this process.
+     * 
+     * @param context
+     *            Any context, the application context is used.
+     * @return The store.
+     */
+    public static synchronized RoutingSnapshotStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new RoutingSnapshotStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the current snapshot, reading it from disk on first use. When
+     * there is none, a new one is taken in the background.
+     * 
+     * @return The snapshot, or null if there is no current one.
+     */
+    public RoutingSnapshot get() {
+        if (!loaded) {
+            load();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Gets a string from the snapshot, or from the {@link StateStore} if
+     * there's no current snapshot or it doesn't keep the key.
+     */
+    public String getString(String key, String defaultValue) {
+        RoutingSnapshot current = SETTING_KEYS.contains(key) || STATE_KEYS.contains(key) ? get() : null;
+        if (current == null) {
+            return stateStore.getString(key, defaultValue);
+        }
+        String value = current.getValue(key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Gets a boolean setting from the snapshot, or from the preferences if
+     * there's no current snapshot or it doesn't keep the key.
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        RoutingSnapshot current = SETTING_KEYS.contains(key) ? get() : null;
+        if (current == null) {
+            return preferences.getBoolean(key, defaultValue);
+        }
+        String value = current.getValue(key);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+
+    /**
+     * Drops the snapshot because the receivers may have changed, and takes a
+     * new one in the background.
+     */
+    public void invalidate() {
+        synchronized (this) {
+            generation++;
+            snapshot = null;
+            loaded = true;
+            if (file.exists() && !file.delete()) {
+                Log.w(TAG, "Couldn't delete routing snapshot " + file);
+            }
+            scheduleWrite();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        if (SETTING_KEYS.contains(key) || STATE_KEYS.contains(key)) {
+            RoutingSnapshot current = snapshot;
+            if (current != null && equal(current.getValue(key), readValue(key))) {
+                return;
+            }
+            synchronized (this) {
+                generation++;
+                snapshot = null;
+                scheduleWrite();
+            }
+        }
+    }
+
+    /**
+     * Writes a pending snapshot now, blocking until it's on disk.
+     */
+    public void flush() {
+        // Only one write at a time
+        synchronized (writeRunnable) {
+            int writeGeneration;
+            synchronized (this) {
+                handler.removeCallbacks(writeRunnable);
+                if (!writeScheduled) {
+                    return;
+                }
+                writeScheduled = false;
+                writeGeneration = generation;
+            }
+
+            RoutingSnapshot taken = take();
+            File temporary = new File(file.getPath() + ".tmp");
+            try {
+                FileOutputStream out = new FileOutputStream(temporary);
+                try {
+                    out.write(taken.encode());
+                    out.getFD().sync();
+                } finally {
+                    out.close();
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Couldn't write routing snapshot", e);
+                temporary.delete();
+                return;
+            }
+
+            synchronized (this) {
+                if (writeGeneration != generation) {
+                    // Changed meanwhile, the next write has it
+                    temporary.delete();
+                } else if (temporary.renameTo(file)) {
+                    snapshot = taken;
+                    loaded = true;
+                } else {
+                    Log.w(TAG, "Couldn't replace routing snapshot " + file);
+                    temporary.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts the receivers of a snapshot to {@code ResolveInfo}s. They only
+     * carry the package and class names, enough to route and forward to but
+     * not to show.
+     * 
+     * @param routingSnapshot
+     *            The snapshot.
+     * @return The receivers in priority order.
+     */
+    static List<ResolveInfo> toReceivers(RoutingSnapshot routingSnapshot) {
+        List<ResolveInfo> receivers = new ArrayList<ResolveInfo>(routingSnapshot.getReceiverCount());
+        for (int i = 0; i < routingSnapshot.getReceiverCount(); i++) {
+            ResolveInfo receiver = new ResolveInfo();
+            receiver.activityInfo = new ActivityInfo();
+            receiver.activityInfo.packageName = routingSnapshot.getPackageName(i);
+            receiver.activityInfo.name = routingSnapshot.getClassName(i);
+            receivers.add(receiver);
+        }
+        return receivers;
+    }
+
+    /** Reads a kept value as it is now, as the snapshot would have it. */
+    private String readValue(String key) {
+        if (STATE_KEYS.contains(key)) {
+            return stateStore.getString(key, null);
+        }
+        Object value = preferences.getAll().get(key);
+        return value != null ? value.toString() : null;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private void scheduleWrite() {
+        // Called holding this
+        if (!writeScheduled) {
+            writeScheduled = true;
+            handler.postDelayed(writeRunnable, WRITE_DELAY_MILLIS);
+        }
+    }
+
+    private synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        RoutingSnapshot read = null;
+        try {
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = in.getChannel();
+                read = RoutingSnapshot.decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // Not written yet
+        }
+        if (read == null) {
+            Log.d(TAG, "No current routing snapshot, taking one");
+            scheduleWrite();
+        } else if (generation == 0) {
+            snapshot = read;
+        }
+    }
+
+    /**
+     * Takes a snapshot of the receivers, settings and state as they are now.
+     */
+    private RoutingSnapshot take() {
+        List<ResolveInfo> receivers = MediaReceiverRegistry.getInstance(context).getReceivers();
+        List<String> packageNames = new ArrayList<String>(receivers.size());
+        List<String> classNames = new ArrayList<String>(receivers.size());
+        for (ResolveInfo receiver : receivers) {
+            packageNames.add(receiver.activityInfo.packageName);
+            classNames.add(receiver.activityInfo.name);
+        }
+
+        Map<String, String> values = new HashMap<String, String>();
+        Map<String, ?> settings = preferences.getAll();
+        for (String key : SETTING_KEYS) {
+            Object value = settings.get(key);
+            if (value != null) {
+                values.put(key, value.toString());
+            }
+        }
+        for (String key : STATE_KEYS) {
+            values.put(key, stateStore.getString(key, null));
+        }
+        return new RoutingSnapshot(packageNames, classNames, values);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr;
+
+import java.util.Calendar;
+import java.util.List;
+
+import android.content.Context;
+import android.content.pm.ResolveInfo;
+import android.media.AudioManager;
+
+import com.harleensahni.android.mbr.core.ReceiverNames;
+import com.harleensahni.android.mbr.core.SelectionFeatures;
+import com.harleensahni.android.mbr.core.SelectionPredictor;
+
+/**
+ * The {@link SelectionPredictor} of this device, persisted through the
+ * {@link StateStore} under {@link Constants#SELECTION_MODEL_KEY}. Works out the
+ * {@link SelectionFeatures} of a press from the clock, the audio route and the
+ * last acted on receiver.
+ * 
+ * @author Harleen Sahni
+ */
+public final class SelectionModel {
+
+    private static SelectionModel instance;
+
+    private final StateStore stateStore;
+
+    private final MediaReceiverRegistry receiverRegistry;
+
+    private final AudioManager audioManager;
+
+    /** Guarded by this. */
+    private final SelectionPredictor predictor;
+
+    private SelectionModel(Context context) {
+        stateStore = StateStore.getInstance(context);
+        receiverRegistry = MediaReceiverRegistry.getInstance(context);
+        audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        predictor = SelectionPredictor.decode(stateStore.getString(Constants.SELECTION_MODEL_KEY, null));
+    }
+
+    /**
+     * Gets the selection model for this process.
+     * 
+     * @param context
+     *            Any context, the application context is used.
+     * @return The selection model.
+     */
+    public static synchronized SelectionModel getInstance(Context context) {
+        if (instance == null) {
+            instance = new SelectionModel(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Learns that the user picked a receiver for a press. Must be called before
+     * the pick is saved as {@link Constants#SELECTION_ACTED_KEY}. Only reads
+     * memory on the calling thread, the audio route is asked for and the
+     * model updated on the {@link StateStore}'s thread.
+     * 
+     * @param resolveInfo
+     *            The receiver.
+     * @param keyCode
+     *            The remapped key code of the press.
+     */
+    public void recordSelection(ResolveInfo resolveInfo, final int keyCode) {
+        final String id = receiverRegistry.getReceiverNames().getId(resolveInfo);
+        final int hourOfDay = Calendar.getInstance().get(Calendar.HOUR_OF_DAY);
+        final String lastActed = stateStore.getString(Constants.SELECTION_ACTED_KEY, null);
+        final long now = System.currentTimeMillis();
+        stateStore.post(new Runnable() {
+            @Override
+            public void run() {
+                SelectionFeatures features = new SelectionFeatures(keyCode, hourOfDay, getAudioRoute(), lastActed);
+                synchronized (SelectionModel.this) {
+                    predictor.recordSelection(id, features, now);
+                    stateStore.putString(Constants.SELECTION_MODEL_KEY, predictor.encode());
+                }
+            }
+        });
+    }
+
+    /**
+     * Predicts which receiver the user would pick for a press, if confident
+     * enough to skip the selector.
+     * 
+     * @param keyCode
+     *            The remapped key code of the press.
+     * @param candidates
+     *            The receivers the user could pick from.
+     * @param names
+     *            Gets the receivers' ids.
+     * @return The predicted receiver, or null.
+     */
+    public <R> R predict(int keyCode, List<R> candidates, ReceiverNames<R> names) {
+        synchronized (this) {
+            if (predictor.isEmpty()) {
+                return null;
+            }
+        }
+        // Asking the audio manager is a binder call, don't hold the lock
+        SelectionFeatures features = getFeatures(keyCode);
+        synchronized (this) {
+            return predictor.predict(candidates, names, features, SelectionPredictor.MIN_CONFIDENCE,
+                    System.currentTimeMillis());
+        }
+    }
+
+    private SelectionFeatures getFeatures(int keyCode) {
+        return new SelectionFeatures(keyCode, Calendar.getInstance().get(Calendar.HOUR_OF_DAY), getAudioRoute(),
+                stateStore.getString(Constants.SELECTION_ACTED_KEY, null));
+    }
+
+    /**
+     * Asks the audio manager where audio goes, a binder call.
+     */
+    private String getAudioRoute() {
+        if (audioManager.isBluetoothA2dpOn()) {
+            return SelectionFeatures.AUDIO_ROUTE_BLUETOOTH;
+        } else if (audioManager.isWiredHeadsetOn()) {
+            return SelectionFeatures.AUDIO_ROUTE_WIRED;
+        }
+        return SelectionFeatures.AUDIO_ROUTE_SPEAKER;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.KeyEvent;
+
+/**
+ * Which {@link ReceiverSelector} is resumed, published by the selector itself
+ * so the media button receiver can tell whether it is open without asking
+ * the {@code ActivityManager}. Both are in the same process, so a press for an
+ * open selector is handed to it directly instead of being rebroadcast. The
+ * receiver routes on its own thread, so the press is posted to the main thread
+ * the selector runs on. A paused selector, for instance with the screen off,
+ * doesn't count as open.
+ * 
+ * @author Harleen Sahni
+ */
+public final class SelectorVisibility {
+
+    /** The selector while it is resumed, null otherwise. */
+    private static volatile ReceiverSelector resumedSelector;
+
+    /** Posts presses to the selector's thread. */
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private SelectorVisibility() {
+    }
+
+    /**
+     * Checks whether the selector is open and handling media keys.
+     * 
+     * @return Whether the selector is resumed.
+     */
+    public static boolean isOpen() {
+        return resumedSelector != null;
+    }
+
+    /**
+     * Hands a media key event to the open selector, on the main thread. May be
+     * called from any thread. If the selector has gone by the time the event
+     * gets to the main thread, the event is dropped.
+     * 
+     * @param keyEvent
+     *            The key event.
+     * @return Whether a selector was open to take it.
+     */
+    public static boolean deliver(final KeyEvent keyEvent) {
+        if (resumedSelector == null) {
+            return false;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                ReceiverSelector selector = resumedSelector;
+                if (selector != null) {
+                    selector.onMediaKeyEvent(keyEvent);
+                }
+            }
+        });
+        return true;
+    }
+
+    static void onResume(ReceiverSelector selector) {
+        resumedSelector = selector;
+    }
+
+    static void onPause(ReceiverSelector selector) {
+        if (resumedSelector == selector) {
+            resumedSelector = null;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.Editor;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.preference.PreferenceManager;
+
+/**
+ * Write behind store for the state we save while routing and selecting, kept
+ * in the default shared preferences. Writes are visible to reads through the
+ * store right away, and are committed to disk together on a background thread
+ * a little later, so the UI and receiver threads never wait on the disk.
+ * <p>
+ * Writes not yet flushed are lost if the process dies. That is fine for the
+ * state routing and the selector keep here, and
+ * {@link MediaButtonMonitorService} calls {@link #flush()} when it shuts down.
+ * The hidden and fan out apps are user settings though, so
+ * {@link MediaButtonConfigure} has them flushed right away, still in the
+ * background, when it's paused.
+ * 
+ * @author Harleen Sahni
+ */
+public final class StateStore {
+
+    /** How long writes are collected before they're committed together. */
+    private static final long FLUSH_DELAY_MILLIS = 1000;
+
+    private static StateStore instance;
+
+    private final SharedPreferences preferences;
+
+    /** Background thread the flushes run on. */
+    private final Handler handler;
+
+    /** Pending value of a key that is to be removed. */
+    private static final Object REMOVED = new Object();
+
+    /**
+     * Guarded by this. Values not yet committed, Strings, Integers and
+     * {@link #REMOVED}.
+     */
+    private final Map<String, Object> pending = new HashMap<String, Object>();
+
+    /** Guarded by this. */
+    private boolean flushScheduled;
+
+    private final List<OnSharedPreferenceChangeListener> listeners =
+            new CopyOnWriteArrayList<OnSharedPreferenceChangeListener>();
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private StateStore(Context context) {
+        preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        HandlerThread thread = new HandlerThread("MediaButtonRouter-state", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Gets the store for this process.
+     * 
+     * @param context
+     *            Any context, the application context is used.
+     * @return The store.
+     */
+    public static synchronized StateStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new StateStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Registers a listener that is told about writes through the store as
+     * soon as they're made, on the thread that made them.
+     * 
+     * @param listener
+     *            The listener.
+     */
+    public void registerListener(OnSharedPreferenceChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Runs some bookkeeping on the store's background thread, so that the
+     * binder calls it needs don't hold up the caller.
+     * 
+     * @param task
+     *            The task.
+     */
+    public void post(Runnable task) {
+        handler.post(task);
+    }
+
+    /**
+     * Gets a string, including one not yet flushed.
+     */
+    public String getString(String key, String defaultValue) {
+        synchronized (this) {
+            Object value = pending.get(key);
+            if (value == REMOVED) {
+                return defaultValue;
+            } else if (value != null) {
+                return (String) value;
+            }
+        }
+        return preferences.getString(key, defaultValue);
+    }
+
+    /**
+     * Gets an int, including one not yet flushed.
+     */
+    public int getInt(String key, int defaultValue) {
+        synchronized (this) {
+            Object value = pending.get(key);
+            if (value == REMOVED) {
+                return defaultValue;
+            } else if (value != null) {
+                return (Integer) value;
+            }
+        }
+        return preferences.getInt(key, defaultValue);
+    }
+
+    /**
+     * Sets a string, to be committed with the next flush. Setting null
+     * removes the key.
+     */
+    public void putString(String key, String value) {
+        put(key, value == null ? REMOVED : value);
+    }
+
+    /**
+     * Sets an int, to be committed with the next flush.
+     */
+    public void putInt(String key, int value) {
+        put(key, value);
+    }
+
+    /**
+     * Removes a key, to be committed with the next flush. Reads return the
+     * default right away.
+     */
+    public void remove(String key) {
+        put(key, REMOVED);
+    }
+
+    private void put(String key, Object value) {
+        synchronized (this) {
+            pending.put(key, value);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                handler.postDelayed(flushRunnable, FLUSH_DELAY_MILLIS);
+            }
+        }
+        for (OnSharedPreferenceChangeListener listener : listeners) {
+            listener.onSharedPreferenceChanged(preferences, key);
+        }
+    }
+
+    /**
+     * Commits the pending writes on the background thread without waiting
+     * for the usual delay. Doesn't block.
+     */
+    public void flushSoon() {
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            handler.removeCallbacks(flushRunnable);
+            flushScheduled = true;
+            handler.post(flushRunnable);
+        }
+    }
+
+    /**
+     * Commits the pending writes now, blocking until they're on disk.
+     */
+    public void flush() {
+        // Only one commit at a time, so an older batch can't overwrite a
+        // newer one
+        synchronized (flushRunnable) {
+            Map<String, Object> batch;
+            synchronized (this) {
+                handler.removeCallbacks(flushRunnable);
+                flushScheduled = false;
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = new HashMap<String, Object>(pending);
+            }
+
+            Editor editor = preferences.edit();
+            for (Map.Entry<String, Object> entry : batch.entrySet()) {
+                if (entry.getValue() == REMOVED) {
+                    editor.remove(entry.getKey());
+                } else if (entry.getValue() instanceof Integer) {
+                    editor.putInt(entry.getKey(), (Integer) entry.getValue());
+                } else {
+                    editor.putString(entry.getKey(), (String) entry.getValue());
+                }
+            }
+            editor.commit();
+
+            // Values written again meanwhile stay pending for the next flush
+            synchronized (this) {
+                for (Map.Entry<String, Object> entry : batch.entrySet()) {
+                    if (pending.get(entry.getKey()) == entry.getValue()) {
+                        pending.remove(entry.getKey());
+                    }
+                }
+            }
+        }
+    }
+}
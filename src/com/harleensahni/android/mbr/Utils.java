@@ -15,13 +15,11 @@
  */
 package com.harleensahni.android.mbr;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
 
-import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.AlertDialog.Builder;
-import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.DialogInterface;
@@ -30,13 +28,14 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
-import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.text.Html;
 import android.text.Spanned;
 import android.util.Log;
 import android.view.KeyEvent;
 
+import com.harleensahni.android.mbr.core.MediaKeys;
+
 /**
  * Utility class.
  * 
@@ -47,9 +46,12 @@ public final class Utils {
     private static final String TAG = "MediaButtonRouter";
 //    private static final String GOOGLE_MUSIC_RECEIVER = "com.google.blahdfdf";
 
-    public static final int KEYCODE_MEDIA_PLAY = 126;
-    public static final int KEYCODE_MEDIA_PAUSE = 127;
+    public static final int KEYCODE_MEDIA_PLAY = MediaKeys.KEYCODE_MEDIA_PLAY;
+    public static final int KEYCODE_MEDIA_PAUSE = MediaKeys.KEYCODE_MEDIA_PAUSE;
+    public static final int GINGERBREAD_API_LEVEL = 9;
+    public static final int HONEYCOMB_API_LEVEL = 11;
     public static final int ICS_API_LEVEL = 14;
+    public static final int LOLLIPOP_API_LEVEL = 21;
 
     /**
      * Prevent instantiation.
@@ -58,20 +60,6 @@ public final class Utils {
         // Intentionally blank
     }
 
-    /**
-     * Whether the keyCode represents a media button that we handle.
-     * 
-     * @param keyCode
-     * @return
-     */
-    public static boolean isMediaButton(int keyCode) {
-        return keyCode == KeyEvent.KEYCODE_MEDIA_FAST_FORWARD || keyCode == KeyEvent.KEYCODE_MEDIA_NEXT
-                || keyCode == KeyEvent.KEYCODE_MEDIA_PLAY_PAUSE || keyCode == KeyEvent.KEYCODE_MEDIA_PREVIOUS
-                || keyCode == KeyEvent.KEYCODE_MEDIA_REWIND || keyCode == KeyEvent.KEYCODE_MEDIA_STOP
-                || keyCode == KEYCODE_MEDIA_PLAY || keyCode == KEYCODE_MEDIA_PAUSE 
-                || keyCode == KeyEvent.KEYCODE_HEADSETHOOK;
-    }
-
     /**
      * Forwards {@code keyCode} to receiver specified as two key events, one for
      * up and one for down. Optionally launches the application for the
@@ -81,27 +69,11 @@ public final class Utils {
      * @param selectedReceiver
      * @param launch
      * @param keyCode
-     * @param cleanUpReceiver
      */
     public static void forwardKeyCodeToComponent(Context context, ComponentName selectedReceiver, boolean launch,
-            int keyCode, BroadcastReceiver cleanUpReceiver) {
-
-        Intent mediaButtonDownIntent = new Intent(Intent.ACTION_MEDIA_BUTTON);
-        KeyEvent downKe = new KeyEvent(SystemClock.uptimeMillis(), SystemClock.uptimeMillis(), KeyEvent.ACTION_DOWN,
-                keyCode, 0);
-        mediaButtonDownIntent.putExtra(Intent.EXTRA_KEY_EVENT, downKe);
-
-        Intent mediaButtonUpIntent = new Intent(Intent.ACTION_MEDIA_BUTTON);
-        KeyEvent upKe = new KeyEvent(SystemClock.uptimeMillis(), SystemClock.uptimeMillis(), KeyEvent.ACTION_UP,
-                keyCode, 0);
-        mediaButtonUpIntent.putExtra(Intent.EXTRA_KEY_EVENT, upKe);
-
-        mediaButtonDownIntent.setComponent(selectedReceiver);
-        mediaButtonUpIntent.setComponent(selectedReceiver);
+            int keyCode) {
 
-        /* COMMENTED OUT FOR MARKET RELEASE Log.i(TAG, "Forwarding Down and Up intent events to " + selectedReceiver + " Down Intent: "
-                + mediaButtonDownIntent + " Down key:" + downKe + " Up Intent: " + mediaButtonUpIntent + " Up key:"
-                + upKe); */
+        /* COMMENTED OUT FOR MARKET RELEASE Log.i(TAG, "Forwarding Down and Up intent events to " + selectedReceiver + " key:" + keyCode); */
         // We start the selected application because some apps broadcast
         // receivers won't do anything with the intents unless the
         // application is open. (This this is only if the app isn't
@@ -119,46 +91,87 @@ public final class Utils {
             }
         }
 
-        context.sendOrderedBroadcast(mediaButtonDownIntent, null, cleanUpReceiver, null, Activity.RESULT_OK, null, null);
-        context.sendOrderedBroadcast(mediaButtonUpIntent, null, cleanUpReceiver, null, Activity.RESULT_OK, null, null);
+        MediaButtonIntents.send(context, selectedReceiver, keyCode);
+    }
+
+    /**
+     * Forwards {@code keyCode} to receiver specified as two key events, one for
+     * up and one for down.
+     * 
+     * @param context
+     * @param flattenedReceiver
+     *            The receiver's flattened component name, as stored in
+     *            {@link Constants#LAST_MEDIA_BUTTON_RECEIVER}.
+     * @param keyCode
+     */
+    public static void forwardKeyCodeToComponent(Context context, String flattenedReceiver, int keyCode) {
+        MediaButtonIntents.send(context, flattenedReceiver, keyCode);
+    }
+
+    /**
+     * Forwards a key event to a receiver as it is, keeping its down time,
+     * repeat count and flags, so the receiver can tell when a key is held.
+     * 
+     * @param context
+     *            The context.
+     * @param selectedReceiver
+     *            The receiver.
+     * @param keyEvent
+     *            The key event.
+     */
+    public static void forwardKeyEventToComponent(Context context, ComponentName selectedReceiver, KeyEvent keyEvent) {
+        MediaButtonIntents.send(context, selectedReceiver, keyEvent);
+    }
 
+    /**
+     * Forwards a key event to a receiver as it is.
+     * 
+     * @param context
+     *            The context.
+     * @param flattenedReceiver
+     *            The receiver's flattened component name.
+     * @param keyEvent
+     *            The key event.
+     */
+    public static void forwardKeyEventToComponent(Context context, String flattenedReceiver, KeyEvent keyEvent) {
+        MediaButtonIntents.send(context, flattenedReceiver, keyEvent);
     }
 
     /**
      * Gets the list of available media receivers, optionally filtering out ones
-     * the user has indicated should be hidden in preferences.
+     * the user has indicated should be hidden in preferences. The receivers come
+     * from the {@link MediaReceiverRegistry}, so this doesn't need to talk to
+     * the {@code PackageManager}.
      * 
-     * @param packageManager
-     *            The {@code PackageManager} used to retrieve media button
-     *            receivers.
+     * @param context
+     *            The context.
      * 
      * @param filterHidden
      *            Whether user-hidden media receivers should be shown.
      * @return The list of {@code ResolveInfo} for different media button
+     *         receivers. Callers are free to modify it.
+     */
+    public static List<ResolveInfo> getMediaReceivers(Context context, boolean filterHidden) {
+        MediaReceiverRegistry registry = MediaReceiverRegistry.getInstance(context);
+        return new ArrayList<ResolveInfo>(filterHidden ? registry.getVisibleReceivers() : registry.getReceivers());
+    }
+
+    /**
+     * Queries the {@code PackageManager} for all of the media button receivers.
+     * This is a binder call, use {@link #getMediaReceivers(Context, boolean)}
+     * instead unless you are the {@link MediaReceiverRegistry}.
+     * 
+     * @param packageManager
+     *            The {@code PackageManager} used to retrieve media button
+     *            receivers.
+     * @return The list of {@code ResolveInfo} for different media button
      *         receivers.
      */
-    public static List<ResolveInfo> getMediaReceivers(PackageManager packageManager, boolean filterHidden,
-            Context context) {
+    public static List<ResolveInfo> queryMediaReceivers(PackageManager packageManager) {
         Intent mediaButtonIntent = new Intent(Intent.ACTION_MEDIA_BUTTON);
 
-        List<ResolveInfo> mediaReceivers = packageManager.queryBroadcastReceivers(mediaButtonIntent,
-                PackageManager.GET_INTENT_FILTERS | PackageManager.GET_RESOLVED_FILTER);
-        if (filterHidden) {
-
-            String hiddenReceiverIdsString = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                    Constants.HIDDEN_APPS_KEY, "");
-            List<String> hiddenIds = Arrays.asList(hiddenReceiverIdsString.split(","));
-
-            for (int i = mediaReceivers.size() - 1; i >= 0; i--) {
-                ResolveInfo mediaReceiverResolveInfo = mediaReceivers.get(i);
-              
-                if (hiddenIds.contains(getMediaReceiverUniqueID(mediaReceiverResolveInfo, packageManager))) {
-                    mediaReceivers.remove(i);
-                }
-            }
-        }
-
-        return mediaReceivers;
+        return packageManager.queryBroadcastReceivers(mediaButtonIntent, PackageManager.GET_INTENT_FILTERS
+                | PackageManager.GET_RESOLVED_FILTER);
     }
     
     public static String getMediaReceiverUniqueID(ResolveInfo resolveInfo, PackageManager packageManager) {
@@ -214,14 +227,6 @@ public final class Utils {
         return null;
     }
 
-    public static int getAdjustedKeyCode(KeyEvent keyEvent) {
-        int keyCode = keyEvent.getKeyCode();
-        if (keyCode == KEYCODE_MEDIA_PLAY || keyCode == KEYCODE_MEDIA_PAUSE) {
-            keyCode = KeyEvent.KEYCODE_MEDIA_PLAY_PAUSE;
-        }
-        return keyCode;
-    }
-
     /**
      * Whether we have to go through AudioManager's register media button
      * receiver where this is only a single media button receiver. See ticket
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.receivers;
+
+import static com.harleensahni.android.mbr.Constants.TAG;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+import android.view.KeyEvent;
+
+import com.harleensahni.android.mbr.Utils;
+
+/**
+ * The escape from a press that skipped the selector because we predicted who
+ * the user would pick, or the user picked them before in the same audio
+ * context. Pressing stop, or holding the headset button, shortly after stops
+ * the predicted app and opens the selector for the original press, as if it
+ * had never been routed. Stop is used so that quickly pressing next twice, or
+ * play then pause, still goes to the app.
+ * 
+ * @author Harleen Sahni
+ */
+final class AutoRouteUndo {
+
+    /** How long after an auto routed press it can be undone. */
+    static final long UNDO_WINDOW_MILLIS = 3000;
+
+    private static final AutoRouteUndo instance = new AutoRouteUndo();
+
+    /** The auto routed intent, null if there is nothing to undo. */
+    private Intent intent;
+
+    private ComponentName receiver;
+
+    /** Uptime of the auto routed press. */
+    private long armedTime;
+
+    /** Uptime until which the press can be undone. */
+    private long deadline;
+
+    /** Down time of the stop press that undoes, so its repeats and up follow its down. */
+    private long undoDownTime = -1;
+
+    private AutoRouteUndo() {
+        // Intentionally blank
+    }
+
+    static AutoRouteUndo getInstance() {
+        return instance;
+    }
+
+    /**
+     * Remembers a press that was auto routed, so it can be undone. Stop
+     * presses and presses without a time can't be.
+     * 
+     * @param intent
+     *            The media button intent that was routed.
+     * @param receiver
+     *            The receiver it went to.
+     * @param keyCode
+     *            The remapped key code that was forwarded.
+     * @param eventTime
+     *            Uptime of the press.
+     */
+    synchronized void arm(Intent intent, ComponentName receiver, int keyCode, long eventTime) {
+        if (keyCode == KeyEvent.KEYCODE_MEDIA_STOP || eventTime <= 0) {
+            this.intent = null;
+            this.receiver = null;
+            return;
+        }
+        this.intent = intent;
+        this.receiver = receiver;
+        armedTime = eventTime;
+        deadline = eventTime + UNDO_WINDOW_MILLIS;
+    }
+
+    /**
+     * @param uptime
+     *            Uptime of a press.
+     * @return Whether the press is soon enough after the last auto routed
+     *         press to undo it.
+     */
+    synchronized boolean isArmed(long uptime) {
+        return intent != null && uptime > 0 && uptime >= armedTime && uptime < deadline;
+    }
+
+    /**
+     * Decides whether a key event is part of a stop press that undoes the
+     * last auto routed press. Decided on the down, by its down time, and the
+     * repeats and up of the press get the same answer.
+     * 
+     * @param keyCode
+     *            The remapped key code of the event.
+     * @param action
+     *            The event's action.
+     * @param downTime
+     *            Uptime of the press's down.
+     * @return Whether the event undoes the last auto routed press.
+     */
+    synchronized boolean isUndo(int keyCode, int action, long downTime) {
+        if (keyCode != KeyEvent.KEYCODE_MEDIA_STOP || downTime <= 0) {
+            return false;
+        }
+        if (downTime == undoDownTime) {
+            return true;
+        }
+        if (action == KeyEvent.ACTION_DOWN && isArmed(downTime)) {
+            undoDownTime = downTime;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stops the app the last press was auto routed to and shows the selector
+     * for that press instead.
+     * 
+     * @param context
+     *            The context.
+     */
+    void undo(Context context) {
+        Intent undoneIntent;
+        ComponentName undoneReceiver;
+        synchronized (this) {
+            undoneIntent = intent;
+            undoneReceiver = receiver;
+            intent = null;
+            receiver = null;
+            undoDownTime = -1;
+        }
+        if (undoneIntent == null) {
+            return;
+        }
+        Log.d(TAG, "Undoing auto routed press to " + undoneReceiver);
+        Utils.forwardKeyCodeToComponent(context, undoneReceiver, false, KeyEvent.KEYCODE_MEDIA_STOP);
+        MediaButtonReceiver.showSelector(context, undoneIntent,
+                (KeyEvent) undoneIntent.getExtras().get(Intent.EXTRA_KEY_EVENT));
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.receivers;
+
+import static com.harleensahni.android.mbr.Constants.TAG;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.KeyEvent;
+
+import com.harleensahni.android.mbr.DeadlineTimer;
+import com.harleensahni.android.mbr.MediaKeySettings;
+import com.harleensahni.android.mbr.core.GestureRecognizer;
+import com.harleensahni.android.mbr.core.GestureRecognizer.Gesture;
+
+/**
+ * Turns clicks and holds of a headset's single button into media key presses.
+ * A single click is play/pause, a double click next, a triple click previous
+ * and holding the button opens the selector.
+ * <p>
+ * The resulting key is broadcast to {@link MediaButtonReceiver} alone, so it
+ * goes through the usual routing again without other players seeing it, as
+ * if ours were the only receiver registered. If routing passes it through, it
+ * is broadcast again to everyone, the way a real press would have gone on.
+ * Deadlines run on the {@link RoutingPipeline} thread.
+ * 
+ * @author Harleen Sahni
+ */
+final class HeadsetGestures {
+
+    /** How long the button has to be held to open the selector. */
+    private static final long LONG_PRESS_MILLIS = 800;
+
+    /** Marks a press we made from a gesture and sent to our receiver only. */
+    private static final String EXTRA_GESTURE = "com.harleensahni.android.mbr.GESTURE";
+
+    /** Marks a gesture press we passed on, which our receiver leaves alone. */
+    private static final String EXTRA_PASSED_ON = "com.harleensahni.android.mbr.GESTURE_PASSED_ON";
+
+    private static HeadsetGestures instance;
+
+    private final Context context;
+
+    /** Guarded by itself, events come from the main and routing threads. */
+    private final GestureRecognizer recognizer;
+
+    private final DeadlineTimer timer;
+
+    private HeadsetGestures(Context context) {
+        this.context = context;
+        recognizer = new GestureRecognizer(MediaKeySettings.getInstance(context).getGestureTimeoutMillis(),
+                LONG_PRESS_MILLIS);
+        timer = new DeadlineTimer(RoutingPipeline.getInstance().getHandler(), new Runnable() {
+            @Override
+            public void run() {
+                onDeadline();
+            }
+        });
+    }
+
+    static synchronized HeadsetGestures getInstance(Context context) {
+        if (instance == null) {
+            instance = new HeadsetGestures(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Handles a headset button event.
+     * 
+     * @param keyEvent
+     *            The event.
+     */
+    void onKey(KeyEvent keyEvent) {
+        long clickTimeoutMillis = MediaKeySettings.getInstance(context).getGestureTimeoutMillis();
+        Gesture gesture;
+        synchronized (recognizer) {
+            recognizer.setClickTimeoutMillis(clickTimeoutMillis);
+            gesture = recognizer.onKey(keyEvent.getAction(), keyEvent.getEventTime(), SystemClock.uptimeMillis());
+            scheduleDeadline();
+        }
+        if (gesture != null) {
+            perform(gesture);
+        }
+    }
+
+    /**
+     * Checks whether a media button intent is a press made from a gesture,
+     * which only our receiver got.
+     * 
+     * @param intent
+     *            The media button intent.
+     * @return Whether it came from {@link #press(int)}.
+     */
+    static boolean isGesturePress(Intent intent) {
+        return intent.getBooleanExtra(EXTRA_GESTURE, false);
+    }
+
+    /**
+     * Checks whether a media button intent is a gesture press that routing
+     * already passed through and {@link #passOn(Context, Intent)} sent again.
+     * 
+     * @param intent
+     *            The media button intent.
+     * @return Whether our receiver should leave it to the others.
+     */
+    static boolean isPassedOn(Intent intent) {
+        return intent.getBooleanExtra(EXTRA_PASSED_ON, false);
+    }
+
+    /**
+     * Broadcasts a gesture press that routing passed through to all media
+     * button receivers, since the one it was sent to was only ours.
+     * 
+     * @param context
+     *            The context.
+     * @param intent
+     *            The gesture press.
+     */
+    static void passOn(Context context, Intent intent) {
+        Intent passedOn = new Intent(intent);
+        passedOn.setComponent(null);
+        passedOn.removeExtra(EXTRA_GESTURE);
+        passedOn.putExtra(EXTRA_PASSED_ON, true);
+        context.sendOrderedBroadcast(passedOn, null);
+    }
+
+    /**
+     * Checks whether the button is held, in which case the rest of the press
+     * must come here even if a long press has opened the selector meanwhile.
+     * 
+     * @return Whether a press is being tracked.
+     */
+    boolean isHolding() {
+        synchronized (recognizer) {
+            return recognizer.isPressed();
+        }
+    }
+
+    private void onDeadline() {
+        Gesture gesture;
+        synchronized (recognizer) {
+            gesture = recognizer.onDeadline(SystemClock.uptimeMillis());
+            scheduleDeadline();
+        }
+        if (gesture != null) {
+            perform(gesture);
+        }
+    }
+
+    private void scheduleDeadline() {
+        long deadline = recognizer.getDeadline();
+        if (deadline == GestureRecognizer.NO_DEADLINE) {
+            timer.cancel();
+        } else {
+            timer.schedule(deadline);
+        }
+    }
+
+    private void perform(Gesture gesture) {
+        Log.d(TAG, "Headset gesture: " + gesture);
+        switch (gesture) {
+        case SINGLE_CLICK:
+            press(KeyEvent.KEYCODE_MEDIA_PLAY_PAUSE);
+            break;
+        case DOUBLE_CLICK:
+            press(KeyEvent.KEYCODE_MEDIA_NEXT);
+            break;
+        case TRIPLE_CLICK:
+            press(KeyEvent.KEYCODE_MEDIA_PREVIOUS);
+            break;
+        case LONG_PRESS:
+            // Shortly after an auto routed press, holding undoes it instead
+            long now = SystemClock.uptimeMillis();
+            AutoRouteUndo undo = AutoRouteUndo.getInstance();
+            if (undo.isArmed(now)) {
+                undo.undo(context);
+                break;
+            }
+            // The selector forwards play/pause to whatever the user picks
+            KeyEvent keyEvent = new KeyEvent(now, now, KeyEvent.ACTION_UP, KeyEvent.KEYCODE_MEDIA_PLAY_PAUSE, 0);
+            Intent intent = new Intent(Intent.ACTION_MEDIA_BUTTON);
+            intent.putExtra(Intent.EXTRA_KEY_EVENT, keyEvent);
+            MediaButtonReceiver.showSelector(context, intent, keyEvent);
+            break;
+        }
+    }
+
+    /**
+     * Broadcasts a down and up of {@code keyCode} to our receiver as if a
+     * button had been pressed. Ordered, so routing can abort it as usual.
+     */
+    private void press(int keyCode) {
+        long now = SystemClock.uptimeMillis();
+        Intent downIntent = new Intent(Intent.ACTION_MEDIA_BUTTON);
+        downIntent.setClass(context, MediaButtonReceiver.class);
+        downIntent.putExtra(EXTRA_GESTURE, true);
+        downIntent.putExtra(Intent.EXTRA_KEY_EVENT, new KeyEvent(now, now, KeyEvent.ACTION_DOWN, keyCode, 0));
+        context.sendOrderedBroadcast(downIntent, null);
+
+        Intent upIntent = new Intent(Intent.ACTION_MEDIA_BUTTON);
+        upIntent.setClass(context, MediaButtonReceiver.class);
+        upIntent.putExtra(EXTRA_GESTURE, true);
+        upIntent.putExtra(Intent.EXTRA_KEY_EVENT, new KeyEvent(now, now, KeyEvent.ACTION_UP, keyCode, 0));
+        context.sendOrderedBroadcast(upIntent, null);
+    }
+}
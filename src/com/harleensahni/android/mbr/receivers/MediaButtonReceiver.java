@@ -17,30 +17,46 @@ package com.harleensahni.android.mbr.receivers;
 
 import static com.harleensahni.android.mbr.Constants.TAG;
 
-import java.util.ArrayList;
 import java.util.List;
 
-import android.app.ActivityManager;
-import android.app.ActivityManager.RunningServiceInfo;
-import android.app.ActivityManager.RunningTaskInfo;
 import android.app.KeyguardManager;
 import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.pm.ResolveInfo;
 import android.media.AudioManager;
+import android.os.Build;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
-import android.preference.PreferenceManager;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.KeyEvent;
 
 import com.harleensahni.android.mbr.Constants;
+import com.harleensahni.android.mbr.ContextRouting;
+import com.harleensahni.android.mbr.FanOutDispatcher;
+import com.harleensahni.android.mbr.MediaKeySettings;
+import com.harleensahni.android.mbr.MediaReceiverRegistry;
+import com.harleensahni.android.mbr.PlaybackTracker;
+import com.harleensahni.android.mbr.PressLatency;
 import com.harleensahni.android.mbr.ReceiverSelector;
 import com.harleensahni.android.mbr.ReceiverSelectorLocked;
+import com.harleensahni.android.mbr.RoutingSnapshotStore;
+import com.harleensahni.android.mbr.SelectorVisibility;
+import com.harleensahni.android.mbr.SelectionModel;
+import com.harleensahni.android.mbr.StateStore;
 import com.harleensahni.android.mbr.Utils;
+import com.harleensahni.android.mbr.core.DuplicateEventFilter;
+import com.harleensahni.android.mbr.core.HeldKeys;
+import com.harleensahni.android.mbr.core.KeyTable;
+import com.harleensahni.android.mbr.core.LatencyStats.Stage;
+import com.harleensahni.android.mbr.core.ReceiverDirectory;
+import com.harleensahni.android.mbr.core.ReceiverNames;
+import com.harleensahni.android.mbr.core.RouteDecision;
+import com.harleensahni.android.mbr.core.RouteDecision.Route;
+import com.harleensahni.android.mbr.core.Router;
+import com.harleensahni.android.mbr.core.RoutingState;
 
 /**
  * Handles routing media button intents to application that is playing music
@@ -49,189 +65,304 @@ import com.harleensahni.android.mbr.Utils;
  */
 public class MediaButtonReceiver extends BroadcastReceiver {
 
-    @Override
-    public void onReceive(Context context, Intent intent) {
+    /** Key events this process has received, a new receiver is made for each. */
+    private static final DuplicateEventFilter duplicates = new DuplicateEventFilter();
 
-        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
-        if (!preferences.getBoolean(Constants.ENABLED_PREF_KEY, true)) {
-            return;
+    /** Where streamed presses went. */
+    private static final HeldKeys<HeldPress> heldKeys = new HeldKeys<HeldPress>();
+
+    /** Where the down of a streamed press went, for its repeats and up to follow. */
+    private static final class HeldPress {
+        /** The flattened name of the receiver. */
+        final String receiver;
+        /** Whether the down's broadcast was aborted. */
+        final boolean abort;
+
+        HeldPress(String receiver, boolean abort) {
+            this.receiver = receiver;
+            this.abort = abort;
         }
+    }
 
-        ActivityManager activityManager = ((ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE));
-
-        if (Utils.isHandlingThroughSoleReceiver()) {
-            // Try to figure out if our selector is currently open
-            List<RunningTaskInfo> runningTasks = activityManager.getRunningTasks(1);
-            if (runningTasks.size() > 0) {
-                String className = runningTasks.get(0).topActivity.getClassName();
-                if (className.equals(ReceiverSelector.class.getName())
-                        || className.equals(ReceiverSelectorLocked.class.getName())) {
-                    Log.d(TAG, "Selector is already open, rebroadcasting for selector only.");
-                    Intent receiver_selector_intent = new Intent(Constants.INTENT_ACTION_VIEW_MEDIA_LIST_KEYPRESS);
-                    receiver_selector_intent.putExtras(intent);
-                    context.sendBroadcast(receiver_selector_intent);
-                    if (isOrderedBroadcast()) {
-                        abortBroadcast();
-                    }
-                    return;
-                }
+    /**
+     * The device state the router looks at, fetched only when the router asks
+     * for it.
+     */
+    private static final class DeviceRoutingState implements RoutingState {
+        private final Context context;
+        private final KeyEvent keyEvent;
+        private final RoutingSnapshotStore settings;
+
+        DeviceRoutingState(Context context, KeyEvent keyEvent) {
+            this.context = context;
+            this.keyEvent = keyEvent;
+            settings = RoutingSnapshotStore.getInstance(context);
+        }
+
+        @Override
+        public boolean isSelectorOpen() {
+            // Before ICS the selector gets the broadcast ahead of us
+            return Utils.isHandlingThroughSoleReceiver() && SelectorVisibility.isOpen();
+        }
+
+        @Override
+        public boolean isFanOut(int keyCode) {
+            return FanOutDispatcher.getInstance(context).isFanOut(keyCode);
+        }
+
+        @Override
+        public boolean isMusicActive() {
+            return ((AudioManager) context.getSystemService(Context.AUDIO_SERVICE)).isMusicActive();
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return settings.getBoolean(Constants.STREAMING_KEY, false);
+        }
+
+        @Override
+        public String getLastMediaButtonReceiver() {
+            return settings.getString(Constants.LAST_MEDIA_BUTTON_RECEIVER, null);
+        }
+
+        @Override
+        public List<String> getPlayingPackageNames() {
+            return PlaybackTracker.getInstance(context).getPlayingPackageNames(keyEvent.getKeyCode(),
+                    keyEvent.getDownTime(), keyEvent.getAction() == KeyEvent.ACTION_UP);
+        }
+
+        @Override
+        public boolean isConservative() {
+            return settings.getBoolean(Constants.CONSERVATIVE_PREF_KEY, false);
+        }
+
+        @Override
+        public String getContextReceiverId() {
+            if (!settings.getBoolean(Constants.CONTEXT_ROUTING_KEY, false)) {
+                return null;
             }
+            return ContextRouting.getInstance(context).getReceiverId();
         }
 
-        // Sometimes we take too long finish and Android kills
-        // us and forwards the intent to another broadcast receiver. If this
-        // keeps being a problem, than we should always return immediately and
-        // handle forwarding the intent in another thread
+        @Override
+        public <R> R predictReceiver(int keyCode, List<R> candidates, ReceiverNames<R> names) {
+            if (!settings.getBoolean(Constants.AUTO_ROUTE_KEY, false)) {
+                return null;
+            }
+            return SelectionModel.getInstance(context).predict(keyCode, candidates, names);
+        }
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        final long receivedUptime = SystemClock.uptimeMillis();
+        final long receivedNanos = System.nanoTime();
+
+        // Only cheap, in memory checks happen here. Anything that needs a
+        // binder call happens in route, which runs on the routing pipeline so
+        // that we return immediately. Taking too long here used to get us
+        // killed by Android, which then forwarded the intent to another
+        // broadcast receiver.
+        if (!RoutingSnapshotStore.getInstance(context).getBoolean(Constants.ENABLED_PREF_KEY, true)) {
+            return;
+        }
 
         // TODO Handle the case where there is only 0 or 1 media receivers
         // besides ourself by disabling our media receiver
-        if (Intent.ACTION_MEDIA_BUTTON.equals(intent.getAction())) {
-            /* COMMENTED OUT FOR MARKET RELEASE Log.i(TAG, "Media Button Receiver: received media button intent: " + intent); */
-
-            KeyEvent keyEvent = (KeyEvent) intent.getExtras().get(Intent.EXTRA_KEY_EVENT);
-            int keyCode = Utils.getAdjustedKeyCode(keyEvent);
-
-            // Don't want to capture volume buttons
-            if (Utils.isMediaButton(keyCode)) {
-                /* COMMENTED OUT FOR MARKET RELEASE Log.i(TAG, "Media Button Receiver: handling legitimate media key event: " + keyEvent); */
-
-                AudioManager audioManager = ((AudioManager) context.getSystemService(Context.AUDIO_SERVICE));
-
-                if (audioManager.isMusicActive()) {
-                    String last_media_button_receiver = preferences.getString(Constants.LAST_MEDIA_BUTTON_RECEIVER,
-                            null);
-
-                    if (last_media_button_receiver == null) {
-
-                        // XXX Need to improve this behavior, somethings doesn't
-                        // work. For instance, if you select "Listen" App, and
-                        // then
-                        // hit next,
-                        // the built in music app handles it because it has a
-                        // higher
-                        // priority. If we could change priorities on app
-                        // selection
-                        // and have it stick,
-                        // would probably be good enough to handle this.
-                        // One thing to do would be to add specific classes that
-                        // check for each knowhn app if our generic way doesn't
-                        // work
-                        // well for them
-                        Log.d(TAG, "Media Button Receiver: may pass on event because music is already playing: "
-                                + keyEvent);
-
-                        // Try to best guess who is playing the music based off
-                        // of
-                        // running foreground services.
-
-                        // XXX Move stuff like receivers to service so we can
-                        // cache
-                        // it. Doing too much stuff here
-                        List<ResolveInfo> receivers = Utils.getMediaReceivers(context.getPackageManager(), false, null);
-
-                        // Remove our app from the list so users can't select
-                        // it.
-                        if (receivers != null) {
-
-                            List<RunningServiceInfo> runningServices = activityManager
-                                    .getRunningServices(Integer.MAX_VALUE);
-                            // Only need to look at services that are foreground
-                            // and started
-                            List<RunningServiceInfo> candidateServices = new ArrayList<ActivityManager.RunningServiceInfo>();
-                            for (RunningServiceInfo runningService : runningServices) {
-                                if (runningService.started && runningService.foreground) {
-                                    candidateServices.add(runningService);
-                                }
-                            }
-
-                            boolean matched = false;
-                            for (ResolveInfo resolveInfo : receivers) {
-                                if (MediaButtonReceiver.class.getName().equals(resolveInfo.activityInfo.name)) {
-                                    continue;
-                                }
-
-                                // Find any service that's package matches that
-                                // of a
-                                // receivers.
-                                for (RunningServiceInfo candidateService : candidateServices) {
-                                    if (candidateService.foreground
-                                            && candidateService.started
-                                            && resolveInfo.activityInfo.packageName.equals(candidateService.service
-                                                    .getPackageName())) {
-                                        if (keyEvent.getAction() == KeyEvent.ACTION_UP) {
-                                            Utils.forwardKeyCodeToComponent(context,
-                                                    new ComponentName(resolveInfo.activityInfo.packageName,
-                                                            resolveInfo.activityInfo.name), false, keyCode, null);
-                                        }
-                                        if (isOrderedBroadcast()) {
-                                            abortBroadcast();
-                                        }
-                                        matched = true;
-                                        /* COMMENTED OUT FOR MARKET RELEASE Log.i(TAG, "Media Button Receiver: Music playing and passed on event : "
-                                                + keyEvent + " to " + resolveInfo.activityInfo.name); */
-                                        break;
-                                    }
-                                }
-                                if (matched) {
-                                    // TODO Need to handle case with multiple
-                                    // matches, maybe by showing selector
-                                    break;
-                                }
-                            }
-                            if (!matched) {
-                                if (preferences.getBoolean(Constants.CONSERVATIVE_PREF_KEY, false)) {
-                                    if (isOrderedBroadcast()) {
-                                        abortBroadcast();
-                                    }
-                                    /* COMMENTED OUT FOR MARKET RELEASE Log.i(TAG,
-                                            "Media Button Receiver: No Receivers found playing music. Intent broadcast will be aborted."); */
-                                    if (keyEvent.getAction() == KeyEvent.ACTION_UP) {
-                                        showSelector(context, intent, keyEvent);
-                                    }
-
-                                } else {
-                                    /* COMMENTED OUT FOR MARKET RELEASE Log.i(TAG,
-                                            "Media Button Receiver: No Receivers found playing music. Intent will use regular priorities."); */
-                                }
-                            }
-                        }
-
-                        return;
-                    } else {
-                        if (keyEvent.getAction() == KeyEvent.ACTION_UP) {
-                            Utils.forwardKeyCodeToComponent(context,
-                                    ComponentName.unflattenFromString(last_media_button_receiver), false, keyCode, null);
-                        }
-                        return;
-                    }
-                }
+        if (!Intent.ACTION_MEDIA_BUTTON.equals(intent.getAction())) {
+            return;
+        }
+        /* COMMENTED OUT FOR MARKET RELEASE Log.i(TAG, "Media Button Receiver: received media button intent: " + intent); */
 
-                // No music playing
-                if (isOrderedBroadcast()) {
-                    abortBroadcast();
-                }
+        // A headset gesture we already routed and passed on to everyone else
+        if (HeadsetGestures.isPassedOn(intent)) {
+            return;
+        }
+
+        final KeyEvent keyEvent = (KeyEvent) intent.getExtras().get(Intent.EXTRA_KEY_EVENT);
+
+        // Don't want to capture volume buttons
+        final KeyTable keyTable = MediaKeySettings.getInstance(context).getKeyTable();
+        if (!keyTable.isMediaKey(keyEvent.getKeyCode())) {
+            return;
+        }
+
+        // Some bluetooth stacks send the same event twice. Nobody should act
+        // on it again, so keep it from lower priority receivers too.
+        if (duplicates.isDuplicate(keyEvent.getEventTime(), keyEvent.getKeyCode(), keyEvent.getAction(),
+                keyEvent.getDeviceId(), receivedUptime)) {
+            Log.d(TAG, "Media Button Receiver: dropping duplicate " + keyEvent);
+            if (isOrderedBroadcast()) {
+                abortBroadcast();
+            }
+            return;
+        }
 
-                if (keyEvent.getAction() == KeyEvent.ACTION_UP) {
-                    List<ResolveInfo> receivers = Utils.getMediaReceivers(context.getPackageManager(), true, context);
-
-                    if (receivers.size() == 2) {
-                        for (ResolveInfo resolveInfo : receivers) {
-                            if (!MediaButtonReceiver.class.getName().equals(resolveInfo.activityInfo.name)) {
-                                // Not using last last_media_button_receiver
-                                // since we want this feature to work just as
-                                // well on Android version < 4.0
-                                Utils.forwardKeyCodeToComponent(context, new ComponentName(
-                                        resolveInfo.activityInfo.packageName, resolveInfo.activityInfo.name), false,
-                                        keyCode, null);
-                                break;
-                            }
-                        }
-                    } else {
-                        showSelector(context, intent, keyEvent);
-                    }
+        if (Build.VERSION.SDK_INT >= Utils.HONEYCOMB_API_LEVEL) {
+            final Context applicationContext = context.getApplicationContext();
+            final Intent mediaButtonIntent = intent;
+            final PendingBroadcast broadcast = new PendingBroadcast.Async(this);
+            RoutingPipeline.getInstance().submit(broadcast, new Runnable() {
+                @Override
+                public void run() {
+                    route(applicationContext, mediaButtonIntent, keyEvent, keyTable, broadcast, receivedUptime,
+                            receivedNanos);
                 }
+            });
+        } else {
+            route(context, intent, keyEvent, keyTable, new PendingBroadcast.Inline(this), receivedUptime,
+                    receivedNanos);
+        }
+    }
+
+    /**
+     * Decides who should handle a media button press and forwards it to them,
+     * or shows the selector if we can't tell.
+     * 
+     * @param context
+     *            The context.
+     * @param intent
+     *            The media button intent.
+     * @param keyEvent
+     *            The key event from the intent.
+     * @param keyTable
+     *            How to classify and remap the key event.
+     * @param broadcast
+     *            The broadcast being routed.
+     * @param receivedUptime
+     *            Uptime at which {@link #onReceive} got the press.
+     * @param receivedNanos
+     *            {@link System#nanoTime()} at which {@link #onReceive} got the
+     *            press.
+     */
+    private void route(Context context, Intent intent, KeyEvent keyEvent, KeyTable keyTable,
+            PendingBroadcast broadcast, long receivedUptime, long receivedNanos) {
+        long routingNanos = System.nanoTime();
+        DeviceRoutingState state = new DeviceRoutingState(context, keyEvent);
+
+        // Headset clicks and holds are turned into presses of other keys,
+        // which come back through here. While the selector is open it takes
+        // the clicks as they are, except for the rest of a hold that opened
+        // it, which would otherwise pick for the user.
+        if (keyEvent.getKeyCode() == KeyEvent.KEYCODE_HEADSETHOOK
+                && MediaKeySettings.getInstance(context).isHeadsetGestures()
+                && (!state.isSelectorOpen() || HeadsetGestures.getInstance(context).isHolding())) {
+            broadcast.abort();
+            HeadsetGestures.getInstance(context).onKey(keyEvent);
+            return;
+        }
+
+        // The repeats and up of a streamed press go where its down went, and
+        // reach lower priority receivers only if the down did
+        HeldPress held = keyEvent.getAction() == KeyEvent.ACTION_UP ? heldKeys.release(keyEvent.getKeyCode(),
+                keyEvent.getDownTime()) : keyEvent.getRepeatCount() > 0 ? heldKeys.get(keyEvent.getKeyCode(),
+                keyEvent.getDownTime()) : null;
+        if (held != null) {
+            if (held.abort) {
+                broadcast.abort();
+            }
+            if (!broadcast.isPassedOn()) {
+                Utils.forwardKeyEventToComponent(context, held.receiver,
+                        withKeyCode(keyEvent, keyTable.getKeyCode(keyEvent.getKeyCode())));
+            }
+            return;
+        }
+
+        RouteDecision<ResolveInfo> decision = new RouteDecision<ResolveInfo>();
+        ReceiverDirectory<ResolveInfo> directory = MediaReceiverRegistry.getInstance(context).getRoutingDirectory();
+        Router.decide(keyEvent.getAction(), keyEvent.getKeyCode(), keyTable, state, directory, decision);
+        long decidedNanos = System.nanoTime();
+
+        Route route = decision.getRoute();
+
+        // Pressing stop shortly after an auto routed press undoes it,
+        // whatever is playing by then, unless the selector is open or stop
+        // is fanned out
+        AutoRouteUndo undo = AutoRouteUndo.getInstance();
+        if (route != Route.SELECTOR_OPEN && route != Route.FAN_OUT
+                && undo.isUndo(decision.getKeyCode(), keyEvent.getAction(), keyEvent.getDownTime())) {
+            broadcast.abort();
+            if (keyEvent.getAction() == KeyEvent.ACTION_UP && !broadcast.isPassedOn()) {
+                undo.undo(context);
+            }
+            return;
+        }
+        boolean timed = PressLatency.isUsableEventTime(keyEvent.getEventTime(), receivedUptime);
+        if (timed) {
+            PressLatency.recordUptime(Stage.RECEIVE, route, keyEvent.getEventTime(), receivedUptime);
+        }
+        PressLatency.recordNanos(Stage.CLASSIFY, route, receivedNanos, routingNanos);
+        PressLatency.recordNanos(Stage.LOOKUP, route, routingNanos, decidedNanos);
+
+        if (decision.isAbort()) {
+            broadcast.abort();
+        }
+        if (route == Route.PASS_THROUGH) {
+            Log.d(TAG, "Media Button Receiver: passing on event because music is already playing: " + keyEvent);
+            if (HeadsetGestures.isGesturePress(intent)) {
+                // Sent to us alone, so nobody else would get it otherwise
+                HeadsetGestures.passOn(context, intent);
+            }
+        }
+        if (!decision.isDispatch() || broadcast.isPassedOn()) {
+            return;
+        }
+
+        switch (route) {
+        case SELECTOR_OPEN:
+            Log.d(TAG, "Selector is already open, handing it the key.");
+            SelectorVisibility.deliver(keyEvent);
+            break;
+        case FAN_OUT:
+            FanOutDispatcher.getInstance(context).send(directory, decision.getKeyCode());
+            break;
+        case LAST_RECEIVER:
+            if (keyEvent.getAction() == KeyEvent.ACTION_DOWN) {
+                // Only dispatched on the down when streaming
+                stream(context, decision.getLastMediaButtonReceiver(), keyEvent, decision.getKeyCode(),
+                        decision.isAbort());
+            } else {
+                Utils.forwardKeyCodeToComponent(context, decision.getLastMediaButtonReceiver(),
+                        decision.getKeyCode());
+            }
+            break;
+        case PLAYING_RECEIVER:
+        case SOLE_RECEIVER:
+            ResolveInfo resolveInfo = decision.getReceiver();
+            /* COMMENTED OUT FOR MARKET RELEASE Log.i(TAG, "Media Button Receiver: passed on event : "
+                    + keyEvent + " to " + resolveInfo.activityInfo.name); */
+            ComponentName receiver = new ComponentName(resolveInfo.activityInfo.packageName,
+                    resolveInfo.activityInfo.name);
+            if (route == Route.PLAYING_RECEIVER && keyEvent.getAction() == KeyEvent.ACTION_DOWN) {
+                // Only dispatched on the down when streaming
+                stream(context, receiver.flattenToString(), keyEvent, decision.getKeyCode(), decision.isAbort());
+            } else {
+                Utils.forwardKeyCodeToComponent(context, receiver, false, decision.getKeyCode());
             }
+            break;
+        case CONTEXT_RECEIVER:
+        case PREDICTED_RECEIVER:
+            ResolveInfo chosen = decision.getReceiver();
+            ComponentName chosenReceiver = new ComponentName(chosen.activityInfo.packageName,
+                    chosen.activityInfo.name);
+            Utils.forwardKeyCodeToComponent(context, chosenReceiver, false, decision.getKeyCode());
+            StateStore.getInstance(context).putString(Constants.SELECTION_ACTED_KEY, chosen.activityInfo.name);
+            undo.arm(intent, chosenReceiver, decision.getKeyCode(), keyEvent.getEventTime());
+            break;
+        case SHOW_SELECTOR:
+            showSelector(context, intent, keyEvent);
+            break;
+        default:
+            break;
+        }
 
+        // Starting the selector counts towards its launch, and the selector
+        // records the dispatch and total once the user picks
+        if (route != Route.SHOW_SELECTOR) {
+            PressLatency.recordSinceNanos(Stage.DISPATCH, route, decidedNanos);
+            if (timed) {
+                PressLatency.recordSinceUptime(Stage.TOTAL, route, keyEvent.getEventTime());
+            }
         }
     }
 
@@ -246,13 +377,14 @@ public class MediaButtonReceiver extends BroadcastReceiver {
      * @param keyEvent
      *            The key event
      */
-    private void showSelector(Context context, Intent intent, KeyEvent keyEvent) {
+    static void showSelector(Context context, Intent intent, KeyEvent keyEvent) {
         KeyguardManager manager = (KeyguardManager) context.getSystemService(Context.KEYGUARD_SERVICE);
         boolean locked = manager.inKeyguardRestrictedInputMode();
 
         Intent showForwardView = new Intent(Constants.INTENT_ACTION_VIEW_MEDIA_BUTTON_LIST);
         showForwardView.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
         showForwardView.putExtras(intent);
+        showForwardView.putExtra(PressLatency.EXTRA_SELECTOR_STARTED, SystemClock.uptimeMillis());
         showForwardView.setClassName(context,
                 locked ? ReceiverSelectorLocked.class.getName() : ReceiverSelector.class.getName());
 
@@ -274,4 +406,26 @@ public class MediaButtonReceiver extends BroadcastReceiver {
         }
         context.startActivity(showForwardView);
     }
+
+    /**
+     * Forwards the down of a streamed press as it is and remembers where it
+     * went and whether it was aborted, so the repeats and up follow.
+     */
+    private static void stream(Context context, String flattenedReceiver, KeyEvent keyEvent, int keyCode,
+            boolean abort) {
+        heldKeys.hold(keyEvent.getKeyCode(), keyEvent.getDownTime(), new HeldPress(flattenedReceiver, abort));
+        Utils.forwardKeyEventToComponent(context, flattenedReceiver, withKeyCode(keyEvent, keyCode));
+    }
+
+    /**
+     * Gets a key event with a remapped key code, keeping everything else.
+     */
+    private static KeyEvent withKeyCode(KeyEvent keyEvent, int keyCode) {
+        if (keyEvent.getKeyCode() == keyCode) {
+            return keyEvent;
+        }
+        return new KeyEvent(keyEvent.getDownTime(), keyEvent.getEventTime(), keyEvent.getAction(), keyCode,
+                keyEvent.getRepeatCount(), keyEvent.getMetaState(), keyEvent.getDeviceId(), keyEvent.getScanCode(),
+                keyEvent.getFlags());
+    }
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.receivers;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import com.harleensahni.android.mbr.MediaReceiverRegistry;
+import com.harleensahni.android.mbr.PlaybackTracker;
+import com.harleensahni.android.mbr.RoutingSnapshotStore;
+
+/**
+ * Drops the cached receivers and the routing snapshot when a package is added,
+ * removed, replaced or changed, since that may change the media button
+ * receivers, even while our process isn't running. Also has the guess of the
+ * playing apps retaken.
+ * 
+ * @author Harleen Sahni
+ */
+public class PackageChangeReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        RoutingSnapshotStore.getInstance(context).invalidate();
+        MediaReceiverRegistry.getInstance(context).invalidate();
+        PlaybackTracker.getInstance(context).onPackagesChanged();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.receivers;
+
+import android.content.BroadcastReceiver;
+
+import com.harleensahni.android.mbr.Utils;
+
+/**
+ * A media button broadcast that is being routed. Lets the routing code abort
+ * the broadcast the same way whether it runs inside
+ * {@link BroadcastReceiver#onReceive} or on the {@link RoutingPipeline} after
+ * {@code onReceive} has already returned.
+ * 
+ * @author Harleen Sahni
+ */
+abstract class PendingBroadcast {
+
+    private final boolean ordered;
+
+    private boolean finished;
+
+    private boolean expired;
+
+    PendingBroadcast(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    /**
+     * Aborts the broadcast so lower priority receivers don't get it. Does
+     * nothing if the broadcast isn't ordered or has already been finished.
+     */
+    final synchronized void abort() {
+        if (ordered && !finished) {
+            doAbort();
+        }
+    }
+
+    /**
+     * Finishes the broadcast, letting Android hand it to the next receiver
+     * unless it was aborted. Only the first call has any effect.
+     */
+    final synchronized void finish() {
+        if (!finished) {
+            finished = true;
+            doFinish();
+        }
+    }
+
+    /**
+     * Finishes the broadcast because routing ran out of time. Whatever routing
+     * decides afterwards can no longer abort the broadcast.
+     */
+    final synchronized void expire() {
+        expired = true;
+        finish();
+    }
+
+    /**
+     * Whether the broadcast has already been passed on to other receivers
+     * because routing took too long. When it has, we must not forward the key
+     * ourselves as well or the press would be handled twice. When we are the
+     * sole receiver nobody else gets the broadcast, so it is never passed on.
+     */
+    final synchronized boolean isPassedOn() {
+        return expired && ordered && !Utils.isHandlingThroughSoleReceiver();
+    }
+
+    protected abstract void doAbort();
+
+    protected abstract void doFinish();
+
+    /**
+     * Broadcast being routed synchronously inside {@code onReceive}.
+     */
+    static final class Inline extends PendingBroadcast {
+        private final BroadcastReceiver receiver;
+
+        Inline(BroadcastReceiver receiver) {
+            super(receiver.isOrderedBroadcast());
+            this.receiver = receiver;
+        }
+
+        @Override
+        protected void doAbort() {
+            receiver.abortBroadcast();
+        }
+
+        @Override
+        protected void doFinish() {
+            // Finished when onReceive returns
+        }
+    }
+
+    /**
+     * Broadcast kept alive with {@link BroadcastReceiver#goAsync()}. Only
+     * available on Honeycomb and up.
+     */
+    static final class Async extends PendingBroadcast {
+        private final BroadcastReceiver.PendingResult result;
+
+        Async(BroadcastReceiver receiver) {
+            super(receiver.isOrderedBroadcast());
+            result = receiver.goAsync();
+        }
+
+        @Override
+        protected void doAbort() {
+            result.abortBroadcast();
+        }
+
+        @Override
+        protected void doFinish() {
+            result.finish();
+        }
+    }
+}
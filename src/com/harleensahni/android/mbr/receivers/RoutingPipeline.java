@@ -0,0 +1,104 @@
+/*
+ * Copyright 2011 Harleen Sahni
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.harleensahni.android.mbr.receivers;
+
+import static com.harleensahni.android.mbr.Constants.TAG;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Background thread that media button presses are routed on, so that
+ * {@link MediaButtonReceiver#onReceive} can return right away instead of
+ * doing binder calls on the main thread. Each press gets a hard time budget;
+ * if routing hasn't finished by then the broadcast is finished anyway and
+ * Android passes it on, rather than letting Android kill us and drop it.
+ * 
+ * @author Harleen Sahni
+ */
+final class RoutingPipeline {
+
+    /**
+     * How long routing may hold on to a broadcast. Well under the ten seconds
+     * Android gives a receiver before treating it as hung.
+     */
+    static final long TIME_BUDGET_MILLIS = 4000;
+
+    private static RoutingPipeline instance;
+
+    /** Handler for the routing thread. */
+    private final Handler handler;
+
+    /** Handler on the main thread that enforces the time budget. */
+    private final Handler watchdog;
+
+    private RoutingPipeline() {
+        HandlerThread thread = new HandlerThread("MediaButtonRouter-routing", Process.THREAD_PRIORITY_FOREGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        watchdog = new Handler(Looper.getMainLooper());
+    }
+
+    static synchronized RoutingPipeline getInstance() {
+        if (instance == null) {
+            instance = new RoutingPipeline();
+        }
+        return instance;
+    }
+
+    /**
+     * @return The handler of the routing thread, for work that has to be
+     *         ordered with routing.
+     */
+    Handler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Runs {@code route} on the routing thread and finishes {@code broadcast}
+     * when it is done or when the time budget runs out, whichever is first.
+     * 
+     * @param broadcast
+     *            The broadcast being routed.
+     * @param route
+     *            The routing work.
+     */
+    void submit(final PendingBroadcast broadcast, final Runnable route) {
+        final Runnable expire = new Runnable() {
+            @Override
+            public void run() {
+                Log.w(TAG, "Media Button Receiver: routing took longer than " + TIME_BUDGET_MILLIS
+                        + "ms, passing on broadcast");
+                broadcast.expire();
+            }
+        };
+        watchdog.postDelayed(expire, TIME_BUDGET_MILLIS);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    route.run();
+                } finally {
+                    watchdog.removeCallbacks(expire);
+                    broadcast.finish();
+                }
+            }
+        });
+    }
+}